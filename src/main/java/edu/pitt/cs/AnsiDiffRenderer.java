@@ -0,0 +1,286 @@
+package edu.pitt.cs;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * AnsiDiffRenderer: A live terminal view of a machine. The first frame clears
+ * the screen and draws the whole board as TextRenderer does; every later frame
+ * only moves the cursor to the cells that changed since the frame before and
+ * overwrites them, using ANSI escape sequences.
+ *
+ * <p>
+ * The renderer remembers the occupied cells of each row (at most the pipeline
+ * width of them) and the count of each slot. A row is only looked at if it
+ * holds beans now or did in the previous frame, and only the cells whose
+ * count changed are written, so the output per frame grows with the number of
+ * changes rather than with the size of the board. A count too wide for its
+ * cell redraws the rest of its line. Each frame is flushed as it is
+ * rendered and leaves the cursor below the board. The board must fit on the
+ * screen. If frames are dropped by an OutputPipeline on the way to the
+ * terminal, the next frame redraws the whole board, and so does the last
+ * frame of a run, since a frame may have been dropped after the one before it
+ * was built on top of it.
+ */
+public class AnsiDiffRenderer extends TextRenderer {
+	private static final String CLEAR_SCREEN = "\033[H\033[2J";
+	private static final String CLEAR_TO_END_OF_LINE = "\033[K";
+	private static final int MOVE_LENGTH = 2 * MAX_DIGITS + 4;
+	private static final int CELL_WIDTH = BeanCounterLogicImpl.xspacing + 1;
+
+	private boolean drawn;
+	private long lostOutputCount;
+	private int pipelineWidth;
+	// Row y holds cells rowXs[y * pipelineWidth + k] with counts rowCounts[y * pipelineWidth + k], k < rowSize[y]
+	private int[] rowXs;
+	private int[] rowCounts;
+	private final int[] rowSize;
+	private final int[] oldCells;
+	private final int[] newCells;
+	private int[] touched;
+	private final long[] slotCounts;
+	private final int[] slotColumns;
+
+	/**
+	 * Constructor - creates a live view of machines with slotCount slots.
+	 *
+	 * @param out       the terminal
+	 * @param slotCount the number of slots
+	 */
+	public AnsiDiffRenderer(WritableByteChannel out, int slotCount) {
+		super(out, slotCount);
+		rowSize = new int[slotCount];
+		oldCells = new int[slotCount];
+		newCells = new int[slotCount];
+		slotCounts = new long[slotCount];
+		slotColumns = new int[slotCount + 1];
+	}
+
+	/**
+	 * Creates a live view on standard output, bypassing System.out.
+	 *
+	 * @param slotCount the number of slots
+	 * @return the renderer
+	 */
+	public static AnsiDiffRenderer toTerminal(int slotCount) {
+		return new AnsiDiffRenderer(standardOutput(), slotCount);
+	}
+
+	@Override
+	void renderFrame(BeanCounterLogicImpl logic) throws IOException {
+		// After lost output the screen is unknown, so start over
+		long lost = getLostOutputCount();
+		if (!drawn || logic.getPipelineWidth() != pipelineWidth || lost != lostOutputCount) {
+			lostOutputCount = lost;
+			reserve(CLEAR_SCREEN.length());
+			putAscii(CLEAR_SCREEN);
+			super.renderFrame(logic);
+			remember(logic);
+			drawn = true;
+		} else {
+			for (int yPos = 0; yPos < slotCount; yPos++) {
+				if (rowSize[yPos] > 0 || logic.getInFlightBeanCount(yPos) > 0) {
+					updateRow(logic, yPos);
+				}
+			}
+			for (int i = 0; i < slotCount; i++) {
+				long count = logic.getSlotBeanCountLong(i);
+				if (count != slotCounts[i]) {
+					updateSlot(logic, i, count);
+				}
+			}
+		}
+		moveTo(slotCount + 2, 1);
+		flush();
+	}
+
+	@Override
+	boolean prepareLastFrame() {
+		// Any lost frame may have been the base of a later diff, so start over
+		if (getLostOutputCount() > 0) {
+			drawn = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Takes the state of logic as the state on the screen after a full redraw.
+	 *
+	 * @param logic the machine
+	 */
+	private void remember(BeanCounterLogicImpl logic) {
+		if (logic.getPipelineWidth() != pipelineWidth) {
+			pipelineWidth = logic.getPipelineWidth();
+			rowXs = new int[slotCount * pipelineWidth];
+			rowCounts = new int[slotCount * pipelineWidth];
+			touched = new int[2 * pipelineWidth];
+		}
+		for (int yPos = 0; yPos < slotCount; yPos++) {
+			int base = yPos * pipelineWidth;
+			rowSize[yPos] = 0;
+			for (int k = 0; k < logic.getInFlightBeanCount(yPos); k++) {
+				addBean(yPos, logic.getInFlightBeanXPos(yPos, k));
+			}
+			for (int k = 0; k < rowSize[yPos]; k++) {
+				rowCounts[base + k] = newCells[rowXs[base + k]];
+				newCells[rowXs[base + k]] = 0;
+			}
+		}
+		slotColumns[0] = 1;
+		for (int i = 0; i < slotCount; i++) {
+			slotCounts[i] = logic.getSlotBeanCountLong(i);
+			slotColumns[i + 1] = slotColumns[i] + slotWidth(slotCounts[i]);
+		}
+	}
+
+	/**
+	 * Counts a bean at xPos into newCells, recording the cell in the row state
+	 * the first time it is seen. The counts of the row state are filled in from
+	 * newCells once the whole row has been counted.
+	 *
+	 * @param yPos the row
+	 * @param xPos the cell
+	 */
+	private void addBean(int yPos, int xPos) {
+		if (newCells[xPos]++ == 0) {
+			rowXs[yPos * pipelineWidth + rowSize[yPos]++] = xPos;
+		}
+	}
+
+	/**
+	 * Overwrites the cells of row yPos whose counts changed.
+	 *
+	 * @param logic the machine
+	 * @param yPos  the row
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	private void updateRow(BeanCounterLogicImpl logic, int yPos) throws IOException {
+		int base = yPos * pipelineWidth;
+		int touchedCount = 0;
+		for (int k = 0; k < rowSize[yPos]; k++) {
+			oldCells[rowXs[base + k]] = rowCounts[base + k];
+			touched[touchedCount++] = rowXs[base + k];
+		}
+		rowSize[yPos] = 0;
+		for (int k = 0; k < logic.getInFlightBeanCount(yPos); k++) {
+			int xPos = logic.getInFlightBeanXPos(yPos, k);
+			if (newCells[xPos] == 0 && oldCells[xPos] == 0) {
+				touched[touchedCount++] = xPos;
+			}
+			addBean(yPos, xPos);
+		}
+		for (int k = 0; k < rowSize[yPos]; k++) {
+			rowCounts[base + k] = newCells[rowXs[base + k]];
+		}
+
+		boolean overflow = false;
+		for (int t = 0; t < touchedCount; t++) {
+			int xPos = touched[t];
+			int width = cellWidth(yPos, xPos);
+			overflow |= digitCount(oldCells[xPos]) > width || digitCount(newCells[xPos]) > width;
+		}
+		if (overflow) {
+			// A wide count shifts the rest of the row, so draw all of it again
+			moveTo(yPos + 1, 1);
+			for (int xPos = 0; xPos <= yPos; xPos++) {
+				reserve(MAX_DIGITS + 1 + CLEAR_TO_END_OF_LINE.length());
+				putNumber(newCells[xPos], cellWidth(yPos, xPos));
+			}
+			putAscii(CLEAR_TO_END_OF_LINE);
+		} else {
+			for (int t = 0; t < touchedCount; t++) {
+				int xPos = touched[t];
+				if (oldCells[xPos] != newCells[xPos]) {
+					// Cover the old digits; the cell is right-aligned at its end column
+					int span = Math.max(digitCount(oldCells[xPos]), digitCount(newCells[xPos]));
+					int end = BeanCounterLogicImpl.getIndent(slotCount, yPos) + xPos * CELL_WIDTH;
+					moveTo(yPos + 1, end - span + 1);
+					reserve(MAX_DIGITS);
+					putNumber(newCells[xPos], span);
+				}
+			}
+		}
+		for (int t = 0; t < touchedCount; t++) {
+			oldCells[touched[t]] = 0;
+			newCells[touched[t]] = 0;
+		}
+	}
+
+	/**
+	 * Overwrites the count of slot i. If the count needs a wider or narrower
+	 * cell, the rest of the slot line is drawn again.
+	 *
+	 * @param logic the machine
+	 * @param i     the slot
+	 * @param count the new count
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	private void updateSlot(BeanCounterLogicImpl logic, int i, long count) throws IOException {
+		boolean resized = slotWidth(count) != slotWidth(slotCounts[i]);
+		slotCounts[i] = count;
+		moveTo(slotCount + 1, slotColumns[i]);
+		if (!resized) {
+			reserve(MAX_DIGITS + 1);
+			putSlot(count);
+			return;
+		}
+		for (int j = i; j < slotCount; j++) {
+			slotCounts[j] = logic.getSlotBeanCountLong(j);
+			slotColumns[j + 1] = slotColumns[j] + slotWidth(slotCounts[j]);
+			reserve(MAX_DIGITS + 1 + CLEAR_TO_END_OF_LINE.length());
+			putSlot(slotCounts[j]);
+		}
+		putAscii(CLEAR_TO_END_OF_LINE);
+	}
+
+	/**
+	 * Writes a slot count the way getSlotString() lays it out.
+	 *
+	 * @param count the count
+	 */
+	private void putSlot(long count) {
+		if (digitCount(count) >= CELL_WIDTH) {
+			putAscii(" ");
+		}
+		putNumber(count, CELL_WIDTH);
+	}
+
+	/**
+	 * Returns the number of characters slot count takes on the slot line.
+	 *
+	 * @param count the count
+	 * @return the width
+	 */
+	private static int slotWidth(long count) {
+		int digits = digitCount(count);
+		return digits >= CELL_WIDTH ? digits + 1 : CELL_WIDTH;
+	}
+
+	/**
+	 * Returns the width of cell xPos of row yPos on the board.
+	 *
+	 * @param yPos the row
+	 * @param xPos the cell
+	 * @return the width
+	 */
+	private int cellWidth(int yPos, int xPos) {
+		return xPos == 0 ? BeanCounterLogicImpl.getIndent(slotCount, yPos) : CELL_WIDTH;
+	}
+
+	/**
+	 * Moves the cursor.
+	 *
+	 * @param line   the line, from 1
+	 * @param column the column, from 1
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	private void moveTo(int line, int column) throws IOException {
+		reserve(MOVE_LENGTH);
+		putAscii("\033[");
+		putNumber(line, 0);
+		putAscii(";");
+		putNumber(column, 0);
+		putAscii("H");
+	}
+}
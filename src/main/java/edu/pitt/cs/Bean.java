@@ -19,6 +19,8 @@ public interface Bean {
 				return new BeanBuggy(slotCount, isLuck, rand);
 			case SOLUTION:
 				return new BeanSolution(slotCount, isLuck, rand);
+			case CONCURRENT:
+				return new BeanImpl(slotCount, isLuck, rand);
 		}
 		return null;
 	}
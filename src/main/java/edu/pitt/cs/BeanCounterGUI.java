@@ -3,19 +3,21 @@ package edu.pitt.cs;
 public class BeanCounterGUI {
 
 	public static void showUsage() {
-		System.out.println("Usage: java BeanCounterGUI <number of beans> <luck | skill>");
+		System.out.println("Usage: java BeanCounterGUI <number of beans> <luck | skill> [number of slots]");
 		System.out.println("Example: java BeanCounterGUI 400 luck");
+		System.out.println("Example: java BeanCounterGUI 100000 luck 10000");
 	}
 
 	/**
 	 * Main method. Creates the main frame for the app.
 	 * 
 	 * @param args args[0] is an integer bean count, args[1] is a string which is
-	 *             either luck or skill.
+	 *             either luck or skill, and the optional args[2] is an integer
+	 *             slot count (10 if not given).
 	 */
 
 	public static void main(String[] args) {
-		if (args.length != 2) {
+		if (args.length != 2 && args.length != 3) {
 			showUsage();
 			return;
 		}
@@ -32,6 +34,20 @@ public class BeanCounterGUI {
 			return;
 		}
 
+		int slotCount = MainPanel.DEFAULT_SLOT_COUNT;
+		if (args.length == 3) {
+			try {
+				slotCount = Integer.parseInt(args[2]);
+			} catch (NumberFormatException ne) {
+				showUsage();
+				return;
+			}
+			if (slotCount < 1) {
+				showUsage();
+				return;
+			}
+		}
+
 		boolean luck;
 		if (args[1].equals("luck")) {
 			luck = true;
@@ -43,7 +59,7 @@ public class BeanCounterGUI {
 		}
 		
 		// Create the main frame for the app
-		new MainFrame(InstanceType.IMPL, beanCount, luck);
+		new MainFrame(InstanceType.IMPL, slotCount, beanCount, luck);
 	}
 
 }
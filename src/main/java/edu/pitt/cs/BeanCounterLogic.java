@@ -3,7 +3,8 @@ package edu.pitt.cs;
 public interface BeanCounterLogic {
 	/**
 	 * Returns the either BeanCounterLogicImpl or BeanCounterLogicBuggy instance
-	 * depending on the Config.
+	 * depending on the Config. CONCURRENT returns a BeanCounterLogicConcurrent
+	 * that can be stepped on one thread and read from others.
 	 * 
 	 * @param slotCount the number of slots in the machine
 	 * @return BeanCounterLogic object
@@ -16,6 +17,8 @@ public interface BeanCounterLogic {
 				return new BeanCounterLogicBuggy(slotCount);
 			case SOLUTION:
 				return new BeanCounterLogicSolution(slotCount);
+			case CONCURRENT:
+				return new BeanCounterLogicConcurrent(slotCount);
 			default:
 		}
 		return null;
@@ -35,6 +38,28 @@ public interface BeanCounterLogic {
 
 	public int getSlotBeanCount(int i);
 
+	/**
+	 * Returns the number of beans in the ith slot as a long. Implementations that
+	 * can count past 2^31 beans should override this.
+	 * 
+	 * @param i index of slot
+	 * @return number of beans in slot
+	 */
+	public default long getSlotBeanCountLong(int i) {
+		return getSlotBeanCount(i);
+	}
+
+	/**
+	 * Returns the number of beans remaining that are waiting to get inserted as a
+	 * long. Implementations that can hold more than 2^31 beans should override
+	 * this.
+	 * 
+	 * @return number of beans remaining
+	 */
+	public default long getRemainingBeanCountLong() {
+		return getRemainingBeanCount();
+	}
+
 	public double getAverageSlotBeanCount();
 
 	public void upperHalf();
@@ -43,7 +68,42 @@ public interface BeanCounterLogic {
 
 	public void reset(Bean[] beans);
 
+	/**
+	 * A hard reset with beans supplied by source. By default all beans are taken
+	 * from the source right away; implementations that can take them as they
+	 * enter the machine should override this.
+	 * 
+	 * @param source the source of the beans
+	 */
+	public default void reset(BeanSource source) {
+		Bean[] beans = new Bean[Math.toIntExact(source.getRemainingBeanCount())];
+		for (int i = 0; i < beans.length; i++) {
+			beans[i] = source.next();
+		}
+		reset(beans);
+	}
+
 	public void repeat();
 
 	public boolean advanceStep() throws BeanOutOfBoundsException;
+
+	/**
+	 * Copies the observable state of the machine into a snapshot in one pass. If
+	 * reuse is not null, it is refilled and returned instead of allocating a new
+	 * snapshot.
+	 * 
+	 * @param reuse a snapshot to refill, or null
+	 * @return the filled snapshot
+	 */
+	public default MachineSnapshot snapshot(MachineSnapshot reuse) {
+		MachineSnapshot s = reuse == null ? new MachineSnapshot() : reuse;
+		int slotCount = getSlotCount();
+		s.begin(slotCount);
+		for (int i = 0; i < slotCount; i++) {
+			s.setInFlightBeanXPos(i, getInFlightBeanXPos(i));
+			s.setSlotBeanCount(i, getSlotBeanCountLong(i));
+		}
+		s.setRemainingBeanCount(getRemainingBeanCountLong());
+		return s;
+	}
 }
\ No newline at end of file
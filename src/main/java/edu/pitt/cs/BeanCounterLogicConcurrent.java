@@ -0,0 +1,272 @@
+package edu.pitt.cs;
+
+/**
+ * BeanCounterLogicConcurrent: A BeanCounterLogic that can be stepped on one
+ * thread while other threads (such as the Swing EDT painting MainPanel) read
+ * its state.
+ *
+ * <p>
+ * All mutations are applied to a private BeanCounterLogicImpl under a writer
+ * lock. After each mutation, the writer copies the observable state into a
+ * fresh MachineSnapshot and publishes it through a volatile reference. A
+ * published snapshot is never refilled, so it is effectively immutable. Readers
+ * never take the lock; they only dereference the latest snapshot, so they
+ * always see the state as of a completed step and can never stall the
+ * writer's step loop.
+ *
+ * <p>
+ * Each getter reads whatever snapshot is current at the time of the call. A
+ * reader that needs several values from the same step (e.g. a whole frame)
+ * should call snapshot() once and read everything from that.
+ *
+ * <p>
+ * Any number of threads can also drop beans straight into the slots with
+ * dropBean(), without taking the lock. Those beans are counted in a
+ * StripedSlotCounter, which only ever grows. Along with each snapshot the
+ * writer publishes the counts of the dropped beans that the snapshot already
+ * accounts for, and the slot getters and snapshot() add the rest of the
+ * counter to the snapshot on every read. upperHalf() and lowerHalf() move the
+ * dropped beans into the machine before halving, so they halve all beans in
+ * the slots; reset() and repeat() discard them. Either way the snapshot and
+ * the counts it accounts for change in one publication, so readers never see
+ * a dropped bean counted twice or not at all. The snapshots of the batches of
+ * getEventPublisher() count the dropped beans as well, although they are not
+ * among the landings of any batch.
+ */
+public class BeanCounterLogicConcurrent implements BeanCounterLogic {
+	/**
+	 * Published: A snapshot together with the counts of the dropped beans it
+	 * accounts for. Never changes once published.
+	 */
+	private static final class Published {
+		final MachineSnapshot snapshot;
+		final long[] droppedBase;
+
+		Published(MachineSnapshot snapshot, long[] droppedBase) {
+			this.snapshot = snapshot;
+			this.droppedBase = droppedBase;
+		}
+	}
+
+	private final BeanCounterLogicImpl logic;
+	private final Object writeLock = new Object();
+	private volatile Published published;
+	// All beans ever dropped from other threads
+	private final StripedSlotCounter dropped;
+	// Created by getEventPublisher(); guarded by writeLock
+	private MachineEventPublisher eventPublisher;
+
+	/**
+	 * Constructor - creates the bean counter logic object with the provided number
+	 * of slots.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 */
+	BeanCounterLogicConcurrent(int slotCount) {
+		logic = new BeanCounterLogicImpl(slotCount);
+		dropped = new StripedSlotCounter(slotCount);
+		published = new Published(logic.snapshot(null), new long[slotCount]);
+	}
+
+	/**
+	 * Returns the most recently published state of the machine. The returned
+	 * object never changes, so it can be read without further synchronization.
+	 * It does not count beans dropped with dropBean() since the last halving;
+	 * snapshot() does.
+	 * 
+	 * @return the latest snapshot
+	 */
+	public MachineSnapshot getSnapshot() {
+		return published.snapshot;
+	}
+
+	public int getSlotCount() {
+		return published.snapshot.getSlotCount();
+	}
+
+	public int getRemainingBeanCount() {
+		return Math.toIntExact(published.snapshot.getRemainingBeanCount());
+	}
+
+	public long getRemainingBeanCountLong() {
+		return published.snapshot.getRemainingBeanCount();
+	}
+
+	public int getInFlightBeanXPos(int yPos) {
+		return published.snapshot.getInFlightBeanXPos(yPos);
+	}
+
+	/**
+	 * Drops a bean into the ith slot. Safe to call from any number of threads at
+	 * once. A bean dropped while reset() or repeat() runs may or may not be
+	 * discarded by it.
+	 * 
+	 * @param i index of slot
+	 */
+	public void dropBean(int i) {
+		dropped.increment(i);
+	}
+
+	public int getSlotBeanCount(int i) {
+		return Math.toIntExact(getSlotBeanCountLong(i));
+	}
+
+	public long getSlotBeanCountLong(int i) {
+		Published p = published;
+		return p.snapshot.getSlotBeanCount(i) + dropped.getSlotBeanCount(i) - p.droppedBase[i];
+	}
+
+	/**
+	 * Returns the total number of beans in all slots, including dropped ones.
+	 * 
+	 * @return number of beans in slots
+	 */
+	public long getInSlotBeanCount() {
+		Published p = published;
+		long total = p.snapshot.getInSlotBeanCount();
+		for (int i = 0; i < p.droppedBase.length; i++) {
+			total += dropped.getSlotBeanCount(i) - p.droppedBase[i];
+		}
+		return total;
+	}
+
+	public double getAverageSlotBeanCount() {
+		Published p = published;
+		long total = 0;
+		long positionSum = 0;
+		for (int i = 0; i < p.droppedBase.length; i++) {
+			long count = p.snapshot.getSlotBeanCount(i) + dropped.getSlotBeanCount(i) - p.droppedBase[i];
+			total += count;
+			positionSum += count * i;
+		}
+		return (double) positionSum / total;
+	}
+
+	/**
+	 * Copies the latest published snapshot into reuse with bulk array copies and
+	 * adds the dropped beans it does not account for.
+	 * 
+	 * @param reuse a snapshot to refill, or null
+	 * @return the filled snapshot
+	 */
+	public MachineSnapshot snapshot(MachineSnapshot reuse) {
+		MachineSnapshot s = reuse == null ? new MachineSnapshot() : reuse;
+		Published p = published;
+		s.copyFrom(p.snapshot);
+		for (int i = 0; i < p.droppedBase.length; i++) {
+			s.addSlotBeanCount(i, dropped.getSlotBeanCount(i) - p.droppedBase[i]);
+		}
+		return s;
+	}
+
+	/**
+	 * Publishes the state of logic with the dropped beans it accounts for. Must
+	 * hold the writer lock.
+	 * 
+	 * @param droppedBase the counts of dropped beans the state accounts for
+	 */
+	private void publish(long[] droppedBase) {
+		published = new Published(logic.snapshot(null), droppedBase);
+	}
+
+	/**
+	 * Moves the beans dropped since the last publication into the machine.
+	 * Beans dropped meanwhile stay in the counter. Must hold the writer lock.
+	 * 
+	 * @return the counts of dropped beans the machine now accounts for
+	 */
+	private long[] moveDroppedBeans() {
+		long[] base = published.droppedBase;
+		long[] counts = dropped.getSlotBeanCounts(null);
+		long[] moved = new long[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			moved[i] = counts[i] - base[i];
+		}
+		logic.addSlotBeans(moved);
+		return counts;
+	}
+
+	public void upperHalf() {
+		synchronized (writeLock) {
+			long[] base = moveDroppedBeans();
+			logic.upperHalf();
+			publish(base);
+		}
+	}
+
+	public void lowerHalf() {
+		synchronized (writeLock) {
+			long[] base = moveDroppedBeans();
+			logic.lowerHalf();
+			publish(base);
+		}
+	}
+
+	public void reset(Bean[] beans) {
+		synchronized (writeLock) {
+			logic.reset(beans);
+			// Discard the dropped beans by accounting for them without counting them
+			publish(dropped.getSlotBeanCounts(null));
+		}
+	}
+
+	public void reset(BeanSource source) {
+		synchronized (writeLock) {
+			logic.reset(source);
+			publish(dropped.getSlotBeanCounts(null));
+		}
+	}
+
+	public void repeat() {
+		synchronized (writeLock) {
+			logic.repeat();
+			publish(dropped.getSlotBeanCounts(null));
+		}
+	}
+
+	/**
+	 * Returns the publisher of the events of the machine, creating one with
+	 * batches of MachineEventPublisher.DEFAULT_BATCH_STEPS steps on the first
+	 * call. Batches are published on the thread that steps the machine, and
+	 * their snapshots include the beans dropped with dropBean().
+	 * 
+	 * @return the event publisher
+	 */
+	public MachineEventPublisher getEventPublisher() {
+		synchronized (writeLock) {
+			if (eventPublisher == null) {
+				eventPublisher = new MachineEventPublisher(this::snapshotForEvents,
+						MachineEventPublisher.DEFAULT_BATCH_STEPS);
+				logic.setEventPublisher(eventPublisher);
+			}
+			return eventPublisher;
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the machine in the middle of a mutation, when the
+	 * published snapshot may be behind, and adds the dropped beans it does not
+	 * account for. Called by the event publisher on the thread that steps the
+	 * machine.
+	 * 
+	 * @return the snapshot
+	 */
+	private MachineSnapshot snapshotForEvents() {
+		MachineSnapshot s = logic.snapshot(null);
+		long[] base = published.droppedBase;
+		for (int i = 0; i < base.length; i++) {
+			s.addSlotBeanCount(i, dropped.getSlotBeanCount(i) - base[i]);
+		}
+		return s;
+	}
+
+	public boolean advanceStep() throws BeanOutOfBoundsException {
+		synchronized (writeLock) {
+			try {
+				return logic.advanceStep();
+			} finally {
+				publish(published.droppedBase);
+			}
+		}
+	}
+}
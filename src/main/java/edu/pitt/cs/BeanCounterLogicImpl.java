@@ -1,8 +1,16 @@
 package edu.pitt.cs;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
+import java.util.Locale;
 import java.util.Random;
+import java.util.SortedMap;
 
 /**
  * Code by @author Wonsun Ahn.  Copyright Spring 2024.
@@ -34,13 +42,58 @@ import java.util.Random;
  *  (0, 3)       (1, 3)        (2, 3)       (3, 3)
  * [Slot0]       [Slot1]       [Slot2]      [Slot3]
  * </pre>
+ * 
+ * <p>
+ * By default one bean enters the machine per step and each row holds at most
+ * one bean. In wide-pipeline mode (pipeline width k greater than 1), up to k
+ * beans enter per step and each row holds up to k beans, so up to k beans land
+ * per step. getInFlightBeanXPos() then reports the first bean in the row.
+ * 
+ * <p>
+ * In-flight beans never move between arrays. The rows form a circular buffer:
+ * beans inserted at step t stay in physical row (t mod slotCount) for their
+ * whole fall, and logical row y is physical row (cursor - y) mod slotCount.
+ * Advancing time bumps the cursor, so each step costs one advanceStep() per
+ * bean plus one slot update per bean leaving the last row.
  */
 
 public class BeanCounterLogicImpl implements BeanCounterLogic {
+	/**
+	 * Version of the machine's behavior. Bump it whenever a change makes seeded
+	 * runs produce different results, so that ExperimentCache stops serving the
+	 * results of the old behavior.
+	 */
+	public static final int IMPLEMENTATION_VERSION = 1;
+
+	/**
+	 * Number of results main() keeps in memory in front of the result cache.
+	 */
+	private static final int RECENT_RESULTS = 64;
+
 	private int slotCount;
-	private ArrayList<Bean> beanQueue;
-	private ArrayList<Bean[]> jumpingBeans;
+	private int pipelineWidth;
+	private ArrayDeque<Bean> beanQueue;
+	// Supplies beans once beanQueue is empty; null if there is none
+	private BeanSource beanSource;
+	// beanSource if it is run-length encoded; then the slots only hold counts
+	private BeanRuns beanRuns;
+	// Physical row r holds its in-flight beans at [r * pipelineWidth, r * pipelineWidth + rowOccupancy[r])
+	private Bean[] jumpingBeans;
+	// Ids of the in-flight beans for the event sink, parallel to jumpingBeans
+	private long[] beanIds;
+	private long nextBeanId;
+	private int[] rowOccupancy;
+	// Physical row of logical row 0, i.e. the insertion step mod slotCount
+	private int cursor;
 	private ArrayList<ArrayList<Bean>> bottomSlots;
+	// Authoritative slot counts; bottomSlots only holds the beans while retainSlotBeans is set
+	private long[] slotCounts;
+	private boolean retainSlotBeans = true;
+	// Number of steps that changed the machine since the last reset
+	private long stepCount;
+	private HistogramPublisher publisher;
+	private BeanEventSink eventSink;
+	private MachineEventPublisher eventPublisher;
 
 
 	// TODO: Add member methods and variables as needed.
@@ -55,14 +108,33 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * @param slotCount the number of slots in the machine
 	 */
 	BeanCounterLogicImpl(int slotCount) {
+		this(slotCount, 1);
+	}
+
+	/**
+	 * Constructor - creates the bean counter logic object in wide-pipeline mode,
+	 * where up to pipelineWidth beans enter per step and each row holds up to
+	 * pipelineWidth beans.
+	 * 
+	 * @param slotCount     the number of slots in the machine
+	 * @param pipelineWidth the maximum number of beans per row
+	 */
+	BeanCounterLogicImpl(int slotCount, int pipelineWidth) {
+		if (pipelineWidth < 1) {
+			throw new IllegalArgumentException("pipeline width must be at least 1");
+		}
 		this.slotCount = slotCount;
-		beanQueue = new ArrayList<>();
-		jumpingBeans = new ArrayList<Bean[]>();
+		this.pipelineWidth = pipelineWidth;
+		beanQueue = new ArrayDeque<>();
+		jumpingBeans = new Bean[slotCount * pipelineWidth];
+		beanIds = new long[slotCount * pipelineWidth];
+		rowOccupancy = new int[slotCount];
+		cursor = 0;
 		bottomSlots = new ArrayList<ArrayList<Bean>>();
+		slotCounts = new long[slotCount];
 
 
 		for(int i = 0; i < slotCount; i++){
-			jumpingBeans.add(new Bean[i+1]);
 			bottomSlots.add(new ArrayList<Bean>());
 		}
 	}
@@ -76,13 +148,143 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 		return slotCount;
 	}
 	
+	/**
+	 * Returns the maximum number of beans per row (and per step).
+	 * 
+	 * @return the pipeline width
+	 */
+	public int getPipelineWidth() {
+		return pipelineWidth;
+	}
+
+	/**
+	 * Sets whether beans that land in slots are kept. If not, slots only count
+	 * their beans, so a run's memory does not grow with the number of beans that
+	 * have landed. Beans that are not kept cannot be scooped up again by
+	 * repeat(). Takes effect for beans landing from now on.
+	 * 
+	 * @param retain whether to keep the beans in the slots
+	 */
+	public void setRetainSlotBeans(boolean retain) {
+		retainSlotBeans = retain;
+	}
+
+	/**
+	 * Sets a publisher that receives the slot histogram, step count and
+	 * reservoir size after every change, or null to stop publishing. The whole
+	 * histogram is published right away.
+	 * 
+	 * @param publisher the publisher, with the same slot count as the machine
+	 */
+	public void setHistogramPublisher(HistogramPublisher publisher) {
+		if (publisher != null && publisher.getSlotCount() != slotCount) {
+			throw new IllegalArgumentException("publisher has " + publisher.getSlotCount() + " slots");
+		}
+		this.publisher = publisher;
+		publishAll();
+	}
+
+	/**
+	 * Sets a sink that receives every insert, move and landing of a bean, or
+	 * null to stop. To record complete bean paths, set the sink before reset().
+	 * 
+	 * @param sink the event sink
+	 */
+	public void setBeanEventSink(BeanEventSink sink) {
+		eventSink = sink;
+	}
+
+	/**
+	 * Returns the publisher of the events of the machine, creating one with
+	 * batches of MachineEventPublisher.DEFAULT_BATCH_STEPS steps if none has
+	 * been set. Call it before the machine is stepped on another thread.
+	 * 
+	 * @return the event publisher
+	 */
+	public MachineEventPublisher getEventPublisher() {
+		if (eventPublisher == null) {
+			eventPublisher = new MachineEventPublisher(this, MachineEventPublisher.DEFAULT_BATCH_STEPS);
+		}
+		return eventPublisher;
+	}
+
+	/**
+	 * Sets the publisher of the events of the machine, for other batch sizes or
+	 * executors than getEventPublisher() creates, or null to stop publishing.
+	 * 
+	 * @param publisher the event publisher, created for this machine
+	 */
+	public void setEventPublisher(MachineEventPublisher publisher) {
+		eventPublisher = publisher;
+	}
+
+	/**
+	 * Publishes the whole histogram if there is a publisher.
+	 */
+	private void publishAll() {
+		if (publisher != null) {
+			publisher.publishAll(slotCounts, stepCount, getRemainingBeanCountLong());
+		}
+	}
+
+	/**
+	 * Returns the number of steps that changed the machine since the last reset.
+	 * 
+	 * @return number of steps taken
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Adds beans to the back of the reservoir without otherwise disturbing the
+	 * machine. Lets a long run be fed in batches instead of creating every bean
+	 * up front.
+	 * 
+	 * @param beans array of beans to add to the reservoir
+	 */
+	public void addBeans(Bean[] beans) {
+		for(Bean bean : beans){
+			bean.reset();
+			beanQueue.add(bean);
+		}
+	}
+
+	/**
+	 * Sets a source whose beans enter the machine after the beans already in the
+	 * reservoir, without otherwise disturbing the machine. Beans are taken from
+	 * the source only as they enter the top row. If landed beans are not
+	 * retained (see setRetainSlotBeans), they are handed back to the source for
+	 * reuse.
+	 * 
+	 * @param source the source of beans, or null for none
+	 */
+	public void setBeanSource(BeanSource source) {
+		beanSource = source;
+		beanRuns = null;
+	}
+
 	/**
 	 * Returns the number of beans remaining that are waiting to get inserted.
 	 * 
 	 * @return number of beans remaining
 	 */
 	public int getRemainingBeanCount() {
-		return beanQueue.size();
+		return Math.toIntExact(getRemainingBeanCountLong());
+	}
+
+	/**
+	 * Returns the number of beans remaining that are waiting to get inserted as a
+	 * long.
+	 * 
+	 * @return number of beans remaining
+	 */
+	public long getRemainingBeanCountLong() {
+		long remaining = beanQueue.size();
+		if (beanSource != null) {
+			remaining += beanSource.getRemainingBeanCount();
+		}
+		return remaining;
 	}
 
 	/**
@@ -92,16 +294,48 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * @return the x-coordinate of the in-flight bean; if no bean in y-coordinate, return NO_BEAN_IN_YPOS
 	 */
 	public int getInFlightBeanXPos(int yPos) {
-		Bean[] level = jumpingBeans.get(yPos);
+		return getInFlightBeanXPos(yPos, 0);
+	}
 
-		for(int i = 0; i < level.length; i++){
-			if(level[i] != null){
-				return i;
-			}
+	/**
+	 * Returns the x-coordinate of the kth in-flight bean at the provided
+	 * y-coordinate. Only meaningful in wide-pipeline mode.
+	 * 
+	 * @param yPos the y-coordinate in which to look for the in-flight bean
+	 * @param k    which of the row's beans to look at
+	 * @return the x-coordinate of the in-flight bean; if there are not more than k beans in the y-coordinate,
+	 *         return NO_BEAN_IN_YPOS
+	 */
+	public int getInFlightBeanXPos(int yPos, int k) {
+		int row = physicalRow(yPos);
+		if(k < rowOccupancy[row]){
+			return jumpingBeans[row * pipelineWidth + k].getXPos();
 		}
 		return NO_BEAN_IN_YPOS;
 	}
 
+	/**
+	 * Returns the number of in-flight beans at the provided y-coordinate.
+	 * 
+	 * @param yPos the y-coordinate
+	 * @return number of beans in the row, from 0 to the pipeline width
+	 */
+	public int getInFlightBeanCount(int yPos) {
+		return rowOccupancy[physicalRow(yPos)];
+	}
+
+	/**
+	 * Maps a logical row (y-coordinate) to its physical row in the circular
+	 * buffer.
+	 * 
+	 * @param yPos the y-coordinate
+	 * @return the physical row index
+	 */
+	private int physicalRow(int yPos) {
+		int row = cursor - yPos;
+		return row < 0 ? row + slotCount : row;
+	}
+
 	/**
 	 * Returns the number of beans in the ith slot.
 	 * 
@@ -109,7 +343,18 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * @return number of beans in slot
 	 */
 	public int getSlotBeanCount(int i) {
-		return bottomSlots.get(i).size();
+		return Math.toIntExact(slotCounts[i]);
+	}
+
+	/**
+	 * Returns the number of beans in the ith slot as a long, which does not
+	 * overflow for runs of more than 2^31 beans.
+	 * 
+	 * @param i index of slot
+	 * @return number of beans in slot
+	 */
+	public long getSlotBeanCountLong(int i) {
+		return slotCounts[i];
 	}
 
 	/**
@@ -118,12 +363,11 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * @return Average slot number of all the beans in slots.
 	 */
 	public double getAverageSlotBeanCount() {
-		int total = 0;
-		int positionSum = 0;
+		long total = 0;
+		long positionSum = 0;
 		for(int i = 0; i < slotCount ; i++ ){
-			ArrayList<Bean> slot = bottomSlots.get(i);
-			total = total + slot.size();
-			positionSum += (slot.size()*i);
+			total = total + slotCounts[i];
+			positionSum += (slotCounts[i]*i);
 		}
 		return (double) positionSum/total;
 	}
@@ -135,51 +379,16 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * will be remaining.
 	 */
 	public void upperHalf() {
-		int size = 0;
-		int totalCut = 0;
-		boolean breakOuterLoop = false;
-
-		for(ArrayList<Bean> slot : bottomSlots){
-			size += slot.size();
-		}
-		if(size % 2 == 0){ //even
-			while(size > totalCut){
-				for(ArrayList<Bean> slot : bottomSlots){
-					for(Bean bean : slot){
-						slot.remove(bean);
-						totalCut++;
-						size--;
-
-						if (size <= totalCut + 1) {
-							breakOuterLoop = true;
-							break;
-						}
-					}
-					if (breakOuterLoop){
-						break;
-					}
-				}
-			}
-		}else{ //odd
-			while(size > totalCut+1){
-				for(ArrayList<Bean> slot : bottomSlots){
-					for(Bean bean : slot){
-						slot.remove(bean);
-						totalCut++;
-						size--;
-
-						if (size <= totalCut + 1) {
-							breakOuterLoop = true;
-							break;
-						}
-					}
-					if (breakOuterLoop){
-						break;
-					}
-				}
-			}
+		long toRemove = getInSlotBeanCount() / 2;
+		for(int i = 0; i < slotCount && toRemove > 0; i++){
+			toRemove -= removeSlotBeans(i, toRemove);
+		}
+		if (eventSink != null) {
+			eventSink.slotsHalved(true);
 		}
+		publishAll();
 	}
+
 	/**
 	 * Removes the upper half of all beans currently in slots, keeping only the
 	 * lower half.  If there are an odd number of beans, remove (N-1)/2 beans, where
@@ -187,51 +396,60 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * will be remaining.
 	 */
 	public void lowerHalf() {
-		int size = 0;
-		int totalCut = 0;
-		boolean breakOuterLoop = false;
-		
-		for(ArrayList<Bean> slot : bottomSlots){
-			size += slot.size();
-		}
-		if(size % 2 == 0){ //even
-			while(size > totalCut){
-				for(int i = bottomSlots.size()-1; i >= 0; i--){
-					for(Bean bean : bottomSlots.get(i)){
-						bottomSlots.get(i).remove(bean);
-						totalCut++;
-						size--;
-
-						if (size <= totalCut + 1) {
-							breakOuterLoop = true;
-							break;
-						}
-					}
-					if (breakOuterLoop){
-						break;
-					}
-				}
-			}
-		}else{ //odd
-			while(size > totalCut+1){
-				for(int i = bottomSlots.size()-1; i >= 0; i--){
-					for(Bean bean : bottomSlots.get(i)){
-						bottomSlots.get(i).remove(bean);
-						totalCut++;
-						size--;
-
-						if (size <= totalCut + 1) {
-							breakOuterLoop = true;
-							break;
-						}
-					}
-					if (breakOuterLoop){
-						break;
-					}
-				}
-			}
+		long toRemove = getInSlotBeanCount() / 2;
+		for(int i = slotCount - 1; i >= 0 && toRemove > 0; i--){
+			toRemove -= removeSlotBeans(i, toRemove);
 		}
+		if (eventSink != null) {
+			eventSink.slotsHalved(false);
+		}
+		publishAll();
 	}
+
+	/**
+	 * Adds beans that did not fall through the machine to the slots, such as
+	 * beans dropped into BeanCounterLogicConcurrent from other threads. They are
+	 * counted only; there are no bean objects for them.
+	 * 
+	 * @param counts the number of beans to add to each slot
+	 */
+	void addSlotBeans(long[] counts) {
+		for(int i = 0; i < slotCount; i++){
+			slotCounts[i] += counts[i];
+		}
+		publishAll();
+	}
+
+	/**
+	 * Returns the total number of beans in all slots.
+	 * 
+	 * @return number of beans in slots
+	 */
+	private long getInSlotBeanCount() {
+		long total = 0;
+		for(int i = 0; i < slotCount; i++){
+			total += slotCounts[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Removes up to max beans from the ith slot.
+	 * 
+	 * @param i   index of slot
+	 * @param max maximum number of beans to remove
+	 * @return the number of beans removed
+	 */
+	private long removeSlotBeans(int i, long max) {
+		long removed = Math.min(max, slotCounts[i]);
+		slotCounts[i] -= removed;
+		ArrayList<Bean> slot = bottomSlots.get(i);
+		for(long k = 0; k < removed && !slot.isEmpty(); k++){
+			slot.remove(slot.size() - 1);
+		}
+		return removed;
+	}
+
 	/**
 	 * A hard reset. Initializes the machine with the passed beans. The machine
 	 * starts with one bean at the top.
@@ -239,14 +457,44 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * @param beans array of beans to add to the machine
 	 */
 	public void reset(Bean[] beans) {
+		reset(beans, null);
+	}
 
-		beanQueue = new ArrayList<>();
-		jumpingBeans = new ArrayList<Bean[]>();
-		bottomSlots = new ArrayList<ArrayList<Bean>>();
+	/**
+	 * A hard reset with beans supplied by source. Beans are taken from the
+	 * source only as they enter the top row, so the cost of a reset does not
+	 * depend on the number of beans. If source is a BeanRuns, landed beans are
+	 * only counted (whatever setRetainSlotBeans says) and repeat() scoops them
+	 * up as runs.
+	 * 
+	 * @param source the source of the beans
+	 */
+	public void reset(BeanSource source) {
+		reset(new Bean[0], source);
+	}
 
-		for(int i = 0; i < slotCount; i++){
-			jumpingBeans.add(new Bean[i+1]);
-			bottomSlots.add(new ArrayList<Bean>());
+	/**
+	 * A hard reset with the passed beans, followed by those of source.
+	 * 
+	 * @param beans  array of beans to add to the machine
+	 * @param source the source of further beans, or null
+	 */
+	private void reset(Bean[] beans, BeanSource source) {
+		if (eventPublisher != null) {
+			eventPublisher.machineReset();
+		}
+
+		// Clear the structures in place, so that a machine reused for many runs does not reallocate them
+		beanQueue.clear();
+		beanSource = source;
+		beanRuns = source instanceof BeanRuns ? (BeanRuns) source : null;
+		Arrays.fill(jumpingBeans, null);
+		Arrays.fill(rowOccupancy, 0);
+		cursor = 0;
+		Arrays.fill(slotCounts, 0);
+
+		for(ArrayList<Bean> slot : bottomSlots){
+			slot.clear();
 		}
 
 		//Add beans to queue
@@ -255,25 +503,42 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 			beanQueue.add(bean);
 		}
 
-		jumpingBeans.get(0)[0] = beanQueue.get(0);
-		beanQueue.remove(0);
+		stepCount = 0;
+		if (eventSink != null) {
+			eventSink.machineReset();
+		}
+		insertBeans();
+		if (eventSink != null) {
+			eventSink.stepFinished(stepCount, getRemainingBeanCountLong());
+		}
+		if (eventPublisher != null) {
+			eventPublisher.stepFinished(stepCount);
+		}
+		publishAll();
 	}
 
 	/**
 	 * Repeats the experiment by scooping up all beans in the slots and all beans
 	 * in-flight and adding them into the pool of remaining beans. As in the
-	 * beginning, the machine starts with one bean at the top.
+	 * beginning, the machine starts with one bean at the top. Slot beans that were
+	 * not retained (see setRetainSlotBeans) are not scooped up, unless the
+	 * machine was reset with a BeanRuns: then the beans are scooped up as runs,
+	 * one per slot, at a cost that does not depend on the number of beans.
 	 */
 	public void repeat() {
+		if(beanRuns != null){
+			repeatRuns();
+			return;
+		}
 		//holds all falling and in-slot beans
 		ArrayList<Bean> allBeans = new ArrayList<>();
 
 		//get all in flight
 		for(int i = 0; i < slotCount; i++){
-			Bean[] row = jumpingBeans.get(i);
-			for(int j = 0; j < row.length; j++){
-				if(row[j] != null)	allBeans.add(row[j]);
-			} 
+			int row = physicalRow(i);
+			for(int k = 0; k < rowOccupancy[row]; k++){
+				allBeans.add(jumpingBeans[row * pipelineWidth + k]);
+			}
 		}
 
 		//get all from slots
@@ -283,6 +548,30 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 		reset(allBeans.toArray(new Bean[0]));
 	}
 
+	/**
+	 * Repeats the experiment of a machine reset with a BeanRuns. In-flight beans
+	 * go first, then the slots from left to right. In skill mode, the beans of
+	 * slot i are those of skill level i; in luck mode all beans are alike.
+	 */
+	private void repeatRuns() {
+		BeanRuns runs = new BeanRuns(slotCount, beanRuns.isLuck(), beanRuns.getRandom());
+		for(int i = 0; i < slotCount; i++){
+			int row = physicalRow(i);
+			for(int k = 0; k < rowOccupancy[row]; k++){
+				Bean bean = jumpingBeans[row * pipelineWidth + k];
+				if(!(bean instanceof BeanImpl)){
+					throw new IllegalStateException("cannot repeat " + bean.getClass().getName() + " as a run");
+				}
+				runs.add(((BeanImpl) bean).getSkillLevel(), 1);
+				runs.recycle(bean);
+			}
+		}
+		for(int i = 0; i < slotCount; i++){
+			runs.add(i, slotCounts[i]);
+		}
+		reset(runs);
+	}
+
 	/**
 	 * Advances the machine one step. All the in-flight beans fall down one step to
 	 * the next peg. A new bean is inserted into the top of the machine if there are
@@ -293,70 +582,301 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 */
 	public boolean advanceStep() throws BeanOutOfBoundsException {
 		boolean Changes = false;
-		int lastRow = jumpingBeans.size()-1;
-		//move all beans in rows down, starting from bottow row into slots
-		for(int i = lastRow; i >= 0; i--){
-			Bean[] rowArray = jumpingBeans.get(i); 
-			for(int j = 0; j <  rowArray.length; j++ ){ 
-				if(rowArray[j] != null){ //NuLL CaTcH ;)
-					Changes = true; //set change flag since we will be moving beans
-					Bean bean = rowArray[j]; 
-					if(i == lastRow){ //do not advance (it can't move horizontally anymore), just drop down
-						bottomSlots.get(j).add(bean); //add bean to bottom slot 
-					} 
-					else {
-						bean.advanceStep(); //move bean down
-						jumpingBeans.get(i+1)[bean.getXPos()] = bean; 
-					}
-					rowArray[j] = null; //set previous location to null
+		//move all beans above the last row down in place, starting from the bottom row like beans falling
+		for(int i = slotCount-2; i >= 0; i--){
+			int row = physicalRow(i);
+			int occupancy = rowOccupancy[row];
+			for(int k = 0; k < occupancy; k++){
+				int cell = row * pipelineWidth + k;
+				Bean bean = jumpingBeans[cell];
+				if(eventSink == null){
+					bean.advanceStep(); //move bean down
+				}else{
+					int xPos = bean.getXPos();
+					bean.advanceStep();
+					eventSink.beanMoved(beanIds[cell], i + 1, bean.getXPos() != xPos);
 				}
+				Changes = true;
 			}
 		}
-		//send new bean from queue into top spot
-		if(!beanQueue.isEmpty()){
-			jumpingBeans.get(0)[0] = beanQueue.get(0);
-			beanQueue.remove(0);
+		//beans in the last row do not advance (they can't move horizontally anymore), they just drop down
+		int lastRow = physicalRow(slotCount-1);
+		int occupancy = rowOccupancy[lastRow];
+		if(publisher != null){
+			publisher.beginUpdate();
+		}
+		for(int k = 0; k < occupancy; k++){
+			int cell = lastRow * pipelineWidth + k;
+			Bean bean = jumpingBeans[cell];
+			int slot = bean.getXPos();
+			slotCounts[slot]++; //add bean to bottom slot 
+			if(retainSlotBeans && beanRuns == null){
+				bottomSlots.get(slot).add(bean);
+			}
+			if(publisher != null){
+				publisher.setSlotBeanCount(slot, slotCounts[slot]);
+			}
+			if(eventSink != null){
+				eventSink.beanLanded(beanIds[cell], slot);
+			}
+			if(eventPublisher != null){
+				eventPublisher.beanLanded(slot);
+			}
+			if((!retainSlotBeans || beanRuns != null) && beanSource != null){
+				beanSource.recycle(bean);
+			}
+			jumpingBeans[cell] = null;
+			Changes = true; //set change flag since we moved beans
+		}
+		rowOccupancy[lastRow] = 0;
+		//the emptied last row becomes the new top row
+		cursor = lastRow;
+		//send new beans from queue into top spot
+		if(insertBeans() > 0){
 			Changes = true;
 		}
+		if(Changes){
+			stepCount++;
+		}
+		if(publisher != null){
+			publisher.endUpdate(stepCount, getRemainingBeanCountLong());
+		}
+		if(eventSink != null){
+			eventSink.stepFinished(stepCount, getRemainingBeanCountLong());
+		}
+		if(eventPublisher != null){
+			eventPublisher.stepFinished(stepCount);
+		}
 		return Changes;
 	}
+
+	/**
+	 * Moves up to pipelineWidth beans from the reservoir into the top row, which
+	 * must be empty.
+	 * 
+	 * @return the number of beans inserted
+	 */
+	private int insertBeans() {
+		int row = cursor * pipelineWidth;
+		int inserted = 0;
+		while(inserted < pipelineWidth){
+			Bean bean = beanQueue.poll();
+			if(bean == null){
+				if(beanSource == null || beanSource.getRemainingBeanCount() == 0){
+					break;
+				}
+				bean = beanSource.next();
+			}
+			jumpingBeans[row + inserted] = bean;
+			beanIds[row + inserted] = nextBeanId;
+			if(eventSink != null){
+				eventSink.beanInserted(nextBeanId);
+			}
+			nextBeanId++;
+			inserted++;
+		}
+		rowOccupancy[cursor] = inserted;
+		return inserted;
+	}
 	
+	/**
+	 * Copies the observable state of the machine into a snapshot, reading the
+	 * internal structures directly rather than going through the getters.
+	 * 
+	 * @param reuse a snapshot to refill, or null
+	 * @return the filled snapshot
+	 */
+	public MachineSnapshot snapshot(MachineSnapshot reuse) {
+		MachineSnapshot s = reuse == null ? new MachineSnapshot() : reuse;
+		s.begin(slotCount);
+		int inFlight = 0;
+		for(int i = 0; i < slotCount; i++){
+			int row = physicalRow(i);
+			if(rowOccupancy[row] > 0){
+				s.setInFlightBeanXPos(i, jumpingBeans[row * pipelineWidth].getXPos());
+				inFlight += rowOccupancy[row];
+			}
+			s.setSlotBeanCount(i, slotCounts[i]);
+		}
+		s.setInFlightBeanCount(inFlight);
+		s.setRemainingBeanCount(getRemainingBeanCountLong());
+		return s;
+	}
+
+	/**
+	 * Copies the complete state of the machine, including every bean and the
+	 * state of their random number generators, into a checkpoint. Restoring the
+	 * checkpoint yields a machine that continues exactly as this one would.
+	 * The checkpoint shares nothing with the machine, so it can be written out
+	 * while the machine keeps running. Beans a GeneratedBeanSource has yet to
+	 * supply are recorded by its generator and count; beans of any other bean
+	 * source are not part of the checkpoint.
+	 *
+	 * @return the checkpoint
+	 * @throws IllegalArgumentException if a bean is not a BeanImpl
+	 */
+	public MachineCheckpoint checkpoint() {
+		MachineCheckpoint c = new MachineCheckpoint();
+		MachineCheckpoint.Builder table = new MachineCheckpoint.Builder();
+		c.slotCount = slotCount;
+		c.pipelineWidth = pipelineWidth;
+		c.retainSlotBeans = retainSlotBeans;
+		c.stepCount = stepCount;
+		c.slotCounts = slotCounts.clone();
+
+		int inFlightLength = slotCount;
+		for(int i = 0; i < slotCount; i++){
+			inFlightLength += rowOccupancy[i];
+		}
+		c.inFlight = new int[inFlightLength];
+		int pos = 0;
+		for(int i = 0; i < slotCount; i++){
+			int row = physicalRow(i);
+			c.inFlight[pos++] = rowOccupancy[row];
+			for(int k = 0; k < rowOccupancy[row]; k++){
+				c.inFlight[pos++] = table.indexOf(jumpingBeans[row * pipelineWidth + k]);
+			}
+		}
+
+		c.reservoir = new int[beanQueue.size()];
+		pos = 0;
+		for(Bean bean : beanQueue){
+			c.reservoir[pos++] = table.indexOf(bean);
+		}
+
+		int slotBeansLength = slotCount;
+		for(ArrayList<Bean> slot : bottomSlots){
+			slotBeansLength += slot.size();
+		}
+		c.slotBeans = new int[slotBeansLength];
+		pos = 0;
+		for(ArrayList<Bean> slot : bottomSlots){
+			c.slotBeans[pos++] = slot.size();
+			for(Bean bean : slot){
+				c.slotBeans[pos++] = table.indexOf(bean);
+			}
+		}
+
+		if(beanSource instanceof GeneratedBeanSource){
+			GeneratedBeanSource source = (GeneratedBeanSource) beanSource;
+			c.sourceRandom = table.indexOf(source.getRandom());
+			c.sourceLuck = source.isLuck();
+			c.sourceRemaining = source.getRemainingBeanCount();
+		}
+
+		table.finish(c);
+		return c;
+	}
+
+	/**
+	 * Recreates a machine from a checkpoint. Publishers are not part of the
+	 * checkpoint and have to be set again.
+	 *
+	 * @param c the checkpoint
+	 * @return the restored machine
+	 * @throws IOException if the checkpoint is inconsistent
+	 */
+	public static BeanCounterLogicImpl restore(MachineCheckpoint c) throws IOException {
+		Random[] rands = c.createRandoms();
+		BeanImpl[] beans = c.createBeans(rands);
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(c.slotCount, c.pipelineWidth);
+		try {
+			logic.retainSlotBeans = c.retainSlotBeans;
+			logic.stepCount = c.stepCount;
+			System.arraycopy(c.slotCounts, 0, logic.slotCounts, 0, c.slotCount);
+
+			int pos = 0;
+			for(int i = 0; i < c.slotCount; i++){
+				int row = logic.physicalRow(i);
+				int occupancy = c.inFlight[pos++];
+				if(occupancy > c.pipelineWidth){
+					throw new IOException("row " + i + " holds more beans than the pipeline width");
+				}
+				for(int k = 0; k < occupancy; k++){
+					logic.jumpingBeans[row * c.pipelineWidth + k] = beans[c.inFlight[pos++]];
+					logic.beanIds[row * c.pipelineWidth + k] = logic.nextBeanId++;
+				}
+				logic.rowOccupancy[row] = occupancy;
+			}
+
+			for(int index : c.reservoir){
+				logic.beanQueue.add(beans[index]);
+			}
+
+			pos = 0;
+			for(int i = 0; i < c.slotCount; i++){
+				int size = c.slotBeans[pos++];
+				ArrayList<Bean> slot = logic.bottomSlots.get(i);
+				for(int k = 0; k < size; k++){
+					slot.add(beans[c.slotBeans[pos++]]);
+				}
+			}
+			logic.beanSource = c.createBeanSource(rands);
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			throw new IOException("inconsistent checkpoint", ex);
+		}
+		return logic;
+	}
+
 	/**
 	 * Number of spaces in between numbers when printing out the state of the machine.
 	 * Make sure the number is odd (even numbers don't work as well).
 	 */
-	private final int xspacing = 3;
+	static final int xspacing = 3;
 
 	/**
 	 * Calculates the number of spaces to indent for the given row of pegs.
 	 * 
-	 * @param yPos the y-position (or row number) of the pegs
+	 * @param slotCount the number of slots in the machine
+	 * @param yPos      the y-position (or row number) of the pegs
 	 * @return the number of spaces to indent
 	 */
-	private int getIndent(int yPos) {
-		int rootIndent = (getSlotCount() - 1) * (xspacing + 1) / 2 + (xspacing + 1);
+	static int getIndent(int slotCount, int yPos) {
+		int rootIndent = (slotCount - 1) * (xspacing + 1) / 2 + (xspacing + 1);
 		return rootIndent - (xspacing + 1) / 2 * yPos;
 	}
 
 	/**
 	 * Constructs a string representation of the bean count of all the slots.
+	 * Counts are right-aligned under the pegs, and counts too wide for that
+	 * still get one space in front so that they stay separated.
 	 * 
 	 * @return a string with bean counts for each slot
 	 */
 	public String getSlotString() {
+		long[] counts = new long[getSlotCount()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = getSlotBeanCountLong(i);
+		}
+		return getSlotString(counts);
+	}
+
+	/**
+	 * Constructs a string representation of the given slot bean counts, laid out
+	 * as getSlotString() lays out those of a machine.
+	 * 
+	 * @param counts the number of beans in each slot
+	 * @return a string with bean counts for each slot
+	 */
+	static String getSlotString(long[] counts) {
 		StringBuilder bld = new StringBuilder();
-		Formatter fmt = new Formatter(bld);
-		String format = "%" + (xspacing + 1) + "d";
-		for (int i = 0; i < getSlotCount(); i++) {
-			fmt.format(format, getSlotBeanCount(i));
+		for (int i = 0; i < counts.length; i++) {
+			String count = Long.toString(counts[i]);
+			for (int pad = count.length(); pad < xspacing + 1; pad++) {
+				bld.append(' ');
+			}
+			if (count.length() >= xspacing + 1) {
+				bld.append(' ');
+			}
+			bld.append(count);
 		}
-		fmt.close();
 		return bld.toString();
 	}
 
 	/**
 	 * Constructs a string representation of the entire machine. If a peg has a bean
 	 * above it, it is represented as a "1", otherwise it is represented as a "0".
+	 * In wide-pipeline mode, each peg shows the number of beans above it.
 	 * At the very bottom is attached the slots with the bean counts.
 	 * 
 	 * @return the string representation of the machine
@@ -368,15 +888,16 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 		StringBuilder bld = new StringBuilder();
 		Formatter fmt = new Formatter(bld);
 		for (int yPos = 0; yPos < getSlotCount(); yPos++) {
-			int xBeanPos = getInFlightBeanXPos(yPos);
 			for (int xPos = 0; xPos <= yPos; xPos++) {
-				int spacing = (xPos == 0) ? getIndent(yPos) : (xspacing + 1);
+				int spacing = (xPos == 0) ? getIndent(getSlotCount(), yPos) : (xspacing + 1);
 				String format = "%" + spacing + "d";
-				if (xPos == xBeanPos) {
-					fmt.format(format, 1);
-				} else {
-					fmt.format(format, 0);
+				int beans = 0;
+				for (int k = 0; k < getInFlightBeanCount(yPos); k++) {
+					if (getInFlightBeanXPos(yPos, k) == xPos) {
+						beans++;
+					}
 				}
+				fmt.format(format, beans);
 			}
 			fmt.format("\n");
 		}
@@ -388,9 +909,29 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 	 * Prints usage information.
 	 */
 	public static void showUsage() {
-		System.out.println("Usage: java BeanCounterLogic slot_count bean_count <luck | skill> [debug]");
+		System.out.println("Usage: java BeanCounterLogic slot_count bean_count <luck | skill> [debug] [options]");
 		System.out.println("Example: java BeanCounterLogic 10 400 luck");
 		System.out.println("Example: java BeanCounterLogic 20 1000 skill debug");
+		System.out.println("Options:");
+		System.out.println("  --live           show the machine in place, redrawing only what changes (ANSI terminal)");
+		System.out.println("  --debug-every=N  in debug or live mode, show the machine every N steps (default 1)");
+		System.out.println("  --stats-every=N  print the remaining beans and the average slot every N steps");
+		System.out.println("  --backpressure=P when the console falls behind: block (default), drop-oldest or sample");
+		System.out.println("  --output-queue=Q number of frames and stats lines that may wait for the console (default 64)");
+		System.out.println("  --width=K        wide pipeline: up to K beans enter per step and share each row");
+		System.out.println("  --publish=FILE   publish the live histogram to FILE for HistogramMonitor");
+		System.out.println("  --checkpoint=FILE        write checkpoints of the run to FILE in the background");
+		System.out.println("  --checkpoint-every=N     steps between checkpoints (default 1000000)");
+		System.out.println("  --restore=FILE   resume the run from the checkpoint in FILE");
+		System.out.println("  --events=FILE    log the path of every bean to FILE for BeanEventReplay");
+		System.out.println("  --tape=FILE      draw all random numbers from the RandomTape in FILE");
+		System.out.println("  --converge=TOL   stop once the KL divergence from the expected distribution is at most TOL");
+		System.out.println("  --converge-every=N       steps between convergence checks (default 1000)");
+		System.out.println("  --output=FILE    write histogram snapshots to FILE");
+		System.out.println("  --format=F       format of the output file: csv (default), jsonl or binary");
+		System.out.println("  --snapshot-every=N       steps between snapshots (default only the final histogram)");
+		System.out.println("  --seed=S         seed the random numbers (for a tape, S selects the starting word)");
+		System.out.println("  --cache=DIR      reuse the results of earlier seeded runs kept in DIR");
 	}
 	
 	/**
@@ -403,7 +944,29 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 		boolean debug;
 		boolean luck;
 		int slotCount = 0;
-		int beanCount = 0;
+		long beanCount = 0;
+		int pipelineWidth = 1;
+		long checkpointInterval = 0;
+		double tolerance = 0;
+		long convergeInterval = 0;
+		long seed = 0;
+		long debugInterval = 1;
+		long snapshotInterval = 0;
+		long statsInterval = 0;
+		int queueCapacity = 64;
+		HistogramOutput.Format outputFormat;
+		OutputPipeline.Policy backpressure;
+
+		CommandLineOptions options;
+		try {
+			options = CommandLineOptions.parse(args, "width", "publish", "checkpoint", "checkpoint-every", "restore",
+					"events", "tape", "converge", "converge-every", "seed", "cache", "debug-every", "live", "output",
+					"format", "snapshot-every", "stats-every", "backpressure", "output-queue");
+		} catch (IllegalArgumentException ie) {
+			showUsage();
+			return;
+		}
+		args = options.getPositional();
 
 		if (args.length != 3 && args.length != 4) {
 			showUsage();
@@ -412,12 +975,30 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 
 		try {
 			slotCount = Integer.parseInt(args[0]);
-			beanCount = Integer.parseInt(args[1]);
-		} catch (NumberFormatException ne) {
+			beanCount = Long.parseLong(args[1]);
+			pipelineWidth = options.getInt("width", 1);
+			checkpointInterval = options.getLong("checkpoint-every", 1000000);
+			tolerance = options.getDouble("converge", 0);
+			convergeInterval = options.getLong("converge-every", 1000);
+			seed = options.getLong("seed", 0);
+			debugInterval = options.getLong("debug-every", 1);
+			snapshotInterval = options.getLong("snapshot-every", 0);
+			outputFormat = HistogramOutput.Format.parse(options.getString("format", "csv"));
+			statsInterval = options.getLong("stats-every", 0);
+			queueCapacity = options.getInt("output-queue", 64);
+			backpressure = OutputPipeline.Policy.parse(options.getString("backpressure", "block"));
+		} catch (IllegalArgumentException ie) {
 			showUsage();
 			return;
 		}
-		if (beanCount < 0) {
+		if (beanCount < 0 || pipelineWidth < 1 || checkpointInterval < 1 || tolerance < 0 || convergeInterval < 1
+				|| debugInterval < 1 || snapshotInterval < 0 || statsInterval < 0 || queueCapacity < 1) {
+			showUsage();
+			return;
+		}
+
+		if (options.has("events") && options.has("restore")) {
+			// A log has to start with the reset of the machine
 			showUsage();
 			return;
 		}
@@ -437,18 +1018,135 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 			debug = false;
 		}
 
-		// Create the internal logic
-		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
-		// Create the beans (in luck mode)
-		BeanImpl[] beans = new BeanImpl[beanCount];
-		for (int i = 0; i < beanCount; i++) {
-			beans[i] = new BeanImpl(slotCount, luck, new Random());
+		ConvergenceMonitor monitor = null;
+		if (options.has("converge")) {
+			monitor = new ConvergenceMonitor(slotCount, luck);
+		}
+
+		// Only a seeded run that starts afresh and has no side effects is repeatable
+		ExperimentCache cache = null;
+		String cacheKey = null;
+		if (options.has("cache") && options.has("seed") && !debug && !options.has("live") && statsInterval == 0
+				&& !options.has("tape") && !options.has("restore") && !options.has("events")
+				&& !options.has("publish") && !options.has("checkpoint") && !options.has("output")) {
+			SortedMap<String, String> parameters = ExperimentCache.runParameters(slotCount, beanCount, luck,
+					pipelineWidth, seed);
+			if (monitor != null) {
+				parameters.put("converge", Double.toString(tolerance));
+				parameters.put("converge-every", Long.toString(convergeInterval));
+			}
+			cacheKey = ExperimentCache.canonicalKey(parameters);
+			try {
+				cache = new ExperimentCache(Paths.get(options.getString("cache", "")), RECENT_RESULTS);
+				ExperimentResult cached = cache.get(cacheKey);
+				if (cached != null) {
+					printResult(cached, monitor, tolerance);
+					return;
+				}
+			} catch (IOException ex) {
+				System.out.println("Cannot read result cache: " + ex.getMessage());
+				cache = null;
+			}
+		}
+
+		BeanCounterLogicImpl logic;
+		BeanEventLog eventLog = null;
+		// The machine runs on this thread, so all beans can share a generator without locking
+		Random rand = options.has("seed") ? new BitReservoirRandom(seed) : new BitReservoirRandom();
+		if (options.has("tape")) {
+			try {
+				rand = options.has("seed") ? new RandomTape(Paths.get(options.getString("tape", "")), seed)
+						: new RandomTape(Paths.get(options.getString("tape", "")));
+			} catch (IOException ex) {
+				System.out.println("Cannot read random tape: " + ex.getMessage());
+				return;
+			}
+		}
+		if (options.has("restore")) {
+			// Resume the run; beans the checkpoint does not account for have yet to be created
+			try {
+				MachineCheckpoint c = MachineCheckpoint.read(Paths.get(options.getString("restore", "")));
+				long total = c.getBeanCount() + c.getSourceBeanCount();
+				if (c.getSlotCount() != slotCount || total > beanCount || c.hasBeanSource() && total != beanCount) {
+					System.out.println("Checkpoint does not match slot_count and bean_count.");
+					return;
+				}
+				// The checkpoint normally carries the bean source with its generator, so the run continues unchanged
+				logic = restore(c);
+				if (!c.hasBeanSource()) {
+					logic.setBeanSource(new GeneratedBeanSource(InstanceType.IMPL, slotCount, luck,
+							beanCount - c.getBeanCount(), rand));
+				}
+			} catch (IOException ex) {
+				System.out.println("Cannot restore checkpoint: " + ex.getMessage());
+				return;
+			}
+		} else {
+			// Create the internal logic; only the counts of landed beans are needed
+			logic = new BeanCounterLogicImpl(slotCount, pipelineWidth);
+			logic.setRetainSlotBeans(false);
+			if (options.has("events")) {
+				try {
+					eventLog = new BeanEventLog(Paths.get(options.getString("events", "")), slotCount, pipelineWidth);
+				} catch (IOException ex) {
+					System.out.println("Cannot create event log: " + ex.getMessage());
+					return;
+				}
+				logic.setBeanEventSink(eventLog);
+			}
+			// Initialize the logic; beans are created as they enter the machine and reused once they land
+			logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, luck, beanCount, rand));
+		}
+
+		HistogramPublisher publisher = null;
+		if (options.has("publish")) {
+			try {
+				publisher = new HistogramPublisher(Paths.get(options.getString("publish", "")), slotCount);
+			} catch (IOException ex) {
+				System.out.println("Cannot publish histogram: " + ex.getMessage());
+				return;
+			}
+			logic.setHistogramPublisher(publisher);
+		}
+
+		Checkpointer checkpointer = null;
+		if (options.has("checkpoint")) {
+			checkpointer = new Checkpointer(Paths.get(options.getString("checkpoint", "")));
 		}
-		// Initialize the logic with the beans
-		logic.reset(beans);
 
-		if (debug) {
-			System.out.println(logic.toString());
+		HistogramOutput output = null;
+		if (options.has("output")) {
+			try {
+				output = new HistogramOutput(Paths.get(options.getString("output", "")), outputFormat, slotCount);
+			} catch (IOException ex) {
+				System.out.println("Cannot create output file: " + ex.getMessage());
+				return;
+			}
+		}
+
+		// Frames and stats lines are written to the console by another thread, bypassing System.out
+		OutputPipeline console = null;
+		OutputPipeline.Source frames = null;
+		OutputPipeline.Source stats = null;
+		TextRenderer renderer = null;
+		if (debug || options.has("live") || statsInterval > 0) {
+			System.out.flush();
+			console = new OutputPipeline(TextRenderer.standardOutput(), backpressure, queueCapacity);
+			// Separate counts, so that dropped stats lines do not make the live view redraw
+			frames = console.newSource();
+			stats = console.newSource();
+		}
+		if (debug || options.has("live")) {
+			renderer = options.has("live") ? new AnsiDiffRenderer(frames, slotCount)
+					: new TextRenderer(frames, slotCount);
+			renderer.setFrameInterval(debugInterval);
+			try {
+				renderer.render(logic);
+				renderer.flush();
+			} catch (IOException ex) {
+				System.out.println("Cannot write debug output: " + ex.getMessage());
+				renderer = null;
+			}
 		}
 
 		// Perform the experiment
@@ -461,12 +1159,169 @@ public class BeanCounterLogicImpl implements BeanCounterLogic {
 				System.out.println("Bean went out of bounds unexpectedly.  Shutting down.");
 				break;
 			}
-			if (debug) {
-				System.out.println(logic.toString());
+			if (renderer != null) {
+				try {
+					// One flush per frame, so the pipeline queues or drops whole frames
+					if (renderer.renderIfDue(logic)) {
+						renderer.flush();
+					}
+				} catch (IOException ex) {
+					System.out.println("Cannot write debug output: " + ex.getMessage());
+					renderer = null;
+				}
+			}
+			if (statsInterval > 0 && logic.getStepCount() % statsInterval == 0) {
+				try {
+					writeStats(console, stats, logic);
+				} catch (IOException ex) {
+					System.out.println("Cannot write stats: " + ex.getMessage());
+					statsInterval = 0;
+				}
+			}
+			if (monitor != null && logic.getStepCount() % convergeInterval == 0) {
+				monitor.update(logic);
+				if (monitor.isConverged(tolerance)) {
+					break;
+				}
+			}
+			if (checkpointer != null && logic.getStepCount() % checkpointInterval == 0) {
+				try {
+					checkpointer.checkpoint(logic);
+				} catch (IOException ex) {
+					System.out.println("Cannot write checkpoint: " + ex.getMessage());
+					checkpointer = null;
+				}
+			}
+			if (output != null && snapshotInterval > 0 && logic.getStepCount() % snapshotInterval == 0) {
+				output = writeSnapshot(output, logic);
 			}
 		}
-		// display experimental results
+		if (output != null) {
+			if (snapshotInterval == 0 || logic.getStepCount() % snapshotInterval != 0) {
+				output = writeSnapshot(output, logic);
+			}
+			if (output != null) {
+				try {
+					output.close();
+				} catch (IOException ex) {
+					System.out.println("Cannot write output file: " + ex.getMessage());
+				}
+			}
+		}
+		if (renderer != null) {
+			try {
+				// The last frame is never dropped, and redrawn if it was
+				renderer.renderLast(logic);
+			} catch (IOException ex) {
+				System.out.println("Cannot write debug output: " + ex.getMessage());
+			}
+		}
+		if (console != null) {
+			// Let the writer catch up before printing through System.out again
+			try {
+				console.close();
+			} catch (IOException ex) {
+				System.out.println("Cannot write debug output: " + ex.getMessage());
+			}
+			if (console.getDroppedCount() > 0) {
+				String policy = console.getPolicy().toString().toLowerCase(Locale.ROOT).replace('_', '-');
+				System.out.println("Dropped " + console.getDroppedCount() + " of " + console.getMessageCount()
+						+ " console messages (" + policy + "): " + frames.getDroppedCount() + " frames, "
+						+ stats.getDroppedCount() + " stats lines");
+			}
+		}
+		if (checkpointer != null) {
+			try {
+				checkpointer.close();
+			} catch (IOException ex) {
+				System.out.println("Cannot write checkpoint: " + ex.getMessage());
+			}
+		}
+		if (eventLog != null) {
+			try {
+				eventLog.close();
+			} catch (IOException ex) {
+				System.out.println("Cannot write event log: " + ex.getMessage());
+			}
+		}
+		if (publisher != null) {
+			try {
+				publisher.close();
+			} catch (IOException ex) {
+				System.out.println("Cannot close histogram: " + ex.getMessage());
+			}
+		}
+		ExperimentResult result = ExperimentResult.of(logic);
+		if (cache != null) {
+			try {
+				cache.put(cacheKey, result);
+			} catch (IOException ex) {
+				System.out.println("Cannot write result cache: " + ex.getMessage());
+			}
+		}
+		printResult(result, monitor, tolerance);
+	}
+
+	/**
+	 * Writes a line with the progress of logic to the console as one message.
+	 * 
+	 * @param console the console
+	 * @param out     the source of stats lines in the console
+	 * @param logic   the machine
+	 * @throws IOException if the console cannot be written
+	 */
+	private static void writeStats(OutputPipeline console, OutputPipeline.Source out, BeanCounterLogicImpl logic)
+			throws IOException {
+		StringBuilder line = new StringBuilder("step ").append(logic.getStepCount());
+		line.append(": remaining ").append(logic.getRemainingBeanCountLong());
+		if (logic.getInSlotBeanCount() > 0) {
+			line.append(", average ").append(String.format(Locale.ROOT, "%.4f", logic.getAverageSlotBeanCount()));
+		}
+		line.append(", dropped ").append(console.getDroppedCount()).append('\n');
+		out.write(ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * Appends a snapshot of logic to output. If that fails, output is closed and
+	 * no further snapshots are taken.
+	 * 
+	 * @param output the output file
+	 * @param logic  the machine
+	 * @return output, or null if the snapshot failed
+	 */
+	private static HistogramOutput writeSnapshot(HistogramOutput output, BeanCounterLogicImpl logic) {
+		try {
+			output.snapshot(logic);
+			return output;
+		} catch (IOException ex) {
+			System.out.println("Cannot write output file: " + ex.getMessage());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			output.close();
+		} catch (IOException ex) {
+			// Already reported
+		}
+		return null;
+	}
+
+	/**
+	 * Displays the results of an experiment.
+	 * 
+	 * @param result    the result
+	 * @param monitor   the convergence monitor, or null if convergence was not checked
+	 * @param tolerance the convergence tolerance
+	 */
+	private static void printResult(ExperimentResult result, ConvergenceMonitor monitor, double tolerance) {
 		System.out.println("Slot bean counts:");
-		System.out.println(logic.getSlotString());
+		System.out.println(getSlotString(result.getSlotCounts()));
+		if (monitor != null) {
+			monitor.update(result.getSlotCounts());
+			System.out.println((monitor.isConverged(tolerance) ? "Converged" : "Did not converge") + " with "
+					+ monitor.getBeanCount() + " beans: KL divergence " + monitor.getKlDivergence() + ", chi-square "
+					+ monitor.getChiSquare() + " (" + monitor.getDegreesOfFreedom() + " df), p-value "
+					+ monitor.getPValue());
+		}
 	}
 }
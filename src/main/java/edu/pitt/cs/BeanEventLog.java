@@ -0,0 +1,172 @@
+package edu.pitt.cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * BeanEventLog: A BeanEventSink that appends every event to a compact binary
+ * log, which BeanEventReplay reads back.
+ *
+ * <p>
+ * The log starts with a little-endian header of four ints: MAGIC, VERSION,
+ * slot count and pipeline width. Then follows one record per event. Each
+ * record starts with a varint whose low three bits are the kind and whose
+ * remaining bits are the payload:
+ *
+ * <pre>
+ * kind          payload                              followed by
+ * INSERT        zigzag(bean id - previous bean id)
+ * LEFT, RIGHT   zigzag(bean id - previous bean id)
+ * LAND          zigzag(bean id - previous bean id)
+ * STEP          step - previous step                 varint zigzag(remaining - previous remaining)
+ * RESET         0
+ * LOWER_HALF    0
+ * UPPER_HALF    0
+ * </pre>
+ *
+ * <p>
+ * Consecutive events mostly concern beans with neighbouring ids, so an event
+ * usually takes a single byte. Rows and slots are not stored: the row of a bean
+ * is the number of moves since its insert, and its slot is the number of RIGHT
+ * moves. Records are collected in a direct buffer and appended through a
+ * FileChannel whenever the buffer fills up. If appending fails, for example
+ * because the disk is full, the machine keeps running: the log stops and
+ * close() throws the error.
+ */
+public class BeanEventLog implements BeanEventSink, Closeable {
+	static final int MAGIC = 0x42434531; // "BCE1"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	static final int INSERT = 0;
+	static final int LEFT = 1;
+	static final int RIGHT = 2;
+	static final int LAND = 3;
+	static final int STEP = 4;
+	static final int RESET = 5;
+	static final int LOWER_HALF = 6;
+	static final int UPPER_HALF = 7;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Longest record: two 10-byte varints
+	private static final int MAX_RECORD_SIZE = 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long lastBeanId;
+	private long lastStep;
+	private long lastRemaining;
+	// The first error appending to the file; records are discarded from then on
+	private IOException failure;
+
+	/**
+	 * Constructor - creates (or truncates) the log at path and writes its header.
+	 * 
+	 * @param path          the log file
+	 * @param slotCount     the number of slots in the machine
+	 * @param pipelineWidth the pipeline width of the machine
+	 * @throws IOException if the file cannot be created
+	 */
+	public BeanEventLog(Path path, int slotCount, int pipelineWidth) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(slotCount).putInt(pipelineWidth);
+	}
+
+	@Override
+	public void machineReset() {
+		putRecord(RESET, 0);
+		lastStep = 0;
+	}
+
+	@Override
+	public void beanInserted(long beanId) {
+		putBeanRecord(INSERT, beanId);
+	}
+
+	@Override
+	public void beanMoved(long beanId, int row, boolean right) {
+		putBeanRecord(right ? RIGHT : LEFT, beanId);
+	}
+
+	@Override
+	public void beanLanded(long beanId, int slot) {
+		putBeanRecord(LAND, beanId);
+	}
+
+	@Override
+	public void slotsHalved(boolean upper) {
+		putRecord(upper ? UPPER_HALF : LOWER_HALF, 0);
+	}
+
+	@Override
+	public void stepFinished(long step, long remainingBeanCount) {
+		putRecord(STEP, step - lastStep);
+		putVarint(zigzag(remainingBeanCount - lastRemaining));
+		lastStep = step;
+		lastRemaining = remainingBeanCount;
+	}
+
+	private void putBeanRecord(int kind, long beanId) {
+		putRecord(kind, zigzag(beanId - lastBeanId));
+		lastBeanId = beanId;
+	}
+
+	private void putRecord(int kind, long payload) {
+		if (buffer.remaining() < MAX_RECORD_SIZE) {
+			flushBuffer();
+		}
+		putVarint(payload << 3 | kind);
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) (value | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Appends the buffered records to the file, unless appending has failed
+	 * before. Records that cannot be appended are discarded.
+	 */
+	private void flushBuffer() {
+		buffer.flip();
+		try {
+			while (failure == null && buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException ex) {
+			failure = ex;
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Appends the buffered records to the file and closes it.
+	 * 
+	 * @throws IOException if the records cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			channel.close();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,360 @@
+package edu.pitt.cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * BeanEventReplay: Reads a log written by BeanEventLog and reconstructs the
+ * machine state after every step, without beans or random numbers.
+ *
+ * <p>
+ * The replay only keeps the slot counts and the beans in flight. Beans in
+ * flight were inserted during the last slot count steps, so their ids lie in a
+ * window of slot count times pipeline width ids, and they are kept in arrays
+ * indexed by id modulo that size. The log is read sequentially in large
+ * chunks, so replay runs at disk speed.
+ */
+public class BeanEventReplay implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 20;
+	// Enough for the longest record
+	private static final int MIN_AVAILABLE = 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private boolean endOfFile;
+
+	private final int slotCount;
+	private final int pipelineWidth;
+	private final int capacity;
+	// Row and x-coordinate of the in-flight bean with id i at index i mod capacity; row -1 if none
+	private final int[] beanRow;
+	private final int[] beanX;
+	private final long[] slotCounts;
+	private int inFlightBeanCount;
+	private long lastBeanId;
+	private long newestBeanId = -1;
+	private long stepCount;
+	private long remainingBeanCount;
+
+	/**
+	 * Constructor - opens the log at path and reads its header. The state is
+	 * that of an empty machine until the first call to nextStep().
+	 * 
+	 * @param path the log file
+	 * @throws IOException if the file cannot be read or is not a bean event log
+	 */
+	public BeanEventReplay(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		buffer.order(ByteOrder.LITTLE_ENDIAN).flip();
+		fill();
+		if (buffer.remaining() < BeanEventLog.HEADER_SIZE || buffer.getInt() != BeanEventLog.MAGIC
+				|| buffer.getInt() != BeanEventLog.VERSION) {
+			channel.close();
+			throw new IOException(path + " is not a bean event log");
+		}
+		slotCount = buffer.getInt();
+		pipelineWidth = buffer.getInt();
+		if (slotCount < 1 || pipelineWidth < 1) {
+			channel.close();
+			throw new IOException(path + " is a corrupt bean event log");
+		}
+		capacity = Math.multiplyExact(slotCount, pipelineWidth);
+		beanRow = new int[capacity];
+		beanX = new int[capacity];
+		slotCounts = new long[slotCount];
+		Arrays.fill(beanRow, -1);
+	}
+
+	/**
+	 * Reads more of the file so that at least MIN_AVAILABLE bytes are buffered,
+	 * unless the file ends first.
+	 */
+	private void fill() throws IOException {
+		if (endOfFile || buffer.remaining() >= MIN_AVAILABLE) {
+			return;
+		}
+		buffer.compact();
+		while (buffer.position() < MIN_AVAILABLE) {
+			if (channel.read(buffer) < 0) {
+				endOfFile = true;
+				break;
+			}
+		}
+		buffer.flip();
+	}
+
+	private long getVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (!buffer.hasRemaining()) {
+				throw new IOException("truncated bean event log");
+			}
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("corrupt bean event log");
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Applies the records of the next step, along with any reset or halving
+	 * recorded before it.
+	 * 
+	 * @return whether there was another step; false at the end of the log
+	 * @throws IOException if the log cannot be read or is inconsistent
+	 */
+	public boolean nextStep() throws IOException {
+		while (true) {
+			fill();
+			if (!buffer.hasRemaining()) {
+				return false;
+			}
+			long record = getVarint();
+			long payload = record >>> 3;
+			int kind = (int) record & 7;
+			switch (kind) {
+				case BeanEventLog.INSERT:
+					insert(lastBeanId + unzigzag(payload));
+					break;
+				case BeanEventLog.LEFT:
+				case BeanEventLog.RIGHT:
+					move(lastBeanId + unzigzag(payload), kind == BeanEventLog.RIGHT);
+					break;
+				case BeanEventLog.LAND:
+					land(lastBeanId + unzigzag(payload));
+					break;
+				case BeanEventLog.STEP:
+					stepCount += payload;
+					remainingBeanCount += unzigzag(getVarint());
+					return true;
+				case BeanEventLog.RESET:
+					Arrays.fill(beanRow, -1);
+					Arrays.fill(slotCounts, 0);
+					inFlightBeanCount = 0;
+					stepCount = 0;
+					break;
+				default:
+					halve(kind == BeanEventLog.UPPER_HALF);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Applies steps until the step count reaches step or the log ends.
+	 * 
+	 * @param step the step count to reach
+	 * @return whether the step count was reached
+	 * @throws IOException if the log cannot be read or is inconsistent
+	 */
+	public boolean advanceTo(long step) throws IOException {
+		while (stepCount < step) {
+			if (!nextStep()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void insert(long id) throws IOException {
+		int i = Math.floorMod(id, capacity);
+		if (beanRow[i] != -1) {
+			throw new IOException("bean " + id + " inserted while bean in flight");
+		}
+		beanRow[i] = 0;
+		beanX[i] = 0;
+		inFlightBeanCount++;
+		lastBeanId = id;
+		newestBeanId = Math.max(newestBeanId, id);
+	}
+
+	private void move(long id, boolean right) throws IOException {
+		int i = inFlightIndex(id);
+		if (beanRow[i] == slotCount - 1) {
+			throw new IOException("bean " + id + " moved past the last row");
+		}
+		beanRow[i]++;
+		if (right) {
+			beanX[i]++;
+		}
+		lastBeanId = id;
+	}
+
+	private void land(long id) throws IOException {
+		int i = inFlightIndex(id);
+		slotCounts[beanX[i]]++;
+		beanRow[i] = -1;
+		inFlightBeanCount--;
+		lastBeanId = id;
+	}
+
+	private int inFlightIndex(long id) throws IOException {
+		int i = Math.floorMod(id, capacity);
+		if (id > newestBeanId || id <= newestBeanId - capacity || beanRow[i] == -1) {
+			throw new IOException("bean " + id + " is not in flight");
+		}
+		return i;
+	}
+
+	/**
+	 * Removes half of the beans in the slots the way BeanCounterLogicImpl does.
+	 * 
+	 * @param upper true to keep the upper half, false to keep the lower half
+	 */
+	private void halve(boolean upper) {
+		long toRemove = getInSlotBeanCount() / 2;
+		for (int k = 0; k < slotCount && toRemove > 0; k++) {
+			int i = upper ? k : slotCount - 1 - k;
+			long removed = Math.min(toRemove, slotCounts[i]);
+			slotCounts[i] -= removed;
+			toRemove -= removed;
+		}
+	}
+
+	/**
+	 * Returns the number of slots of the logged machine.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Returns the pipeline width of the logged machine.
+	 * 
+	 * @return the pipeline width
+	 */
+	public int getPipelineWidth() {
+		return pipelineWidth;
+	}
+
+	/**
+	 * Returns the step count after the last step applied.
+	 * 
+	 * @return the step count
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Returns the number of beans waiting in the reservoir.
+	 * 
+	 * @return number of beans remaining
+	 */
+	public long getRemainingBeanCount() {
+		return remainingBeanCount;
+	}
+
+	/**
+	 * Returns the number of beans in flight.
+	 * 
+	 * @return number of in-flight beans
+	 */
+	public int getInFlightBeanCount() {
+		return inFlightBeanCount;
+	}
+
+	/**
+	 * Returns the number of beans in the ith slot.
+	 * 
+	 * @param i index of slot
+	 * @return number of beans in slot
+	 */
+	public long getSlotBeanCount(int i) {
+		return slotCounts[i];
+	}
+
+	private long getInSlotBeanCount() {
+		long total = 0;
+		for (long count : slotCounts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Copies the reconstructed state into a snapshot. As in BeanCounterLogicImpl,
+	 * the x-coordinate recorded for a row is that of the bean inserted first.
+	 * 
+	 * @param reuse a snapshot to refill, or null
+	 * @return the filled snapshot
+	 */
+	public MachineSnapshot snapshot(MachineSnapshot reuse) {
+		MachineSnapshot s = reuse == null ? new MachineSnapshot() : reuse;
+		s.begin(slotCount);
+		// Oldest ids first, so the first bean seen in a row is the one inserted first
+		for (long id = newestBeanId - capacity + 1; id <= newestBeanId; id++) {
+			int i = Math.floorMod(id, capacity);
+			int row = beanRow[i];
+			if (row != -1 && s.getInFlightBeanXPos(row) == BeanCounterLogic.NO_BEAN_IN_YPOS) {
+				s.setInFlightBeanXPos(row, beanX[i]);
+			}
+		}
+		s.setInFlightBeanCount(inFlightBeanCount);
+		for (int i = 0; i < slotCount; i++) {
+			s.setSlotBeanCount(i, slotCounts[i]);
+		}
+		s.setRemainingBeanCount(remainingBeanCount);
+		return s;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Prints usage information.
+	 */
+	public static void showUsage() {
+		System.out.println("Usage: java BeanEventReplay log_file [step]");
+		System.out.println("Prints the machine state after the given step (default: the end of the log).");
+	}
+
+	/**
+	 * Replays a bean event log and prints the state after the given step.
+	 * 
+	 * @param args commandline arguments; see showUsage() for detailed information
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1 && args.length != 2) {
+			showUsage();
+			return;
+		}
+		long step;
+		try {
+			step = args.length == 2 ? Long.parseLong(args[1]) : Long.MAX_VALUE;
+		} catch (NumberFormatException ne) {
+			showUsage();
+			return;
+		}
+		try (BeanEventReplay replay = new BeanEventReplay(Paths.get(args[0]))) {
+			replay.advanceTo(step);
+			StringBuilder bld = new StringBuilder();
+			bld.append("step ").append(replay.getStepCount());
+			bld.append(" remaining ").append(replay.getRemainingBeanCount());
+			bld.append(" in flight ").append(replay.getInFlightBeanCount()).append(':');
+			for (int i = 0; i < replay.getSlotCount(); i++) {
+				bld.append(' ').append(replay.getSlotBeanCount(i));
+			}
+			System.out.println(bld);
+		} catch (IOException ex) {
+			System.out.println("Cannot replay event log: " + ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package edu.pitt.cs;
+
+/**
+ * BeanEventSink: Receives every bean movement of a BeanCounterLogicImpl, for
+ * example to record the path each bean took (see BeanEventLog).
+ *
+ * <p>
+ * Beans are identified by ids the machine hands out in insertion order,
+ * starting from 0 and never reused, so a bean that is scooped up by repeat()
+ * and inserted again gets a new id. Within a step, the machine reports the
+ * moves (bottom row first), then the beans landing, then the inserts, and
+ * finally stepFinished().
+ */
+public interface BeanEventSink {
+	/**
+	 * Called when the machine is reset: all in-flight beans and slot counts are
+	 * gone. The inserts that follow belong to step 0.
+	 */
+	void machineReset();
+
+	/**
+	 * Called when a bean enters the top row.
+	 * 
+	 * @param beanId the id of the bean
+	 */
+	void beanInserted(long beanId);
+
+	/**
+	 * Called when a bean falls to the next row.
+	 * 
+	 * @param beanId the id of the bean
+	 * @param row    the row the bean fell into
+	 * @param right  whether the bean went right (its x-coordinate went up by one)
+	 */
+	void beanMoved(long beanId, int row, boolean right);
+
+	/**
+	 * Called when a bean drops out of the last row into a slot.
+	 * 
+	 * @param beanId the id of the bean
+	 * @param slot   the slot it landed in
+	 */
+	void beanLanded(long beanId, int slot);
+
+	/**
+	 * Called when half of the beans in the slots are removed.
+	 * 
+	 * @param upper true for upperHalf() (lower slots emptied first), false for lowerHalf()
+	 */
+	void slotsHalved(boolean upper);
+
+	/**
+	 * Called at the end of every step, and after a reset.
+	 * 
+	 * @param step               the step count of the machine
+	 * @param remainingBeanCount number of beans waiting in the reservoir
+	 */
+	void stepFinished(long step, long remainingBeanCount);
+}
@@ -33,6 +33,72 @@ private int SKILL_LEVEL;
     //}
   }
 
+  /**
+   * Constructor - creates a bean in either luck mode or skill mode, drawing
+   * the skill level from a precomputed sampler. Unlike the constructor above,
+   * luck beans get no skill level and draw nothing from rand.
+   * 
+   * @param slotCount the number of slots in the machine
+   * @param isLuck    whether the bean is in luck mode
+   * @param rand      the random number generator
+   * @param sampler   the skill sampler for slotCount
+   */
+  BeanImpl(int slotCount, boolean isLuck, Random rand, SkillSampler sampler) {
+    this.slotCount = slotCount;
+    this.isLuck = isLuck;
+    this.rand = rand;
+    if (!isLuck) {
+      SKILL_LEVEL = sampler.sample(rand);
+    }
+  }
+
+  /**
+   * Constructor - recreates a bean from a checkpoint with its skill level and
+   * position as they were, without drawing from rand.
+   * 
+   * @param slotCount  the number of slots in the machine
+   * @param isLuck     whether the bean is in luck mode
+   * @param rand       the random number generator, in its checkpointed state
+   * @param skillLevel the skill level of the bean
+   * @param xpos       the X-coordinate of the bean
+   * @param ypos       the Y-coordinate of the bean
+   */
+  BeanImpl(int slotCount, boolean isLuck, Random rand, int skillLevel, int xpos, int ypos) {
+    this.slotCount = slotCount;
+    this.isLuck = isLuck;
+    this.rand = rand;
+    this.SKILL_LEVEL = skillLevel;
+    this.xpos = xpos;
+    this.ypos = ypos;
+  }
+
+  /**
+   * Returns the skill level of the bean.
+   * 
+   * @return the skill level
+   */
+  int getSkillLevel() {
+    return SKILL_LEVEL;
+  }
+
+  /**
+   * Returns whether the bean is in luck mode.
+   * 
+   * @return whether the bean is in luck mode
+   */
+  boolean isLuck() {
+    return isLuck;
+  }
+
+  /**
+   * Returns the random number generator of the bean.
+   * 
+   * @return the random number generator
+   */
+  Random getRandom() {
+    return rand;
+  }
+
   /**
    * Returns the current X-coordinate position of the bean in the logical
    * coordinate system.
@@ -61,6 +127,30 @@ private int SKILL_LEVEL;
     xpos = 0;
     ypos = 0;
   }
+  /**
+   * Resets the bean and draws a new skill level for it, so that a bean object
+   * can stand in for a new bean.
+   * 
+   * @param sampler the skill sampler for the bean's slot count
+   */
+  void respawn(SkillSampler sampler) {
+    reset();
+    if (!isLuck) {
+      SKILL_LEVEL = sampler.sample(rand);
+    }
+  }
+
+  /**
+   * Resets the bean and gives it the given skill level, so that a bean object
+   * can stand in for a new bean.
+   * 
+   * @param skillLevel the new skill level
+   */
+  void respawn(int skillLevel) {
+    reset();
+    SKILL_LEVEL = skillLevel;
+  }
+
   /**
    * Update the X and Y coordinates of the bean when the bean is advanced one step
    * in the machine. The Y coordinate is incremented by 1. The X coordinate gets
@@ -0,0 +1,160 @@
+package edu.pitt.cs;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * BeanRuns: A run-length encoded reservoir of BeanImpl beans, stored as
+ * (skill level, count) runs instead of bean objects.
+ *
+ * <p>
+ * Until a bean starts falling, all that distinguishes it is its skill level,
+ * and in luck mode not even that. So a reservoir of n beans needs only one run
+ * per distinct skill level, and a bean object is made (or a recycled one
+ * reused) only when a bean enters the machine. A BeanCounterLogicImpl reset
+ * with a BeanRuns keeps counting landed beans without keeping them: in skill
+ * mode a bean always lands in the slot equal to its skill level, so the slot
+ * counts say exactly which beans repeat() has to scoop up.
+ */
+public class BeanRuns implements BeanSource {
+	private final int slotCount;
+	private final boolean isLuck;
+	private final Random rand;
+	// Pairs of (skill level, count), oldest run first
+	private final ArrayDeque<long[]> runs = new ArrayDeque<>();
+	private final ArrayDeque<BeanImpl> recycled = new ArrayDeque<>();
+	private long remaining;
+
+	/**
+	 * Constructor - creates an empty reservoir.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether the beans are in luck mode
+	 * @param rand      the random number generator shared by the beans
+	 */
+	public BeanRuns(int slotCount, boolean isLuck, Random rand) {
+		this.slotCount = slotCount;
+		this.isLuck = isLuck;
+		this.rand = rand;
+	}
+
+	/**
+	 * Creates a reservoir of beanCount new beans. In skill mode the skill levels
+	 * are drawn from the skill sampler and the beans are ordered by skill level,
+	 * so that there is one run per level.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether the beans are in luck mode
+	 * @param beanCount the number of beans
+	 * @param rand      the random number generator shared by the beans
+	 * @return the reservoir
+	 */
+	public static BeanRuns generate(int slotCount, boolean isLuck, long beanCount, Random rand) {
+		BeanRuns runs = new BeanRuns(slotCount, isLuck, rand);
+		if (isLuck) {
+			runs.add(0, beanCount);
+			return runs;
+		}
+		SkillSampler sampler = SkillSampler.forSlotCount(slotCount);
+		long[] counts = new long[slotCount];
+		for (long i = 0; i < beanCount; i++) {
+			counts[sampler.sample(rand)]++;
+		}
+		for (int skill = 0; skill < slotCount; skill++) {
+			runs.add(skill, counts[skill]);
+		}
+		return runs;
+	}
+
+	/**
+	 * Adds count beans with the given skill level at the back of the reservoir.
+	 * In luck mode the skill level is ignored.
+	 * 
+	 * @param skillLevel the skill level of the beans
+	 * @param count      the number of beans
+	 */
+	public void add(int skillLevel, long count) {
+		if (count < 0 || skillLevel < 0 || skillLevel >= slotCount) {
+			throw new IllegalArgumentException("bad run: " + count + " beans of skill " + skillLevel);
+		}
+		if (count == 0) {
+			return;
+		}
+		int skill = isLuck ? 0 : skillLevel;
+		long[] last = runs.peekLast();
+		if (last != null && last[0] == skill) {
+			last[1] += count;
+		} else {
+			runs.add(new long[] {skill, count});
+		}
+		remaining += count;
+	}
+
+	/**
+	 * Returns whether the beans are in luck mode.
+	 * 
+	 * @return whether the beans are in luck mode
+	 */
+	public boolean isLuck() {
+		return isLuck;
+	}
+
+	/**
+	 * Returns the number of slots of the machine the beans are for.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Returns the random number generator shared by the beans.
+	 * 
+	 * @return the random number generator
+	 */
+	Random getRandom() {
+		return rand;
+	}
+
+	/**
+	 * Returns the number of runs in the reservoir.
+	 * 
+	 * @return number of runs
+	 */
+	public int getRunCount() {
+		return runs.size();
+	}
+
+	@Override
+	public long getRemainingBeanCount() {
+		return remaining;
+	}
+
+	@Override
+	public Bean next() {
+		long[] run = runs.peekFirst();
+		if (run == null) {
+			throw new NoSuchElementException();
+		}
+		int skill = (int) run[0];
+		if (--run[1] == 0) {
+			runs.pollFirst();
+		}
+		remaining--;
+		BeanImpl bean = recycled.poll();
+		if (bean == null) {
+			return new BeanImpl(slotCount, isLuck, rand, skill, 0, 0);
+		}
+		bean.respawn(skill);
+		return bean;
+	}
+
+	@Override
+	public void recycle(Bean bean) {
+		if (bean instanceof BeanImpl) {
+			recycled.add((BeanImpl) bean);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package edu.pitt.cs;
+
+/**
+ * BeanSource: Supplies the beans of a machine one at a time, as they enter the
+ * top of the board, so that a large population never has to exist all at once
+ * (see BeanCounterLogic.reset(BeanSource)).
+ */
+public interface BeanSource {
+	/**
+	 * Returns the number of beans the source has yet to supply.
+	 * 
+	 * @return number of beans remaining
+	 */
+	long getRemainingBeanCount();
+
+	/**
+	 * Supplies the next bean, reset to the top of the board.
+	 * 
+	 * @return the bean
+	 * @throws java.util.NoSuchElementException if there are no beans remaining
+	 */
+	Bean next();
+
+	/**
+	 * Hands back a bean supplied by this source that the machine no longer
+	 * needs, so its object can be reused for a later bean. Does nothing by
+	 * default.
+	 * 
+	 * @param bean the bean
+	 */
+	default void recycle(Bean bean) {
+	}
+}
@@ -0,0 +1,117 @@
+package edu.pitt.cs;
+
+import java.util.Random;
+
+/**
+ * BitReservoirRandom: A Random for luck-mode beans, which consume one random
+ * bit per peg through nextInt(2).
+ *
+ * <p>
+ * java.util.Random produces every value with a 48-bit LCG step guarded by an
+ * atomic compare-and-set, so a coin flip costs as much as any other number.
+ * This class keeps its generator state (SplitMix64) in a plain field instead
+ * and keeps a reservoir of 64 bits: nextInt(2) and nextBoolean() take the next
+ * bit of the reservoir and only refill it every 64 calls. All other methods
+ * draw from the same generator through next(bits), so skill levels from
+ * nextGaussian() and the like keep working.
+ *
+ * <p>
+ * Unlike java.util.Random, this class is not thread-safe. Share one instance
+ * among the beans of one machine, or give each thread its own.
+ */
+public class BitReservoirRandom extends Random {
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	// Not initialized here: Random's constructor sets it through setSeed()
+	private long state;
+	private long reservoir;
+	private int reservoirBits;
+
+	/**
+	 * Constructor - creates a generator with a seed that is very likely to be
+	 * distinct from that of any other generator.
+	 */
+	public BitReservoirRandom() {
+		super();
+	}
+
+	/**
+	 * Constructor - creates a generator with the given seed.
+	 * 
+	 * @param seed the initial seed
+	 */
+	public BitReservoirRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Sets the seed and empties the bit reservoir.
+	 * 
+	 * @param seed the new seed
+	 */
+	@Override
+	public void setSeed(long seed) {
+		state = seed;
+		reservoir = 0;
+		reservoirBits = 0;
+	}
+
+	/**
+	 * Returns the next 64 bits of the SplitMix64 sequence.
+	 * 
+	 * @return 64 random bits
+	 */
+	private long nextWord() {
+		long z = (state += GOLDEN_GAMMA);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the next bit of the reservoir, refilling it when empty.
+	 * 
+	 * @return 0 or 1
+	 */
+	private int nextBit() {
+		if (reservoirBits == 0) {
+			reservoir = nextWord();
+			reservoirBits = 64;
+		}
+		int bit = (int) reservoir & 1;
+		reservoir >>>= 1;
+		reservoirBits--;
+		return bit;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextWord() >>> (64 - bits));
+	}
+
+	/**
+	 * Returns a uniformly distributed int between 0 (inclusive) and bound
+	 * (exclusive). A bound of 2 is served from the bit reservoir.
+	 * 
+	 * @param bound the upper bound (exclusive)
+	 * @return the random int
+	 */
+	@Override
+	public int nextInt(int bound) {
+		if (bound == 2) {
+			return nextBit();
+		}
+		return super.nextInt(bound);
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		return nextBit() != 0;
+	}
+
+	@Override
+	public long nextLong() {
+		return nextWord();
+	}
+}
@@ -0,0 +1,94 @@
+package edu.pitt.cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checkpointer: Writes MachineCheckpoints to a file on a background thread,
+ * so that a long run only pays for copying its state, not for the disk.
+ *
+ * <p>
+ * At most one write is in flight. If the previous checkpoint is still being
+ * written when the next one is due, the new one is skipped rather than making
+ * the run wait; the file always holds the latest checkpoint that completed.
+ */
+public class Checkpointer implements Closeable {
+	private final Path path;
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "checkpoint-writer");
+		t.setDaemon(true);
+		return t;
+	});
+	private final AtomicBoolean busy = new AtomicBoolean(false);
+	private volatile IOException failure;
+	private long skipped;
+
+	/**
+	 * Constructor - creates a checkpointer writing to path.
+	 * 
+	 * @param path the checkpoint file
+	 */
+	public Checkpointer(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Takes a checkpoint of logic now and writes it in the background.
+	 * 
+	 * @param logic the machine to checkpoint; must be called on the thread that steps it
+	 * @return whether the checkpoint was taken, or skipped because a write is still in progress
+	 * @throws IOException if a previous background write failed
+	 */
+	public boolean checkpoint(BeanCounterLogicImpl logic) throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (!busy.compareAndSet(false, true)) {
+			skipped++;
+			return false;
+		}
+		MachineCheckpoint c = logic.checkpoint();
+		writer.execute(() -> {
+			try {
+				c.write(path);
+			} catch (IOException ex) {
+				failure = ex;
+			} finally {
+				busy.set(false);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Returns the number of checkpoints skipped because a write was in progress.
+	 * 
+	 * @return number of skipped checkpoints
+	 */
+	public long getSkippedCount() {
+		return skipped;
+	}
+
+	/**
+	 * Waits for the last write to finish.
+	 * 
+	 * @throws IOException if a background write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
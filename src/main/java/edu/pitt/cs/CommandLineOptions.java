@@ -0,0 +1,116 @@
+package edu.pitt.cs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CommandLineOptions: Splits commandline arguments into positional arguments
+ * and named options of the form --name=value (or just --name for a flag).
+ * Options may appear anywhere on the commandline.
+ */
+final class CommandLineOptions {
+	private final String[] positional;
+	private final Map<String, String> options;
+
+	private CommandLineOptions(String[] positional, Map<String, String> options) {
+		this.positional = positional;
+		this.options = options;
+	}
+
+	/**
+	 * Parses args, accepting only the named options in allowed.
+	 * 
+	 * @param args    commandline arguments
+	 * @param allowed the option names (without the leading --) that may appear
+	 * @return the parsed options
+	 * @throws IllegalArgumentException if an option is malformed, repeated or not allowed
+	 */
+	static CommandLineOptions parse(String[] args, String... allowed) {
+		List<String> names = Arrays.asList(allowed);
+		List<String> positional = new ArrayList<>();
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				positional.add(arg);
+				continue;
+			}
+			int eq = arg.indexOf('=');
+			String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+			String value = eq < 0 ? "" : arg.substring(eq + 1);
+			if (!names.contains(name) || options.containsKey(name)) {
+				throw new IllegalArgumentException("unexpected option " + arg);
+			}
+			options.put(name, value);
+		}
+		return new CommandLineOptions(positional.toArray(new String[0]), options);
+	}
+
+	/**
+	 * Returns the arguments that are not options, in order.
+	 * 
+	 * @return the positional arguments
+	 */
+	String[] getPositional() {
+		return positional.clone();
+	}
+
+	/**
+	 * Returns whether the option was given.
+	 * 
+	 * @param name option name
+	 * @return whether --name appeared
+	 */
+	boolean has(String name) {
+		return options.containsKey(name);
+	}
+
+	/**
+	 * Returns the value of a string option.
+	 * 
+	 * @param name         option name
+	 * @param defaultValue value if the option was not given
+	 * @return the option value
+	 */
+	String getString(String name, String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+
+	/**
+	 * Returns the value of an integer option.
+	 * 
+	 * @param name         option name
+	 * @param defaultValue value if the option was not given
+	 * @return the option value
+	 * @throws NumberFormatException if the value is not an integer
+	 */
+	int getInt(String name, int defaultValue) {
+		return has(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+	}
+
+	/**
+	 * Returns the value of a long integer option.
+	 * 
+	 * @param name         option name
+	 * @param defaultValue value if the option was not given
+	 * @return the option value
+	 * @throws NumberFormatException if the value is not an integer
+	 */
+	long getLong(String name, long defaultValue) {
+		return has(name) ? Long.parseLong(options.get(name)) : defaultValue;
+	}
+
+	/**
+	 * Returns the value of a floating point option.
+	 * 
+	 * @param name         option name
+	 * @param defaultValue value if the option was not given
+	 * @return the option value
+	 * @throws NumberFormatException if the value is not a number
+	 */
+	double getDouble(String name, double defaultValue) {
+		return has(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+	}
+}
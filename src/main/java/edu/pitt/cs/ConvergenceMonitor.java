@@ -0,0 +1,249 @@
+package edu.pitt.cs;
+
+/**
+ * ConvergenceMonitor: Measures how close the slot histogram of a running
+ * machine is to the distribution it should converge to, so that a run can
+ * stop as soon as the histogram is accurate enough.
+ *
+ * <p>
+ * Lucky beans land in slot i with the binomial probability C(n-1, i) / 2^(n-1)
+ * for n slots. Skilled beans land in the slot equal to their skill level, so
+ * their histogram converges to the rounded, clamped normal of SkillSampler.
+ *
+ * <p>
+ * The monitor keeps the sums behind two statistics and updates them from the
+ * change of each slot count since the last update:
+ *
+ * <pre>
+ * KL divergence  D = sum (O_i / N) ln(O_i / (N p_i))
+ *                  = (sum O_i ln O_i - sum O_i ln p_i) / N - ln N
+ * chi-square     X = sum (O_i - N p_i)^2 / (N p_i) = (sum O_i^2 / p_i) / N - N
+ * </pre>
+ *
+ * <p>
+ * D shrinks towards 0 as beans land (roughly like (slots - 1) / 2N), so a run
+ * stops once D is within a tolerance. X does not shrink; it is used for a
+ * goodness-of-fit test whose p-value says how plausible the histogram is
+ * under the expected distribution.
+ */
+public class ConvergenceMonitor {
+	private final double[] probabilities;
+	private final double[] logProbabilities;
+	private final long[] counts;
+	private long beanCount;
+	private double sumCountLogCount;
+	private double sumCountLogProbability;
+	private double sumSquareOverProbability;
+
+	/**
+	 * Constructor - creates a monitor for machines with the given slot count and
+	 * mode.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether the beans are in luck mode
+	 */
+	public ConvergenceMonitor(int slotCount, boolean isLuck) {
+		probabilities = expectedDistribution(slotCount, isLuck);
+		logProbabilities = new double[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			logProbabilities[i] = Math.log(probabilities[i]);
+		}
+		counts = new long[slotCount];
+	}
+
+	/**
+	 * Returns the distribution the slot histogram converges to.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether the beans are in luck mode
+	 * @return the probability of landing in each slot
+	 */
+	public static double[] expectedDistribution(int slotCount, boolean isLuck) {
+		double[] p = new double[slotCount];
+		if (isLuck) {
+			// Binomial(slotCount - 1, 1/2), through logarithms so that large machines do not overflow
+			int trials = slotCount - 1;
+			for (int i = 0; i < slotCount; i++) {
+				p[i] = Math.exp(logGamma(trials + 1) - logGamma(i + 1) - logGamma(trials - i + 1)
+						- trials * Math.log(2));
+			}
+		} else {
+			SkillSampler sampler = SkillSampler.forSlotCount(slotCount);
+			for (int i = 0; i < slotCount; i++) {
+				p[i] = sampler.getProbability(i);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Catches up with the slot counts of logic.
+	 * 
+	 * @param logic the machine
+	 */
+	public void update(BeanCounterLogic logic) {
+		for (int i = 0; i < counts.length; i++) {
+			update(i, logic.getSlotBeanCountLong(i));
+		}
+	}
+
+	/**
+	 * Catches up with the given slot counts, such as those of a finished run.
+	 * 
+	 * @param slotCounts the number of beans in each slot
+	 */
+	public void update(long[] slotCounts) {
+		for (int i = 0; i < counts.length; i++) {
+			update(i, slotCounts[i]);
+		}
+	}
+
+	private void update(int i, long count) {
+		long old = counts[i];
+		if (count != old) {
+			beanCount += count - old;
+			sumCountLogCount += xLogX(count) - xLogX(old);
+			sumCountLogProbability += (count - old) * logProbabilities[i];
+			sumSquareOverProbability += ((double) count * count - (double) old * old) / probabilities[i];
+			counts[i] = count;
+		}
+	}
+
+	private static double xLogX(long x) {
+		return x == 0 ? 0 : x * Math.log(x);
+	}
+
+	/**
+	 * Returns the number of beans in the slots as of the last update.
+	 * 
+	 * @return number of beans
+	 */
+	public long getBeanCount() {
+		return beanCount;
+	}
+
+	/**
+	 * Returns the KL divergence of the histogram from the expected distribution.
+	 * 
+	 * @return the divergence in nats; infinite while there are no beans
+	 */
+	public double getKlDivergence() {
+		if (beanCount == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double d = (sumCountLogCount - sumCountLogProbability) / beanCount - Math.log(beanCount);
+		// Rounding can push a perfect fit slightly below zero
+		return Math.max(0, d);
+	}
+
+	/**
+	 * Returns Pearson's chi-square statistic of the histogram against the
+	 * expected distribution.
+	 * 
+	 * @return the statistic; 0 while there are no beans
+	 */
+	public double getChiSquare() {
+		if (beanCount == 0) {
+			return 0;
+		}
+		return Math.max(0, sumSquareOverProbability / beanCount - beanCount);
+	}
+
+	/**
+	 * Returns the degrees of freedom of the chi-square test.
+	 * 
+	 * @return number of slots minus one
+	 */
+	public int getDegreesOfFreedom() {
+		return counts.length - 1;
+	}
+
+	/**
+	 * Returns the p-value of the chi-square goodness-of-fit test: the
+	 * probability that a histogram drawn from the expected distribution deviates
+	 * at least as much as this one.
+	 * 
+	 * @return the p-value
+	 */
+	public double getPValue() {
+		int df = getDegreesOfFreedom();
+		if (df == 0) {
+			return 1;
+		}
+		return upperRegularizedGamma(df / 2.0, getChiSquare() / 2);
+	}
+
+	/**
+	 * Returns whether the KL divergence is within tolerance.
+	 * 
+	 * @param tolerance the largest acceptable divergence
+	 * @return whether the histogram has converged
+	 */
+	public boolean isConverged(double tolerance) {
+		return getKlDivergence() <= tolerance;
+	}
+
+	/**
+	 * Returns ln(Gamma(x)) for x &gt; 0, using the Lanczos approximation.
+	 * 
+	 * @param x the point
+	 * @return ln(Gamma(x))
+	 */
+	static double logGamma(double x) {
+		final double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+			-1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double series = 1.000000000190015;
+		for (double c : coefficients) {
+			series += c / ++y;
+		}
+		return -tmp + Math.log(2.5066282746310005 * series / x);
+	}
+
+	/**
+	 * Returns the upper regularized incomplete gamma function Q(a, x), by its
+	 * series below a + 1 and its continued fraction above.
+	 * 
+	 * @param a the shape, greater than 0
+	 * @param x the point, at least 0
+	 * @return Q(a, x)
+	 */
+	static double upperRegularizedGamma(double a, double x) {
+		if (x <= 0) {
+			return 1;
+		}
+		double logPrefix = -x + a * Math.log(x) - logGamma(a);
+		if (x < a + 1) {
+			double term = 1 / a;
+			double sum = term;
+			for (int n = 1; n < 1000 && Math.abs(term) > Math.abs(sum) * 1e-15; n++) {
+				term *= x / (a + n);
+				sum += term;
+			}
+			return Math.max(0, 1 - sum * Math.exp(logPrefix));
+		}
+		// Modified Lentz's method
+		final double tiny = 1e-300;
+		double b = x + 1 - a;
+		double c = 1 / tiny;
+		double d = 1 / b;
+		double h = d;
+		for (int n = 1; n < 1000; n++) {
+			double an = -n * (n - a);
+			b += 2;
+			d = an * d + b;
+			d = Math.abs(d) < tiny ? tiny : d;
+			c = b + an / c;
+			c = Math.abs(c) < tiny ? tiny : c;
+			d = 1 / d;
+			double delta = d * c;
+			h *= delta;
+			if (Math.abs(delta - 1) < 1e-15) {
+				break;
+			}
+		}
+		return Math.exp(logPrefix) * h;
+	}
+}
@@ -0,0 +1,210 @@
+package edu.pitt.cs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * ExperimentCache: Keeps the results of seeded experiments on disk, with the
+ * most recently used ones in memory, so that an experiment that has been run
+ * before does not have to run again.
+ *
+ * <p>
+ * An experiment is identified by its canonical key: the implementation
+ * version followed by its parameters sorted by name. Each result is a small
+ * binary file in the cache directory, named after the SHA-256 hash of the
+ * key, holding (little-endian):
+ *
+ * <pre>
+ * int MAGIC, int VERSION
+ * int keyLength, byte[keyLength] key (UTF-8), to rule out hash collisions
+ * long stepCount, int slotCount, long[slotCount] slot counts
+ * </pre>
+ *
+ * <p>
+ * Only runs with a fixed seed are repeatable, so only those may be cached.
+ */
+public class ExperimentCache {
+	static final int MAGIC = 0x42435831; // "BCX1"
+	static final int VERSION = 1;
+
+	private final Path directory;
+	private final Map<String, ExperimentResult> recent;
+
+	/**
+	 * Constructor - creates a cache in directory, creating the directory if
+	 * needed.
+	 * 
+	 * @param directory      the cache directory
+	 * @param memoryCapacity the number of results to keep in memory
+	 * @throws IOException if the directory cannot be created
+	 */
+	public ExperimentCache(Path directory, int memoryCapacity) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		recent = new LinkedHashMap<String, ExperimentResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ExperimentResult> eldest) {
+				return size() > memoryCapacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the canonical key of an experiment.
+	 * 
+	 * @param parameters the parameters of the experiment by name
+	 * @return the key
+	 */
+	public static String canonicalKey(SortedMap<String, String> parameters) {
+		StringBuilder bld = new StringBuilder("impl=").append(BeanCounterLogicImpl.IMPLEMENTATION_VERSION);
+		for (Map.Entry<String, String> e : parameters.entrySet()) {
+			bld.append(';').append(e.getKey()).append('=').append(e.getValue());
+		}
+		return bld.toString();
+	}
+
+	/**
+	 * Returns the parameters of a text-mode run, by name, ready to be extended
+	 * with any further options that change its result.
+	 * 
+	 * @param slotCount     the number of slots
+	 * @param beanCount     the number of beans
+	 * @param isLuck        whether the beans are in luck mode
+	 * @param pipelineWidth the pipeline width
+	 * @param seed          the seed
+	 * @return the parameters
+	 */
+	public static SortedMap<String, String> runParameters(int slotCount, long beanCount, boolean isLuck,
+			int pipelineWidth, long seed) {
+		SortedMap<String, String> parameters = new TreeMap<>();
+		parameters.put("slots", Integer.toString(slotCount));
+		parameters.put("beans", Long.toString(beanCount));
+		parameters.put("mode", isLuck ? "luck" : "skill");
+		parameters.put("width", Integer.toString(pipelineWidth));
+		parameters.put("seed", Long.toString(seed));
+		return parameters;
+	}
+
+	/**
+	 * Returns the file that holds the result for key.
+	 * 
+	 * @param key the canonical key
+	 * @return the file
+	 */
+	private Path fileFor(String key) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException ex) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(ex);
+		}
+		StringBuilder name = new StringBuilder();
+		for (byte b : digest) {
+			name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return directory.resolve(name.append(".bin").toString());
+	}
+
+	/**
+	 * Returns the cached result for key, from memory if possible.
+	 * 
+	 * @param key the canonical key
+	 * @return the result, or null if the experiment has not been cached
+	 * @throws IOException if the result file cannot be read
+	 */
+	public ExperimentResult get(String key) throws IOException {
+		synchronized (recent) {
+			ExperimentResult result = recent.get(key);
+			if (result != null) {
+				return result;
+			}
+		}
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(fileFor(key));
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+		ExperimentResult result = decode(bytes, key);
+		if (result != null) {
+			synchronized (recent) {
+				recent.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Stores the result for key in memory and on disk. The file is written
+	 * next to its final name and then moved, so readers never see half a record.
+	 * 
+	 * @param key    the canonical key
+	 * @param result the result
+	 * @throws IOException if the result file cannot be written
+	 */
+	public void put(String key, ExperimentResult result) throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = ByteBuffer.allocate(4 * 4 + keyBytes.length + 8 + 8 * result.getSlotCount())
+				.order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(keyBytes.length).put(keyBytes);
+		buf.putLong(result.getStepCount()).putInt(result.getSlotCount());
+		for (int i = 0; i < result.getSlotCount(); i++) {
+			buf.putLong(result.getSlotBeanCount(i));
+		}
+		Path file = fileFor(key);
+		Path temp = Files.createTempFile(directory, "result", ".tmp");
+		try {
+			Files.write(temp, buf.array());
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		synchronized (recent) {
+			recent.put(key, result);
+		}
+	}
+
+	/**
+	 * Decodes a result file.
+	 * 
+	 * @param bytes the contents of the file
+	 * @param key   the canonical key the file should hold
+	 * @return the result, or null if the file holds another key
+	 * @throws IOException if the file is not a result record
+	 */
+	private static ExperimentResult decode(byte[] bytes, String key) throws IOException {
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+				throw new IOException("not an experiment result");
+			}
+			byte[] keyBytes = new byte[buf.getInt()];
+			buf.get(keyBytes);
+			if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+				return null;
+			}
+			long stepCount = buf.getLong();
+			long[] counts = new long[buf.getInt()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buf.getLong();
+			}
+			return new ExperimentResult(counts, stepCount);
+		} catch (RuntimeException ex) {
+			throw new IOException("corrupt experiment result", ex);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package edu.pitt.cs;
+
+/**
+ * ExperimentResult: The outcome of a text-mode run, as kept by
+ * ExperimentCache.
+ */
+public final class ExperimentResult {
+	private final long[] slotCounts;
+	private final long stepCount;
+
+	/**
+	 * Constructor - creates a result.
+	 * 
+	 * @param slotCounts the final number of beans in each slot
+	 * @param stepCount  the number of steps the run took
+	 */
+	public ExperimentResult(long[] slotCounts, long stepCount) {
+		this.slotCounts = slotCounts.clone();
+		this.stepCount = stepCount;
+	}
+
+	/**
+	 * Captures the result of a finished run.
+	 * 
+	 * @param logic the machine
+	 * @return the result
+	 */
+	public static ExperimentResult of(BeanCounterLogicImpl logic) {
+		long[] counts = new long[logic.getSlotCount()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = logic.getSlotBeanCountLong(i);
+		}
+		return new ExperimentResult(counts, logic.getStepCount());
+	}
+
+	/**
+	 * Returns the number of slots.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCounts.length;
+	}
+
+	/**
+	 * Returns the final number of beans in the ith slot.
+	 * 
+	 * @param i index of slot
+	 * @return number of beans in slot
+	 */
+	public long getSlotBeanCount(int i) {
+		return slotCounts[i];
+	}
+
+	/**
+	 * Returns the final number of beans in every slot.
+	 * 
+	 * @return a copy of the slot counts
+	 */
+	public long[] getSlotCounts() {
+		return slotCounts.clone();
+	}
+
+	/**
+	 * Returns the number of steps the run took.
+	 * 
+	 * @return number of steps
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Calculates the average slot number of all the beans in slots.
+	 * 
+	 * @return Average slot number of all the beans in slots.
+	 */
+	public double getAverageSlotBeanCount() {
+		long total = 0;
+		long positionSum = 0;
+		for (int i = 0; i < slotCounts.length; i++) {
+			total += slotCounts[i];
+			positionSum += slotCounts[i] * i;
+		}
+		return (double) positionSum / total;
+	}
+}
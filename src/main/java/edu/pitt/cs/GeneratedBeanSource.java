@@ -0,0 +1,107 @@
+package edu.pitt.cs;
+
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * GeneratedBeanSource: A BeanSource that creates its beans on demand, all in
+ * luck mode or all in skill mode, sharing one random number generator.
+ *
+ * <p>
+ * BeanImpl beans that are handed back through recycle() are reused with a
+ * freshly drawn skill level, so a machine that does not keep landed beans
+ * holds no more bean objects than fit on the board.
+ */
+public class GeneratedBeanSource implements BeanSource {
+	private final InstanceType type;
+	private final int slotCount;
+	private final boolean isLuck;
+	private final Random rand;
+	private final SkillSampler sampler;
+	private final ArrayDeque<BeanImpl> recycled = new ArrayDeque<>();
+	private long remaining;
+
+	/**
+	 * Constructor - creates a source of beanCount beans.
+	 * 
+	 * @param type      the type of beans to create
+	 * @param slotCount the number of slots in the machine
+	 * @param isLuck    whether the beans are in luck mode
+	 * @param beanCount the number of beans to supply
+	 * @param rand      the random number generator shared by the beans
+	 */
+	public GeneratedBeanSource(InstanceType type, int slotCount, boolean isLuck, long beanCount, Random rand) {
+		if (beanCount < 0) {
+			throw new IllegalArgumentException("bean count must not be negative");
+		}
+		this.type = type;
+		this.slotCount = slotCount;
+		this.isLuck = isLuck;
+		this.rand = rand;
+		this.remaining = beanCount;
+		// Only our own beans can take skill levels from the sampler
+		sampler = type == InstanceType.IMPL || type == InstanceType.CONCURRENT ? SkillSampler.forSlotCount(slotCount)
+				: null;
+	}
+
+	/**
+	 * Starts over with beanCount new beans, keeping the recycled bean objects
+	 * for reuse.
+	 * 
+	 * @param beanCount the number of beans to supply
+	 */
+	public void restart(long beanCount) {
+		if (beanCount < 0) {
+			throw new IllegalArgumentException("bean count must not be negative");
+		}
+		remaining = beanCount;
+	}
+
+	/**
+	 * Returns whether the beans are in luck mode.
+	 * 
+	 * @return whether the beans are in luck mode
+	 */
+	boolean isLuck() {
+		return isLuck;
+	}
+
+	/**
+	 * Returns the random number generator shared by the beans.
+	 * 
+	 * @return the generator
+	 */
+	Random getRandom() {
+		return rand;
+	}
+
+	@Override
+	public long getRemainingBeanCount() {
+		return remaining;
+	}
+
+	@Override
+	public Bean next() {
+		if (remaining == 0) {
+			throw new NoSuchElementException();
+		}
+		remaining--;
+		BeanImpl bean = recycled.poll();
+		if (bean != null) {
+			bean.respawn(sampler);
+			return bean;
+		}
+		if (sampler != null) {
+			return new BeanImpl(slotCount, isLuck, rand, sampler);
+		}
+		return Bean.createInstance(type, slotCount, isLuck, rand);
+	}
+
+	@Override
+	public void recycle(Bean bean) {
+		if (sampler != null && bean instanceof BeanImpl) {
+			recycled.add((BeanImpl) bean);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package edu.pitt.cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HistogramMonitor: Reads a histogram published by HistogramPublisher,
+ * possibly from another JVM. Reads go straight to the mapped file; see
+ * HistogramPublisher for the layout and the seqlock protocol.
+ */
+public class HistogramMonitor implements Closeable {
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int slotCount;
+	private long stepCount;
+	private long remaining;
+
+	/**
+	 * Constructor - maps a published histogram file for reading.
+	 * 
+	 * @param path the file to watch
+	 * @throws IOException if the file cannot be mapped or is not a histogram file
+	 */
+	public HistogramMonitor(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		if (channel.size() < HistogramPublisher.HEADER_SIZE) {
+			channel.close();
+			throw new IOException(path + " is not a published histogram");
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		slotCount = buffer.getInt(HistogramPublisher.SLOT_COUNT_OFFSET);
+		if (buffer.getInt(0) != HistogramPublisher.MAGIC || buffer.getInt(4) != HistogramPublisher.VERSION
+				|| channel.size() < HistogramPublisher.HEADER_SIZE + 8L * slotCount) {
+			channel.close();
+			throw new IOException(path + " is not a published histogram");
+		}
+	}
+
+	/**
+	 * Returns the number of slots in the histogram.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Returns the current sequence number. It changes by 2 with every completed
+	 * update, so a monitor can poll it cheaply to see whether anything changed.
+	 * 
+	 * @return the sequence number
+	 */
+	public long getSequence() {
+		return (long) HistogramPublisher.LONGS.getAcquire(buffer, HistogramPublisher.SEQUENCE_OFFSET);
+	}
+
+	/**
+	 * Reads a consistent copy of the histogram, retrying while an update is in
+	 * progress. The step count and reservoir size of the same update are then
+	 * available from getStepCount() and getRemainingBeanCount().
+	 * 
+	 * @param counts an array of getSlotCount() longs to fill
+	 * @return the sequence number of the update that was read
+	 */
+	public long read(long[] counts) {
+		while (true) {
+			long before = getSequence();
+			if ((before & 1) != 0) {
+				Thread.onSpinWait();
+				continue;
+			}
+			for (int i = 0; i < slotCount; i++) {
+				counts[i] = buffer.getLong(HistogramPublisher.HEADER_SIZE + 8 * i);
+			}
+			long step = buffer.getLong(HistogramPublisher.STEP_OFFSET);
+			long left = buffer.getLong(HistogramPublisher.REMAINING_OFFSET);
+			VarHandle.loadLoadFence();
+			if (getSequence() == before) {
+				stepCount = step;
+				remaining = left;
+				return before;
+			}
+		}
+	}
+
+	/**
+	 * Returns the step count of the last read().
+	 * 
+	 * @return number of steps taken
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+
+	/**
+	 * Returns the reservoir size of the last read().
+	 * 
+	 * @return number of beans remaining
+	 */
+	public long getRemainingBeanCount() {
+		return remaining;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Prints usage information.
+	 */
+	public static void showUsage() {
+		System.out.println("Usage: java HistogramMonitor file [interval_ms]");
+		System.out.println("Example: java HistogramMonitor /tmp/run.hist 500");
+	}
+
+	/**
+	 * Tails a published histogram, printing a line whenever it changes.
+	 * 
+	 * @param args the file to watch and an optional polling interval in milliseconds
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1 && args.length != 2) {
+			showUsage();
+			return;
+		}
+		long interval;
+		try {
+			interval = args.length == 2 ? Long.parseLong(args[1]) : 1000;
+		} catch (NumberFormatException ne) {
+			showUsage();
+			return;
+		}
+		try (HistogramMonitor monitor = new HistogramMonitor(Paths.get(args[0]))) {
+			long[] counts = new long[monitor.getSlotCount()];
+			long lastSequence = -1;
+			while (true) {
+				if (monitor.getSequence() != lastSequence) {
+					lastSequence = monitor.read(counts);
+					StringBuilder bld = new StringBuilder();
+					bld.append("step ").append(monitor.getStepCount());
+					bld.append(" remaining ").append(monitor.getRemainingBeanCount()).append(':');
+					for (long count : counts) {
+						bld.append(' ').append(count);
+					}
+					System.out.println(bld);
+				}
+				Thread.sleep(interval);
+			}
+		} catch (IOException ex) {
+			System.out.println("Cannot read histogram: " + ex.getMessage());
+		} catch (InterruptedException ie) {
+			// Nothing to do here
+		}
+	}
+}
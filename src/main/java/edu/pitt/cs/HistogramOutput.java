@@ -0,0 +1,266 @@
+package edu.pitt.cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HistogramOutput: Writes snapshots of the slot histogram of a run to a file,
+ * for post-processing without parsing console text.
+ *
+ * <p>
+ * Every snapshot holds the step count, the number of remaining beans and the
+ * count of every slot, in one of three formats:
+ *
+ * <pre>
+ * CSV     a header line step,remaining,slot_0,...,slot_{n-1}, then a line per snapshot
+ * JSONL   a line per snapshot: {"step":S,"remaining":R,"slots":[c0,...]}
+ * BINARY  a header of four little-endian ints (MAGIC, VERSION, slot count, record size),
+ *         then a fixed-size record per snapshot: long step, long remaining, long[n] slot counts
+ * </pre>
+ *
+ * <p>
+ * Snapshots are encoded on the calling thread into one of a few reusable
+ * buffers. A full buffer is handed to a background thread that writes it
+ * through a FileChannel, while the caller carries on with the next buffer, so
+ * the run only waits for the disk if all buffers are waiting to be written.
+ */
+public class HistogramOutput implements Closeable {
+	static final int MAGIC = 0x42434831; // "BCH1"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+
+	private static final int BUFFER_COUNT = 4;
+	private static final int MIN_BUFFER_SIZE = 1 << 16;
+	private static final int MAX_DIGITS = 19;
+
+	/**
+	 * Format: The file formats of HistogramOutput.
+	 */
+	public enum Format {
+		CSV, JSONL, BINARY;
+
+		/**
+		 * Returns the format with the given name, ignoring case.
+		 *
+		 * @param name the name
+		 * @return the format
+		 * @throws IllegalArgumentException if there is no such format
+		 */
+		public static Format parse(String name) {
+			return valueOf(name.toUpperCase(Locale.ROOT));
+		}
+	}
+
+	private final FileChannel channel;
+	private final Format format;
+	private final int slotCount;
+	private final int maxRecordSize;
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "histogram-writer");
+		t.setDaemon(true);
+		return t;
+	});
+	private final byte[] digits = new byte[MAX_DIGITS];
+	private ByteBuffer current;
+	private volatile IOException failure;
+	private long snapshotCount;
+
+	/**
+	 * Constructor - creates (or truncates) the file at path and writes its
+	 * header.
+	 *
+	 * @param path      the output file
+	 * @param format    the file format
+	 * @param slotCount the number of slots in the machine
+	 * @throws IOException if the file cannot be created
+	 */
+	public HistogramOutput(Path path, Format format, int slotCount) throws IOException {
+		this.format = format;
+		this.slotCount = slotCount;
+		// Step, remaining and counts with their separators, plus the JSON keys
+		maxRecordSize = (slotCount + 2) * (MAX_DIGITS + 1) + 40;
+		int bufferSize = Math.max(MIN_BUFFER_SIZE, 2 * maxRecordSize);
+		for (int i = 0; i < BUFFER_COUNT; i++) {
+			free.add(ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN));
+		}
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		current = free.remove();
+		if (format == Format.BINARY) {
+			current.putInt(MAGIC).putInt(VERSION).putInt(slotCount).putInt(getBinaryRecordSize(slotCount));
+		} else if (format == Format.CSV) {
+			StringBuilder header = new StringBuilder("step,remaining");
+			for (int i = 0; i < slotCount; i++) {
+				header.append(",slot_").append(i);
+			}
+			// At most 16 bytes per slot, so the header fits into the empty buffer
+			current.put(header.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * Returns the size of a record in the binary format.
+	 *
+	 * @param slotCount the number of slots
+	 * @return the record size in bytes
+	 */
+	static int getBinaryRecordSize(int slotCount) {
+		return 8 * (slotCount + 2);
+	}
+
+	/**
+	 * Appends a snapshot of the histogram of logic.
+	 *
+	 * @param logic the machine; must be called on the thread that steps it
+	 * @throws IOException          if a previous background write failed
+	 * @throws InterruptedException if interrupted while waiting for a free buffer
+	 */
+	public void snapshot(BeanCounterLogicImpl logic) throws IOException, InterruptedException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (current.remaining() < maxRecordSize) {
+			handOff();
+		}
+		long step = logic.getStepCount();
+		long remaining = logic.getRemainingBeanCountLong();
+		switch (format) {
+			case BINARY:
+				current.putLong(step).putLong(remaining);
+				for (int i = 0; i < slotCount; i++) {
+					current.putLong(logic.getSlotBeanCountLong(i));
+				}
+				break;
+			case CSV:
+				putDecimal(step);
+				current.put((byte) ',');
+				putDecimal(remaining);
+				for (int i = 0; i < slotCount; i++) {
+					current.put((byte) ',');
+					putDecimal(logic.getSlotBeanCountLong(i));
+				}
+				current.put((byte) '\n');
+				break;
+			default:
+				putAscii("{\"step\":");
+				putDecimal(step);
+				putAscii(",\"remaining\":");
+				putDecimal(remaining);
+				putAscii(",\"slots\":[");
+				for (int i = 0; i < slotCount; i++) {
+					if (i > 0) {
+						current.put((byte) ',');
+					}
+					putDecimal(logic.getSlotBeanCountLong(i));
+				}
+				putAscii("]}\n");
+				break;
+		}
+		snapshotCount++;
+	}
+
+	/**
+	 * Returns the number of snapshots taken so far.
+	 *
+	 * @return number of snapshots
+	 */
+	public long getSnapshotCount() {
+		return snapshotCount;
+	}
+
+	private void putDecimal(long value) {
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		while (n > 0) {
+			current.put(digits[--n]);
+		}
+	}
+
+	private void putAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			current.put((byte) text.charAt(i));
+		}
+	}
+
+	/**
+	 * Hands the current buffer to the writer thread and continues with a free
+	 * one, waiting for one if all are being written.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for a free buffer
+	 */
+	private void handOff() throws InterruptedException {
+		ByteBuffer full = current;
+		current = null;
+		write(full);
+		current = free.take();
+	}
+
+	/**
+	 * Queues a full buffer for the writer thread, which returns it to the free
+	 * buffers once written.
+	 *
+	 * @param full the buffer
+	 */
+	private void write(ByteBuffer full) {
+		full.flip();
+		writer.execute(() -> {
+			try {
+				while (full.hasRemaining()) {
+					channel.write(full);
+				}
+			} catch (IOException ex) {
+				failure = ex;
+			} finally {
+				full.clear();
+				free.add(full);
+			}
+		});
+	}
+
+	/**
+	 * Writes out the remaining snapshots, waits for the writer thread however
+	 * long it takes and closes the file.
+	 *
+	 * @throws IOException if a snapshot could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (current != null && current.position() > 0) {
+			write(current);
+		}
+		current = null;
+		writer.shutdown();
+		// The file must not be closed under a running write, so an interrupt only ends the wait later
+		boolean interrupted = false;
+		while (!writer.isTerminated()) {
+			try {
+				writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package edu.pitt.cs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * HistogramPublisher: Publishes the slot histogram of a running machine into a
+ * memory-mapped file so that other processes (see HistogramMonitor) can watch
+ * it without slowing the run down.
+ *
+ * <p>
+ * The file has a fixed little-endian layout:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  MAGIC
+ *      4     4  VERSION
+ *      8     4  slot count
+ *     12     4  (reserved)
+ *     16     8  sequence number (odd while an update is in progress)
+ *     24     8  step count
+ *     32     8  reservoir size (beans remaining)
+ *     40    24  (reserved)
+ *     64   8*n  slot bean counts
+ * </pre>
+ *
+ * <p>
+ * Updates are guarded by a seqlock. The writer makes the sequence number odd,
+ * writes the changed fields with plain stores, then makes it even again with a
+ * release store. A reader retries if it saw an odd number or the number
+ * changed while it was reading. The writer never waits for readers.
+ * Per step, only the slots that received beans are rewritten.
+ */
+public class HistogramPublisher implements Closeable {
+	static final int MAGIC = 0x42434831; // "BCH1"
+	static final int VERSION = 1;
+	static final int SLOT_COUNT_OFFSET = 8;
+	static final int SEQUENCE_OFFSET = 16;
+	static final int STEP_OFFSET = 24;
+	static final int REMAINING_OFFSET = 32;
+	static final int HEADER_SIZE = 64;
+
+	static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int slotCount;
+	private long sequence;
+
+	/**
+	 * Constructor - creates (or truncates) the file at path and maps it.
+	 * 
+	 * @param path      the file to publish into
+	 * @param slotCount the number of slots in the machine
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public HistogramPublisher(Path path, int slotCount) throws IOException {
+		this.slotCount = slotCount;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 8L * slotCount);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+		buffer.putInt(4, VERSION);
+		// Publish the magic number last so a reader never sees a half-written header
+		VarHandle.storeStoreFence();
+		buffer.putInt(0, MAGIC);
+	}
+
+	/**
+	 * Returns the number of slots in the published histogram.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Starts an update. Must be followed by endUpdate().
+	 */
+	public void beginUpdate() {
+		sequence++;
+		LONGS.setOpaque(buffer, SEQUENCE_OFFSET, sequence);
+		VarHandle.storeStoreFence();
+	}
+
+	/**
+	 * Writes the bean count of one slot. Only valid between beginUpdate() and
+	 * endUpdate().
+	 * 
+	 * @param i     index of slot
+	 * @param count number of beans in slot
+	 */
+	public void setSlotBeanCount(int i, long count) {
+		buffer.putLong(HEADER_SIZE + 8 * i, count);
+	}
+
+	/**
+	 * Finishes an update, writing the step counter and reservoir size.
+	 * 
+	 * @param stepCount the number of steps taken so far
+	 * @param remaining the number of beans remaining in the reservoir
+	 */
+	public void endUpdate(long stepCount, long remaining) {
+		buffer.putLong(STEP_OFFSET, stepCount);
+		buffer.putLong(REMAINING_OFFSET, remaining);
+		sequence++;
+		LONGS.setRelease(buffer, SEQUENCE_OFFSET, sequence);
+	}
+
+	/**
+	 * Rewrites the whole histogram in one update, for changes that touch every
+	 * slot such as reset().
+	 * 
+	 * @param counts    the bean count of every slot
+	 * @param stepCount the number of steps taken so far
+	 * @param remaining the number of beans remaining in the reservoir
+	 */
+	public void publishAll(long[] counts, long stepCount, long remaining) {
+		beginUpdate();
+		for (int i = 0; i < slotCount; i++) {
+			setSlotBeanCount(i, counts[i]);
+		}
+		endUpdate(stepCount, remaining);
+	}
+
+	/**
+	 * Flushes the mapping to disk and closes the file. The last published state
+	 * stays readable for monitors.
+	 */
+	@Override
+	public void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+}
@@ -1,5 +1,5 @@
 package edu.pitt.cs;
 
 public enum InstanceType {
-	IMPL, BUGGY, SOLUTION
+	IMPL, BUGGY, SOLUTION, CONCURRENT
 }
@@ -0,0 +1,374 @@
+package edu.pitt.cs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * MachineCheckpoint: The complete state of a BeanCounterLogicImpl, copied into
+ * primitive arrays so that it can be written to disk while the machine keeps
+ * running.
+ *
+ * <p>
+ * Every bean the machine holds (in the reservoir, in flight and, if retained,
+ * in the slots) is recorded once in a bean table with its position, skill
+ * level, luck flag and an index into a table of random number generators.
+ * Beans sharing a Random share the index. The generators are stored with Java
+ * serialization, which captures their exact internal state, so a restored
+ * machine draws the same numbers and continues bit-identically. The rows,
+ * reservoir and slots then refer to beans by table index.
+ *
+ * <p>
+ * If the machine draws further beans from a GeneratedBeanSource, its luck
+ * flag, generator and remaining bean count are recorded as well, so that the
+ * restored machine creates the same beans from the same numbers. The source
+ * usually shares its generator with the beans, and then shares the index.
+ *
+ * <p>
+ * On disk, the checkpoint is one little-endian record:
+ *
+ * <pre>
+ * int MAGIC, int VERSION
+ * int slotCount, int pipelineWidth, byte retainSlotBeans, long stepCount
+ * long[slotCount] slot counts
+ * int beanCount, then per bean: int x, int y, int skill, byte luck, int random index
+ * int randomBytes, byte[randomBytes] serialized generators
+ * int inFlightLength, int[] per row from the top: occupancy, then bean indexes
+ * int reservoirLength, int[] bean indexes in order
+ * int slotBeansLength, int[] per slot: size, then bean indexes
+ * byte hasSource, then if 1: byte luck, int random index, long remaining beans
+ * </pre>
+ */
+public final class MachineCheckpoint {
+	static final int MAGIC = 0x4243434B; // "BCCK"
+	static final int VERSION = 2;
+
+	int slotCount;
+	int pipelineWidth;
+	boolean retainSlotBeans;
+	long stepCount;
+	long[] slotCounts;
+	int[] beanX;
+	int[] beanY;
+	int[] beanSkill;
+	boolean[] beanLuck;
+	int[] beanRandom;
+	byte[] randoms;
+	int[] inFlight;
+	int[] reservoir;
+	int[] slotBeans;
+	// Generator index of the bean source; -1 if there is none
+	int sourceRandom = -1;
+	boolean sourceLuck;
+	long sourceRemaining;
+
+	/**
+	 * Builder: Collects the bean table and generator table while
+	 * BeanCounterLogicImpl walks its structures.
+	 */
+	static final class Builder {
+		private final Map<Bean, Integer> beans = new IdentityHashMap<>();
+		private final List<BeanImpl> beanList = new ArrayList<>();
+		private final Map<Random, Integer> randoms = new IdentityHashMap<>();
+		private final List<Random> randomList = new ArrayList<>();
+
+		/**
+		 * Returns the table index of bean, adding it if it is new.
+		 * 
+		 * @param bean the bean
+		 * @return its index in the bean table
+		 * @throws IllegalArgumentException if the bean is not a BeanImpl
+		 */
+		int indexOf(Bean bean) {
+			Integer index = beans.get(bean);
+			if (index != null) {
+				return index;
+			}
+			if (!(bean instanceof BeanImpl)) {
+				throw new IllegalArgumentException("cannot checkpoint " + bean.getClass().getName());
+			}
+			BeanImpl impl = (BeanImpl) bean;
+			indexOf(impl.getRandom());
+			beans.put(bean, beanList.size());
+			beanList.add(impl);
+			return beanList.size() - 1;
+		}
+
+		/**
+		 * Returns the table index of rand, adding it if it is new.
+		 * 
+		 * @param rand the random number generator
+		 * @return its index in the generator table
+		 */
+		int indexOf(Random rand) {
+			Integer index = randoms.get(rand);
+			if (index == null) {
+				index = randomList.size();
+				randoms.put(rand, index);
+				randomList.add(rand);
+			}
+			return index;
+		}
+
+		/**
+		 * Copies the state of every bean and generator seen so far into c.
+		 * 
+		 * @param c the checkpoint to fill
+		 */
+		void finish(MachineCheckpoint c) {
+			int n = beanList.size();
+			c.beanX = new int[n];
+			c.beanY = new int[n];
+			c.beanSkill = new int[n];
+			c.beanLuck = new boolean[n];
+			c.beanRandom = new int[n];
+			for (int i = 0; i < n; i++) {
+				BeanImpl bean = beanList.get(i);
+				c.beanX[i] = bean.getXPos();
+				c.beanY[i] = bean.getYPos();
+				c.beanSkill[i] = bean.getSkillLevel();
+				c.beanLuck[i] = bean.isLuck();
+				c.beanRandom[i] = randoms.get(bean.getRandom());
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+				for (Random rand : randomList) {
+					out.writeObject(rand);
+				}
+			} catch (IOException ex) {
+				throw new IllegalArgumentException("cannot checkpoint random number generator", ex);
+			}
+			c.randoms = bytes.toByteArray();
+		}
+	}
+
+	/**
+	 * Recreates the generators of the generator table.
+	 * 
+	 * @return the generators, indexed like the generator table
+	 * @throws IOException if the generators cannot be deserialized
+	 */
+	Random[] createRandoms() throws IOException {
+		int randomCount = sourceRandom + 1;
+		for (int r : beanRandom) {
+			randomCount = Math.max(randomCount, r + 1);
+		}
+		Random[] rands = new Random[randomCount];
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(randoms))) {
+			for (int i = 0; i < randomCount; i++) {
+				rands[i] = (Random) in.readObject();
+			}
+		} catch (ClassNotFoundException | ClassCastException ex) {
+			throw new IOException("corrupt checkpoint", ex);
+		}
+		return rands;
+	}
+
+	/**
+	 * Recreates the beans of the bean table with their generators.
+	 * 
+	 * @param rands the generators, as returned by createRandoms()
+	 * @return the beans, indexed like the bean table
+	 */
+	BeanImpl[] createBeans(Random[] rands) {
+		BeanImpl[] beans = new BeanImpl[beanX.length];
+		for (int i = 0; i < beans.length; i++) {
+			beans[i] = new BeanImpl(slotCount, beanLuck[i], rands[beanRandom[i]], beanSkill[i], beanX[i], beanY[i]);
+		}
+		return beans;
+	}
+
+	/**
+	 * Recreates the bean source of the checkpointed machine.
+	 * 
+	 * @param rands the generators, as returned by createRandoms()
+	 * @return the bean source, or null if the machine had no GeneratedBeanSource
+	 */
+	GeneratedBeanSource createBeanSource(Random[] rands) {
+		if (sourceRandom < 0) {
+			return null;
+		}
+		return new GeneratedBeanSource(InstanceType.IMPL, slotCount, sourceLuck, sourceRemaining, rands[sourceRandom]);
+	}
+
+	/**
+	 * Returns whether the checkpoint holds the bean source of the machine, so
+	 * that a restored machine needs no new one.
+	 * 
+	 * @return whether there is a bean source
+	 */
+	public boolean hasBeanSource() {
+		return sourceRandom >= 0;
+	}
+
+	/**
+	 * Returns the number of beans the checkpointed bean source had yet to
+	 * supply.
+	 * 
+	 * @return number of beans, or 0 if there is no bean source
+	 */
+	public long getSourceBeanCount() {
+		return hasBeanSource() ? sourceRemaining : 0;
+	}
+
+	/**
+	 * Returns the number of beans the checkpointed machine accounts for: those
+	 * waiting, in flight and counted in the slots.
+	 * 
+	 * @return number of beans
+	 */
+	public long getBeanCount() {
+		long total = reservoir.length;
+		for (long count : slotCounts) {
+			total += count;
+		}
+		for (int i = 0, y = 0; y < slotCount; y++) {
+			int occupancy = inFlight[i];
+			total += occupancy;
+			i += occupancy + 1;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the number of slots of the checkpointed machine.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Writes the checkpoint to path. The record is written to a temporary file
+	 * next to path first and then moved over it, so a crash while writing never
+	 * leaves a truncated checkpoint behind.
+	 * 
+	 * @param path the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(Path path) throws IOException {
+		int size = 4 * 4 + 1 + 8 + 8 * slotCount + 4 + beanX.length * 17 + 4 + randoms.length
+				+ 4 * (3 + inFlight.length + reservoir.length + slotBeans.length) + 1 + 1 + 4 + 8;
+		ByteBuffer buf = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC).putInt(VERSION);
+		buf.putInt(slotCount).putInt(pipelineWidth).put((byte) (retainSlotBeans ? 1 : 0)).putLong(stepCount);
+		for (long count : slotCounts) {
+			buf.putLong(count);
+		}
+		buf.putInt(beanX.length);
+		for (int i = 0; i < beanX.length; i++) {
+			buf.putInt(beanX[i]).putInt(beanY[i]).putInt(beanSkill[i]);
+			buf.put((byte) (beanLuck[i] ? 1 : 0)).putInt(beanRandom[i]);
+		}
+		buf.putInt(randoms.length).put(randoms);
+		putInts(buf, inFlight);
+		putInts(buf, reservoir);
+		putInts(buf, slotBeans);
+		buf.put((byte) (hasBeanSource() ? 1 : 0));
+		if (hasBeanSource()) {
+			buf.put((byte) (sourceLuck ? 1 : 0)).putInt(sourceRandom).putLong(sourceRemaining);
+		}
+		buf.flip();
+
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			channel.force(false);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint written by write().
+	 * 
+	 * @param path the file to read
+	 * @return the checkpoint
+	 * @throws IOException if the file cannot be read or is not a checkpoint
+	 */
+	public static MachineCheckpoint read(Path path) throws IOException {
+		ByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buf = ByteBuffer.allocateDirect(Math.toIntExact(channel.size())).order(ByteOrder.LITTLE_ENDIAN);
+			while (buf.hasRemaining() && channel.read(buf) >= 0) {
+				// keep reading
+			}
+		}
+		buf.flip();
+		try {
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+				throw new IOException(path + " is not a checkpoint");
+			}
+			MachineCheckpoint c = new MachineCheckpoint();
+			c.slotCount = buf.getInt();
+			c.pipelineWidth = buf.getInt();
+			c.retainSlotBeans = buf.get() != 0;
+			c.stepCount = buf.getLong();
+			c.slotCounts = new long[c.slotCount];
+			for (int i = 0; i < c.slotCount; i++) {
+				c.slotCounts[i] = buf.getLong();
+			}
+			int beanCount = buf.getInt();
+			c.beanX = new int[beanCount];
+			c.beanY = new int[beanCount];
+			c.beanSkill = new int[beanCount];
+			c.beanLuck = new boolean[beanCount];
+			c.beanRandom = new int[beanCount];
+			for (int i = 0; i < beanCount; i++) {
+				c.beanX[i] = buf.getInt();
+				c.beanY[i] = buf.getInt();
+				c.beanSkill[i] = buf.getInt();
+				c.beanLuck[i] = buf.get() != 0;
+				c.beanRandom[i] = buf.getInt();
+			}
+			c.randoms = new byte[buf.getInt()];
+			buf.get(c.randoms);
+			c.inFlight = getInts(buf);
+			c.reservoir = getInts(buf);
+			c.slotBeans = getInts(buf);
+			if (buf.get() != 0) {
+				c.sourceLuck = buf.get() != 0;
+				c.sourceRandom = buf.getInt();
+				c.sourceRemaining = buf.getLong();
+				if (c.sourceRandom < 0 || c.sourceRemaining < 0) {
+					throw new IOException(path + " is a corrupt checkpoint");
+				}
+			}
+			return c;
+		} catch (RuntimeException ex) {
+			throw new IOException(path + " is a corrupt checkpoint", ex);
+		}
+	}
+
+	private static void putInts(ByteBuffer buf, int[] values) {
+		buf.putInt(values.length);
+		for (int v : values) {
+			buf.putInt(v);
+		}
+	}
+
+	private static int[] getInts(ByteBuffer buf) {
+		int[] values = new int[buf.getInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = buf.getInt();
+		}
+		return values;
+	}
+}
@@ -0,0 +1,81 @@
+package edu.pitt.cs;
+
+/**
+ * MachineEventBatch: The events of a run of consecutive steps of a machine,
+ * as published by MachineEventPublisher: the slots the beans landed in, in
+ * the order they landed, and a snapshot of the machine after the last step.
+ *
+ * <p>
+ * A batch covers the steps after getFromStep() up to and including
+ * getToStep(). The batches of a subscriber follow each other without gaps
+ * until the machine is reset, after which the step counts start again from 0.
+ * A batch never changes once published, so it can be handed between threads.
+ */
+public final class MachineEventBatch {
+	private final long fromStep;
+	private final long toStep;
+	private final int[] landedSlots;
+	private final MachineSnapshot snapshot;
+
+	/**
+	 * Constructor - creates a batch that takes ownership of landedSlots and
+	 * snapshot.
+	 *
+	 * @param fromStep    the step count before the first step of the batch
+	 * @param toStep      the step count after the last step of the batch
+	 * @param landedSlots the slot of every bean that landed, in order
+	 * @param snapshot    the state of the machine after the last step
+	 */
+	MachineEventBatch(long fromStep, long toStep, int[] landedSlots, MachineSnapshot snapshot) {
+		this.fromStep = fromStep;
+		this.toStep = toStep;
+		this.landedSlots = landedSlots;
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Returns the step count of the machine before the first step of the batch.
+	 *
+	 * @return the step count
+	 */
+	public long getFromStep() {
+		return fromStep;
+	}
+
+	/**
+	 * Returns the step count of the machine after the last step of the batch.
+	 *
+	 * @return the step count
+	 */
+	public long getToStep() {
+		return toStep;
+	}
+
+	/**
+	 * Returns the number of beans that landed during the batch.
+	 *
+	 * @return number of landed beans
+	 */
+	public int getLandedBeanCount() {
+		return landedSlots.length;
+	}
+
+	/**
+	 * Returns the slot the kth bean to land during the batch landed in.
+	 *
+	 * @param k index of the bean, in landing order
+	 * @return the slot
+	 */
+	public int getLandedSlot(int k) {
+		return landedSlots[k];
+	}
+
+	/**
+	 * Returns the state of the machine after the last step of the batch.
+	 *
+	 * @return the snapshot; it must not be refilled
+	 */
+	public MachineSnapshot getSnapshot() {
+		return snapshot;
+	}
+}
@@ -0,0 +1,191 @@
+package edu.pitt.cs;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Supplier;
+
+/**
+ * MachineEventPublisher: Publishes the events of a BeanCounterLogicImpl as a
+ * java.util.concurrent.Flow stream of MachineEventBatch, for services that
+ * embed the machine.
+ *
+ * <p>
+ * The machine reports landings and finished steps to the publisher on the
+ * thread that steps it. They are collected into a batch, which is published
+ * every batchSteps steps, before a reset and on close(). Delivery and demand
+ * are handled by a SubmissionPublisher: every subscriber has a buffer of
+ * batches, and once a subscriber has that many batches it has not requested,
+ * publishing a batch waits, and with it the machine. Subscribers that cancel
+ * stop receiving; close() completes all of them.
+ *
+ * <p>
+ * Batches are only collected while there are subscribers. Without any, the
+ * machine's calls return after reading a flag, so a machine with a publisher
+ * nobody listens to allocates nothing per step. A subscriber's first batch
+ * starts with the first step after it subscribed.
+ */
+public class MachineEventPublisher implements Flow.Publisher<MachineEventBatch>, AutoCloseable {
+	/**
+	 * Number of steps per batch of the publisher that
+	 * BeanCounterLogicImpl.getEventPublisher() and
+	 * BeanCounterLogicConcurrent.getEventPublisher() create.
+	 */
+	public static final int DEFAULT_BATCH_STEPS = 256;
+
+	// Takes the snapshot at the end of a batch
+	private final Supplier<MachineSnapshot> snapshots;
+	private final int batchSteps;
+	private final SubmissionPublisher<MachineEventBatch> publisher;
+	// Set when someone subscribes, cleared once a batch finds no subscribers
+	private volatile boolean subscribed;
+	// The state of the open batch; only touched by the thread that steps the machine
+	private boolean batchOpen;
+	private long fromStep;
+	private long toStep;
+	private int stepsInBatch;
+	private int[] landedSlots = new int[64];
+	private int landedCount;
+
+	/**
+	 * Constructor - creates a publisher for logic that delivers batches on the
+	 * common pool, buffering up to Flow.defaultBufferSize() batches per
+	 * subscriber. Pass it to logic.setEventPublisher() to start.
+	 *
+	 * @param logic      the machine, which is snapshotted at the end of every batch
+	 * @param batchSteps the number of steps per batch
+	 */
+	public MachineEventPublisher(BeanCounterLogic logic, int batchSteps) {
+		this(() -> logic.snapshot(null), batchSteps, new SubmissionPublisher<>());
+	}
+
+	/**
+	 * Constructor - creates a publisher for logic that delivers batches with
+	 * executor.
+	 *
+	 * @param logic          the machine, which is snapshotted at the end of every batch
+	 * @param batchSteps     the number of steps per batch
+	 * @param executor       runs the delivery to the subscribers
+	 * @param bufferCapacity the number of batches a subscriber may fall behind
+	 */
+	public MachineEventPublisher(BeanCounterLogic logic, int batchSteps, Executor executor, int bufferCapacity) {
+		this(() -> logic.snapshot(null), batchSteps, new SubmissionPublisher<>(executor, bufferCapacity));
+	}
+
+	/**
+	 * Constructor - creates a publisher that delivers batches on the common
+	 * pool and takes the snapshot of each batch from snapshots, for a machine
+	 * that wraps the one reporting the events.
+	 *
+	 * @param snapshots  supplies a new snapshot of the machine; called on the thread that steps it
+	 * @param batchSteps the number of steps per batch
+	 */
+	MachineEventPublisher(Supplier<MachineSnapshot> snapshots, int batchSteps) {
+		this(snapshots, batchSteps, new SubmissionPublisher<>());
+	}
+
+	private MachineEventPublisher(Supplier<MachineSnapshot> snapshots, int batchSteps,
+			SubmissionPublisher<MachineEventBatch> publisher) {
+		if (batchSteps < 1) {
+			throw new IllegalArgumentException("batchSteps must be positive");
+		}
+		this.snapshots = snapshots;
+		this.batchSteps = batchSteps;
+		this.publisher = publisher;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super MachineEventBatch> subscriber) {
+		publisher.subscribe(subscriber);
+		subscribed = true;
+	}
+
+	/**
+	 * Returns whether batches are being collected, that is, whether there were
+	 * subscribers when the last batch was published.
+	 *
+	 * @return whether batches are collected
+	 */
+	boolean isCollecting() {
+		return subscribed;
+	}
+
+	/**
+	 * Called by the machine when a bean lands.
+	 *
+	 * @param slot the slot the bean landed in
+	 */
+	void beanLanded(int slot) {
+		if (!batchOpen) {
+			return;
+		}
+		if (landedCount == landedSlots.length) {
+			landedSlots = Arrays.copyOf(landedSlots, 2 * landedCount);
+		}
+		landedSlots[landedCount++] = slot;
+	}
+
+	/**
+	 * Called by the machine at the end of every step, and after a reset.
+	 *
+	 * @param step the step count of the machine
+	 */
+	void stepFinished(long step) {
+		if (batchOpen) {
+			toStep = step;
+			if (++stepsInBatch >= batchSteps) {
+				publishBatch();
+			}
+		}
+		if (!batchOpen && subscribed) {
+			batchOpen = true;
+			fromStep = step;
+			toStep = step;
+			stepsInBatch = 0;
+			landedCount = 0;
+		}
+	}
+
+	/**
+	 * Called by the machine before it is reset, while it still holds the state
+	 * of the old run. Publishes the open batch; the next one starts after the
+	 * reset.
+	 */
+	void machineReset() {
+		if (batchOpen) {
+			publishBatch();
+		}
+	}
+
+	/**
+	 * Publishes the open batch, waiting for subscribers that have too many
+	 * batches buffered, unless there are no subscribers any more.
+	 */
+	private void publishBatch() {
+		batchOpen = false;
+		if (!publisher.hasSubscribers()) {
+			subscribed = false;
+			// A subscriber may have come in between
+			subscribed = publisher.hasSubscribers();
+			return;
+		}
+		if (toStep == fromStep && landedCount == 0) {
+			return;
+		}
+		publisher.submit(new MachineEventBatch(fromStep, toStep, Arrays.copyOf(landedSlots, landedCount),
+				snapshots.get()));
+	}
+
+	/**
+	 * Publishes the open batch and completes all subscribers. Must be called
+	 * on the thread that steps the machine.
+	 */
+	@Override
+	public void close() {
+		if (batchOpen) {
+			publishBatch();
+		}
+		publisher.close();
+	}
+}
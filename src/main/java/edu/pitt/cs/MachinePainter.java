@@ -0,0 +1,364 @@
+package edu.pitt.cs;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+
+/**
+ * MachinePainter: Draws a snapshot of the machine (pegs, beans, bars and
+ * statistics) onto any Graphics of a given size. MainPanel paints the screen
+ * with it and OffscreenRenderer paints images with it.
+ *
+ * <p>
+ * A painter caches rendered layers for its current size, so it must only be
+ * used by one thread at a time; give each rendering thread its own painter.
+ */
+public class MachinePainter {
+	public static final int MIN_COLUMN_WIDTH = 2;
+	public static final int MIN_LABEL_SPACING = 60;
+	public static final int PEG_SIZE = 10;
+	public static final int BEAN_SIZE = 10;
+	public static final int TOP_MARGIN = 30;
+	public static final int BOTTOM_MARGIN = 30;
+	public static final int BAR_TEXT_HEIGHT = 20;
+
+	private final int slotCount;		// The number of slots in the machine
+	private final int barHeight;		// The height reserved for bar graphs
+
+	private int width;					// The width of the drawing area
+	private int height;					// The height of the drawing area
+
+	private BufferedImage pegTexture;	// Cached rendering of the peg field for the current size
+	private BufferedImage beanLayer;	// Reusable pixel layer for in-flight beans in aggregated mode
+
+	/**
+	 * Constructor - creates a painter for a machine.
+	 *
+	 * @param slotCount number of slots in the machine
+	 * @param beanCount number of beans in the machine, which sizes the bar graphs
+	 */
+	public MachinePainter(int slotCount, long beanCount) {
+		this.slotCount = slotCount;
+		// Heuristically maximum height of a bell curve with some headroom
+		barHeight = (int) Math.min(Integer.MAX_VALUE, Math.round(beanCount * 0.27) + 10);
+	}
+
+	/**
+	 * Sets the size of the drawing area.
+	 *
+	 * @param width  the width in pixels
+	 * @param height the height in pixels
+	 */
+	public void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Returns the physical coordinate for logical coordinate p. The logical
+	 * coordinate is the coordinate system used by BeanCounterLogic (see
+	 * BeanCounterLogic for details). The physical coordinate is the actual
+	 * coordinate in the drawing area.
+	 *
+	 * @param p the logical coordinate
+	 * @return the translated physical coordinate.
+	 */
+	public Point logicalToPhysical(Point p) {
+		int initialX = width / 2;
+		int initialY = TOP_MARGIN;
+		int pegXSpacing = width / (slotCount);
+		int pegYSpacing = getPegFieldHeight() / Math.max(1, slotCount - 1);
+		int physicalX = initialX - pegXSpacing / 2 * p.y + p.x * pegXSpacing;
+		int physicalY = initialY + p.y * pegYSpacing;
+		return new Point(physicalX, physicalY);
+	}
+
+	/**
+	 * Returns the height in pixels available to the peg field, which is what is
+	 * left after the margins and the bar graph area are taken out.
+	 *
+	 * @return height of the peg field
+	 */
+	private int getPegFieldHeight() {
+		return height - TOP_MARGIN - BOTTOM_MARGIN - getBarAreaHeight() - BAR_TEXT_HEIGHT;
+	}
+
+	/**
+	 * Returns the height in pixels reserved for the bar graphs. In aggregated
+	 * mode the bars are scaled, so the reservation is capped at half the area to
+	 * leave room for the peg field.
+	 *
+	 * @return height of the bar graph area
+	 */
+	private int getBarAreaHeight() {
+		if (isAggregated()) {
+			return Math.min(barHeight, height / 2);
+		}
+		return barHeight;
+	}
+
+	/**
+	 * Returns the number of columns the slots are drawn in. Each column is at
+	 * least MIN_COLUMN_WIDTH pixels wide, so when there are more slots than fit,
+	 * neighboring slots are bucketed into the same column.
+	 *
+	 * @return number of bar graph columns
+	 */
+	private int getColumnCount() {
+		return Math.max(1, Math.min(slotCount, width / MIN_COLUMN_WIDTH));
+	}
+
+	/**
+	 * Returns whether the machine is too large to draw each peg, bean and bar
+	 * individually. In that case, bars are bucketed into columns, beans are
+	 * plotted as single pixels and the bean movement animation is skipped.
+	 *
+	 * @return whether the painter is in aggregated (level-of-detail) mode
+	 */
+	public boolean isAggregated() {
+		int fieldHeight = height - TOP_MARGIN - BOTTOM_MARGIN - barHeight - BAR_TEXT_HEIGHT;
+		return getColumnCount() < slotCount || width / (slotCount + 1) < 1
+				|| fieldHeight / Math.max(1, slotCount - 1) < 1;
+	}
+
+	/**
+	 * Returns the physical x-coordinate of a logical coordinate without rounding
+	 * the peg spacing. Used in aggregated mode where spacing is below a pixel.
+	 *
+	 * @param x the logical x-coordinate
+	 * @param y the logical y-coordinate
+	 * @return the physical x-coordinate
+	 */
+	private double physicalX(double x, double y) {
+		double pegXSpacing = (double) width / slotCount;
+		return width / 2.0 - pegXSpacing / 2 * y + x * pegXSpacing;
+	}
+
+	/**
+	 * Returns the physical y-coordinate of a logical row without rounding the peg
+	 * spacing. Used in aggregated mode where spacing is below a pixel.
+	 *
+	 * @param y the logical y-coordinate
+	 * @return the physical y-coordinate
+	 */
+	private double physicalY(double y) {
+		return TOP_MARGIN + y * getPegFieldHeight() / Math.max(1, slotCount - 1);
+	}
+
+	/**
+	 * Calculates all the in-flight bean positions (in physical coordinates) of a
+	 * snapshot.
+	 *
+	 * @param frame the snapshot
+	 * @return an array of in-flight bean positions, null where a row is empty
+	 */
+	public Point[] getBeanPositions(MachineSnapshot frame) {
+		Point[] positions = new Point[slotCount];
+		for (int yPos = 0; yPos < slotCount; yPos++) {
+			int xPos = frame.getInFlightBeanXPos(yPos);
+			if (xPos != BeanCounterLogic.NO_BEAN_IN_YPOS) {
+				positions[yPos] = logicalToPhysical(new Point(xPos, yPos));
+				positions[yPos].y -= PEG_SIZE + 5;
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Draws everything: pegs, beans, bars and statistics.
+	 *
+	 * @param g             the graphics object
+	 * @param frame         the snapshot to draw
+	 * @param beanPositions the bean positions to draw when not aggregated
+	 */
+	public void paint(Graphics g, MachineSnapshot frame, Point[] beanPositions) {
+		drawPegs(g);
+		drawBeans(g, frame, beanPositions);
+		drawBars(g, frame);
+		drawStats(g, frame);
+	}
+
+	/**
+	 * Draw the pegs in the machine.
+	 *
+	 * @param g the graphics object
+	 */
+	public void drawPegs(Graphics g) {
+		if (pegTexture == null || pegTexture.getWidth() != Math.max(1, width)
+				|| pegTexture.getHeight() != Math.max(1, height)) {
+			pegTexture = renderPegTexture();
+		}
+		g.drawImage(pegTexture, 0, 0, null);
+	}
+
+	/**
+	 * Renders the peg field into a transparent image the size of the drawing
+	 * area. The pegs never move, so this only needs to happen again when the
+	 * size changes. When pegs are smaller than a pixel, each pixel row of the
+	 * field is filled across the span of the peg row it falls on instead of
+	 * drawing every peg.
+	 *
+	 * @return the peg field texture
+	 */
+	private BufferedImage renderPegTexture() {
+		BufferedImage texture = new BufferedImage(Math.max(1, width), Math.max(1, height),
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics tg = texture.getGraphics();
+		tg.setColor(Color.BLACK);
+		if (!isAggregated()) {
+			for (int i = 0; i < slotCount - 1; i++) {
+				for (int j = 0; j <= i; j++) {
+					Point p = logicalToPhysical(new Point(j, i));
+					tg.drawRect(p.x, p.y, PEG_SIZE, PEG_SIZE);
+				}
+			}
+		} else if (slotCount > 1) {
+			tg.setColor(Color.GRAY);
+			double pegXSpacing = (double) width / slotCount;
+			int top = (int) physicalY(0);
+			int bottom = (int) physicalY(slotCount - 2);
+			for (int py = top; py <= bottom; py++) {
+				double row = Math.min(slotCount - 2, (py - TOP_MARGIN) * (slotCount - 1.0) / getPegFieldHeight());
+				int left = (int) physicalX(0, row);
+				int right = (int) physicalX(row, row);
+				if (pegXSpacing < MIN_COLUMN_WIDTH) {
+					tg.drawLine(left, py, right, py);
+				} else {
+					for (double px = left; px <= right; px += pegXSpacing) {
+						tg.drawLine((int) px, py, (int) px, py);
+					}
+				}
+			}
+		}
+		tg.dispose();
+		return texture;
+	}
+
+	/**
+	 * Draw the in-flight beans in the machine.
+	 *
+	 * @param g             the graphics object
+	 * @param frame         the snapshot to draw
+	 * @param beanPositions the bean positions to draw when not aggregated
+	 */
+	public void drawBeans(Graphics g, MachineSnapshot frame, Point[] beanPositions) {
+		if (isAggregated()) {
+			drawAggregatedBeans(g, frame);
+			return;
+		}
+		g.setColor(Color.BLACK);
+		for (int i = 0; i < slotCount; i++) {
+			if (beanPositions[i] != null) {
+				g.fillOval(beanPositions[i].x, beanPositions[i].y, BEAN_SIZE, BEAN_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * Plots each in-flight bean as a single pixel into a reusable layer and draws
+	 * the layer in one go. Many rows share a pixel row on large boards, so this
+	 * is much cheaper than issuing a fill call per bean.
+	 *
+	 * @param g     the graphics object
+	 * @param frame the snapshot to draw
+	 */
+	private void drawAggregatedBeans(Graphics g, MachineSnapshot frame) {
+		if (beanLayer == null || beanLayer.getWidth() != Math.max(1, width)
+				|| beanLayer.getHeight() != Math.max(1, height)) {
+			beanLayer = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+		}
+		int[] pixels = ((DataBufferInt) beanLayer.getRaster().getDataBuffer()).getData();
+		Arrays.fill(pixels, 0);
+		int layerWidth = beanLayer.getWidth();
+		int layerHeight = beanLayer.getHeight();
+		for (int yPos = 0; yPos < slotCount; yPos++) {
+			int xPos = frame.getInFlightBeanXPos(yPos);
+			if (xPos == BeanCounterLogic.NO_BEAN_IN_YPOS) {
+				continue;
+			}
+			int px = (int) physicalX(xPos, yPos);
+			int py = (int) physicalY(yPos) - 1;
+			if (px >= 0 && px < layerWidth && py >= 0 && py < layerHeight) {
+				pixels[py * layerWidth + px] = Color.RED.getRGB();
+			}
+		}
+		g.drawImage(beanLayer, 0, 0, null);
+	}
+
+	/**
+	 * Draw the bars that represent the number of beans in each slot.
+	 *
+	 * @param g     the graphics object
+	 * @param frame the snapshot to draw
+	 */
+	public void drawBars(Graphics g, MachineSnapshot frame) {
+		if (isAggregated()) {
+			drawAggregatedBars(g, frame);
+			return;
+		}
+		g.setColor(Color.BLACK);
+		for (int i = 0; i < slotCount; i++) {
+			Point p = logicalToPhysical(new Point(i, slotCount));
+			int barTop = (int) Math.min(Integer.MAX_VALUE, frame.getSlotBeanCount(i));
+			g.fillRect(p.x, height - BOTTOM_MARGIN - BAR_TEXT_HEIGHT - barTop, width / (slotCount + 1), barTop);
+			g.drawString(String.valueOf(i), p.x + width / (slotCount + 1) / 2, height - BOTTOM_MARGIN);
+		}
+	}
+
+	/**
+	 * Draw the bars bucketed into columns. Each column sums the bean counts of the
+	 * consecutive slots it covers, and all columns are scaled to fit the bar
+	 * graph area. Labels show the first slot of a column and are thinned out so
+	 * that they do not overlap.
+	 *
+	 * @param g     the graphics object
+	 * @param frame the snapshot to draw
+	 */
+	private void drawAggregatedBars(Graphics g, MachineSnapshot frame) {
+		int columns = getColumnCount();
+		long[] sums = new long[columns];
+		long max = 0;
+		for (int c = 0; c < columns; c++) {
+			int first = (int) ((long) c * slotCount / columns);
+			int last = (int) ((long) (c + 1) * slotCount / columns);
+			for (int i = first; i < last; i++) {
+				sums[c] += frame.getSlotBeanCount(i);
+			}
+			max = Math.max(max, sums[c]);
+		}
+		int areaHeight = getBarAreaHeight();
+		double scale = max > areaHeight ? (double) areaHeight / max : 1.0;
+		double columnWidth = (double) width / columns;
+		int labelEvery = Math.max(1, (int) Math.ceil(MIN_LABEL_SPACING / columnWidth));
+		int baseline = height - BOTTOM_MARGIN - BAR_TEXT_HEIGHT;
+		g.setColor(Color.BLACK);
+		for (int c = 0; c < columns; c++) {
+			int x = (int) (c * columnWidth);
+			int h = (int) Math.round(sums[c] * scale);
+			g.fillRect(x, baseline - h, Math.max(1, (int) columnWidth - 1), h);
+			if (c % labelEvery == 0) {
+				g.drawString(String.valueOf((long) c * slotCount / columns), x, height - BOTTOM_MARGIN);
+			}
+		}
+	}
+
+	/**
+	 * Display some statistics such as the current average slot value and the
+	 * remaining number of beans.
+	 *
+	 * @param g     the graphics object
+	 * @param frame the snapshot to draw
+	 */
+	public void drawStats(Graphics g, MachineSnapshot frame) {
+		g.setFont(new Font("Courier", Font.PLAIN, 20));
+		String average = "Average = " + new DecimalFormat("#.##").format(frame.getAverageSlotBeanCount());
+		g.drawString(average, width - 200, TOP_MARGIN);
+		String remaining = "Remaining = " + frame.getRemainingBeanCount();
+		g.drawString(remaining, width - 200, TOP_MARGIN + 30);
+	}
+}
@@ -0,0 +1,162 @@
+package edu.pitt.cs;
+
+import java.util.Arrays;
+
+/**
+ * MachineSnapshot: The observable state of a BeanCounterLogic at one point in
+ * time, held in primitive arrays so that it can be filled in one pass and
+ * reused across frames.
+ *
+ * <p>
+ * Pass the previous snapshot back into BeanCounterLogic.snapshot() to have it
+ * refilled in place; the arrays are only reallocated when the slot count
+ * changes. A snapshot that has been handed to other threads (as
+ * BeanCounterLogicConcurrent does) must not be refilled.
+ */
+public final class MachineSnapshot {
+	private int slotCount;
+	private int[] inFlightXPos = new int[0];
+	private long[] slotBeanCounts = new long[0];
+	private long remainingBeanCount;
+	private int inFlightBeanCount;
+	private long inSlotBeanCount;
+	private long positionSum;
+
+	/**
+	 * Prepares the snapshot to be filled for a machine with slotCount slots.
+	 * Clears all in-flight positions and slot counts.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 */
+	void begin(int slotCount) {
+		if (inFlightXPos.length != slotCount) {
+			inFlightXPos = new int[slotCount];
+			slotBeanCounts = new long[slotCount];
+		}
+		this.slotCount = slotCount;
+		Arrays.fill(inFlightXPos, BeanCounterLogic.NO_BEAN_IN_YPOS);
+		Arrays.fill(slotBeanCounts, 0);
+		remainingBeanCount = 0;
+		inFlightBeanCount = 0;
+		inSlotBeanCount = 0;
+		positionSum = 0;
+	}
+
+	/**
+	 * Records the in-flight bean at the given row.
+	 * 
+	 * @param yPos the row of the bean
+	 * @param xPos the x-coordinate of the bean
+	 */
+	void setInFlightBeanXPos(int yPos, int xPos) {
+		inFlightXPos[yPos] = xPos;
+		if (xPos != BeanCounterLogic.NO_BEAN_IN_YPOS) {
+			inFlightBeanCount++;
+		}
+	}
+
+	/**
+	 * Adds beans to the given slot and updates the aggregates.
+	 * 
+	 * @param i     index of slot
+	 * @param count number of beans to add
+	 */
+	void addSlotBeanCount(int i, long count) {
+		slotBeanCounts[i] += count;
+		inSlotBeanCount += count;
+		positionSum += count * i;
+	}
+
+	/**
+	 * Overrides the number of in-flight beans, for machines whose rows can hold
+	 * more than the one bean recorded per row.
+	 * 
+	 * @param count number of in-flight beans
+	 */
+	void setInFlightBeanCount(int count) {
+		inFlightBeanCount = count;
+	}
+
+	/**
+	 * Records the number of beans in the given slot and updates the aggregates.
+	 * 
+	 * @param i     index of slot
+	 * @param count number of beans in slot
+	 */
+	void setSlotBeanCount(int i, long count) {
+		slotBeanCounts[i] = count;
+		inSlotBeanCount += count;
+		positionSum += count * i;
+	}
+
+	/**
+	 * Records the number of beans waiting in the reservoir.
+	 * 
+	 * @param count number of beans remaining
+	 */
+	void setRemainingBeanCount(long count) {
+		remainingBeanCount = count;
+	}
+
+	/**
+	 * Copies other into this snapshot with bulk array copies.
+	 * 
+	 * @param other the snapshot to copy
+	 */
+	void copyFrom(MachineSnapshot other) {
+		if (inFlightXPos.length != other.slotCount) {
+			inFlightXPos = new int[other.slotCount];
+			slotBeanCounts = new long[other.slotCount];
+		}
+		slotCount = other.slotCount;
+		System.arraycopy(other.inFlightXPos, 0, inFlightXPos, 0, slotCount);
+		System.arraycopy(other.slotBeanCounts, 0, slotBeanCounts, 0, slotCount);
+		remainingBeanCount = other.remainingBeanCount;
+		inFlightBeanCount = other.inFlightBeanCount;
+		inSlotBeanCount = other.inSlotBeanCount;
+		positionSum = other.positionSum;
+	}
+
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	public long getRemainingBeanCount() {
+		return remainingBeanCount;
+	}
+
+	public int getInFlightBeanXPos(int yPos) {
+		return inFlightXPos[yPos];
+	}
+
+	public long getSlotBeanCount(int i) {
+		return slotBeanCounts[i];
+	}
+
+	/**
+	 * Returns the number of beans bouncing on the pegs.
+	 * 
+	 * @return number of in-flight beans
+	 */
+	public int getInFlightBeanCount() {
+		return inFlightBeanCount;
+	}
+
+	/**
+	 * Returns the number of beans collected in all the slots.
+	 * 
+	 * @return number of beans in slots
+	 */
+	public long getInSlotBeanCount() {
+		return inSlotBeanCount;
+	}
+
+	/**
+	 * Calculates the average slot number of all the beans in slots.
+	 * 
+	 * @return Average slot number of all the beans in slots.
+	 */
+	public double getAverageSlotBeanCount() {
+		return (double) positionSum / inSlotBeanCount;
+	}
+}
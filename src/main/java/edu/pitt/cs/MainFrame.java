@@ -14,14 +14,26 @@ public class MainFrame {
 
 	private ButtonPanel buttonPanel;
 
+	/**
+	 * Constructor - creates the main panel with the default number of slots.
+	 * Inside it is the main panel and the button panel.
+	 * 
+	 * @param beanCount number of beans in the machine
+	 * @param luck      whether beans progress through pure luck (or skill)
+	 */
+	public MainFrame(InstanceType type, int beanCount, boolean luck) {
+		this(type, MainPanel.DEFAULT_SLOT_COUNT, beanCount, luck);
+	}
+
 	/**
 	 * Constructor - creates the main panel. Inside it is the main panel and the
 	 * button panel.
 	 * 
+	 * @param slotCount number of slots in the machine
 	 * @param beanCount number of beans in the machine
 	 * @param luck      whether beans progress through pure luck (or skill)
 	 */
-	public MainFrame(InstanceType type, int beanCount, boolean luck) {
+	public MainFrame(InstanceType type, int slotCount, int beanCount, boolean luck) {
 
 		frame.setSize(MainFrame.WIDTH, MainFrame.HEIGHT);
 		// Close program when window is closed
@@ -29,7 +41,7 @@ public class MainFrame {
 
 		// Add Main Panel and Button Panel
 
-		mainPanel = new MainPanel(type, beanCount, luck);
+		mainPanel = new MainPanel(type, slotCount, beanCount, luck);
 
 		buttonPanel = new ButtonPanel(mainPanel);
 
@@ -1,11 +1,8 @@
 package edu.pitt.cs;
 
 import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Point;
-import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.Random;
 import javax.swing.JPanel;
@@ -15,13 +12,18 @@ import javax.swing.JPanel;
  *
  * <p>MainPanel: This is the display for the machine. Most internal state is
  * encapsulated inside _logic. This class mainly handles the display of that
- * internal state animations between frames.
+ * internal state animations between frames; the drawing itself is done by a
+ * MachinePainter.
  */
 
 public class MainPanel extends JPanel {
 
 	private BeanCounterLogic logic;	// The core logic of the program
-	private Bean[] beans;				// The beans in the machine
+	private MachineSnapshot frame;		// State of the logic as of the last refresh
+	private InstanceType type;			// The type of logic and beans
+	private int beanCount;				// The number of beans in the machine
+	private boolean isLuck;				// Whether beans progress through pure luck (or skill)
+	private Random beanRandom;			// Generator of all beans, which keeps advancing across resets
 
 	private Point[] beanPositions;		// Current bean positions in physical coordinates
 	private Point[] targetPositions;	// Target positions that the beans need to move to
@@ -31,41 +33,67 @@ public class MainPanel extends JPanel {
 
 	private boolean isRunning;			// Is the bean counter running now?
 
-	private int barHeight;				// The height reserved for bar graphs in the panel
+	private int slotCount;				// The number of slots in the machine
 
-	public static final int SLOT_COUNT = 10;
-	public static final int PEG_SIZE = 10;
-	public static final int BEAN_SIZE = 10;
-	public static final int TOP_MARGIN = 30;
-	public static final int BOTTOM_MARGIN = 30;
-	public static final int BAR_TEXT_HEIGHT = 20;
+	private MachinePainter painter;		// Draws the machine at the current panel size
+
+	public static final int DEFAULT_SLOT_COUNT = 10;
+	public static final int MIN_COLUMN_WIDTH = MachinePainter.MIN_COLUMN_WIDTH;
+	public static final int MIN_LABEL_SPACING = MachinePainter.MIN_LABEL_SPACING;
+	public static final int PEG_SIZE = MachinePainter.PEG_SIZE;
+	public static final int BEAN_SIZE = MachinePainter.BEAN_SIZE;
+	public static final int TOP_MARGIN = MachinePainter.TOP_MARGIN;
+	public static final int BOTTOM_MARGIN = MachinePainter.BOTTOM_MARGIN;
+	public static final int BAR_TEXT_HEIGHT = MachinePainter.BAR_TEXT_HEIGHT;
 
 	/**
-	 * Constructor - creates the main animation panel for the machine.
+	 * Constructor - creates the main animation panel for the machine with the
+	 * default number of slots.
 	 * 
 	 * @param beanCount number of beans in the machine
 	 * @param isLuck    whether beans progress through pure luck (or skill)
 	 */
 	public MainPanel(InstanceType type, int beanCount, boolean isLuck) {
+		this(type, DEFAULT_SLOT_COUNT, beanCount, isLuck);
+	}
+
+	/**
+	 * Constructor - creates the main animation panel for the machine.
+	 * 
+	 * @param slotCount number of slots in the machine
+	 * @param beanCount number of beans in the machine
+	 * @param isLuck    whether beans progress through pure luck (or skill)
+	 */
+	public MainPanel(InstanceType type, int slotCount, int beanCount, boolean isLuck) {
 		super();
 		
+		this.slotCount = slotCount;
 		// Create the internal logic
-		logic = BeanCounterLogic.createInstance(type, SLOT_COUNT);
-		// Create the beans
-		beans = new Bean[beanCount];
-		for (int i = 0; i < beanCount; i++) {
-			beans[i] = Bean.createInstance(type, SLOT_COUNT, isLuck, new Random());
-		}
-		// Initialize the logic with the beans
-		logic.reset(beans);
+		logic = BeanCounterLogic.createInstance(type, slotCount);
+		this.type = type;
+		this.beanCount = beanCount;
+		this.isLuck = isLuck;
+		beanRandom = new BitReservoirRandom();
+		// Initialize the logic with the beans, which are created as they enter the machine
+		logic.reset(createBeanSource());
 		// Set some display related parameters
 		timeBetweenFrames = 10;
 		timeBetweenSteps = 100;
-		// Heuristically maximum height of a bell curve with some headroom
-		barHeight = (int) Math.round(beanCount * 0.27) + 10; 
+		painter = new MachinePainter(slotCount, beanCount);
 		setBackground(Color.WHITE);
 	}
 
+	/**
+	 * Creates a source of beans like the original ones. The machine is only
+	 * stepped by one thread at a time, so the beans can share a generator; it
+	 * is not reseeded, so every reset runs a new experiment.
+	 * 
+	 * @return the bean source
+	 */
+	private BeanSource createBeanSource() {
+		return new GeneratedBeanSource(type, slotCount, isLuck, beanCount, beanRandom);
+	}
+
 	/**
 	 * Move a bean one pixel from p to q.
 	 * 
@@ -94,24 +122,14 @@ public class MainPanel extends JPanel {
 	}
 
 	/**
-	 * Returns the physical coordinate for logical coordinate p. The logical
-	 * coordinate is the coordinate system used by BeanCounterLogic (see
-	 * BeanCounterLogic for details). The physical coordinate is the actual
-	 * coordinate in the MainPanel.
+	 * Returns whether the machine is too large to draw each peg, bean and bar
+	 * individually at the current panel size. See MachinePainter.isAggregated().
 	 * 
-	 * @param p the logical coordinate
-	 * @return the translated physical coordinate.
+	 * @return whether the panel is in aggregated (level-of-detail) mode
 	 */
-	private Point logicalToPhysical(Point p) {
-		Dimension d = getSize();
-		int initialX = d.width / 2;
-		int initialY = TOP_MARGIN;
-		int pegXSpacing = d.width / (SLOT_COUNT);
-		int pegYSpacing = (d.height - TOP_MARGIN - BOTTOM_MARGIN - barHeight - BAR_TEXT_HEIGHT)
-				/ (SLOT_COUNT - 1);
-		int physicalX = initialX - pegXSpacing / 2 * p.y + p.x * pegXSpacing;
-		int physicalY = initialY + p.y * pegYSpacing;
-		return new Point(physicalX, physicalY);
+	private boolean isAggregated() {
+		painter.setSize(getWidth(), getHeight());
+		return painter.isAggregated();
 	}
 
 	/**
@@ -121,27 +139,39 @@ public class MainPanel extends JPanel {
 	 * @return an array of in-flight bean positions
 	 */
 	private Point[] getBeanPositions() {
-		Point[] positions = new Point[SLOT_COUNT];
-		for (int yPos = 0; yPos < SLOT_COUNT; yPos++) {
-			int xPos = logic.getInFlightBeanXPos(yPos);
-			if (xPos != BeanCounterLogic.NO_BEAN_IN_YPOS) {
-				positions[yPos] = logicalToPhysical(new Point(xPos, yPos));
-				positions[yPos].y -= PEG_SIZE + 5;
-			} else {
-				positions[yPos] = null;
-			}
-		}
-		return positions;
+		refreshFrame();
+		painter.setSize(getWidth(), getHeight());
+		return painter.getBeanPositions(frame);
+	}
+
+	/**
+	 * Copies the current state of the logic into frame in one bulk snapshot, so
+	 * that drawing does not have to query the logic once per row and slot.
+	 */
+	private void refreshFrame() {
+		frame = logic.snapshot(frame);
 	}
 
 	/**
 	 * Advance the machine one step.
 	 */
 	private void runOneStep() {
+		if (isAggregated()) {
+			// Beans are single pixels, so there is nothing to animate between steps
+			try {
+				logic.advanceStep();
+			} catch (BeanOutOfBoundsException ex) {
+				System.err.println("Error: bean has gone out of bounds.");
+			}
+			beanPositions = null;
+			targetPositions = null;
+			repaint();
+			return;
+		}
 		// Get current positions
 		beanPositions = getBeanPositions();
 		// Drop the last bean into the slot
-		beanPositions[SLOT_COUNT - 1] = null;
+		beanPositions[slotCount - 1] = null;
 		// Advance one step
 		try {
 			logic.advanceStep();
@@ -154,6 +184,16 @@ public class MainPanel extends JPanel {
 		repaint();
 	}
 
+	/**
+	 * Returns whether there are any beans bouncing on the pegs.
+	 * 
+	 * @return whether any row holds an in-flight bean
+	 */
+	private boolean hasInFlightBeans() {
+		refreshFrame();
+		return frame.getInFlightBeanCount() > 0;
+	}
+
 	/**
 	 * Advance the machine one step. Stop the machine if running continuously.
 	 */
@@ -211,11 +251,11 @@ public class MainPanel extends JPanel {
 	}
 
 	/**
-	 * Stop the machine reset with the original beans.
+	 * Stop the machine and reset it with as many new beans as at the start.
 	 */
 	public void reset() {
 		isRunning = false;
-		logic.reset(beans);
+		logic.reset(createBeanSource());
 		// repeat() clears machine of in-flight beans, so need to refresh positions
 		beanPositions = getBeanPositions();
 		repaint();
@@ -227,13 +267,8 @@ public class MainPanel extends JPanel {
 	 * @param g the graphics object
 	 */
 	public void drawPegs(Graphics g) {
-		g.setColor(Color.BLACK);
-		for (int i = 0; i < SLOT_COUNT - 1; i++) {
-			for (int j = 0; j <= i; j++) {
-				Point p = logicalToPhysical(new Point(j, i));
-				g.drawRect(p.x, p.y, PEG_SIZE, PEG_SIZE);
-			}
-		}
+		painter.setSize(getWidth(), getHeight());
+		painter.drawPegs(g);
 	}
 
 	/**
@@ -242,12 +277,8 @@ public class MainPanel extends JPanel {
 	 * @param g the graphics object
 	 */
 	public void drawBeans(Graphics g) {
-		g.setColor(Color.BLACK);
-		for (int i = 0; i < SLOT_COUNT; i++) {
-			if (beanPositions[i] != null) {
-				g.fillOval(beanPositions[i].x, beanPositions[i].y, BEAN_SIZE, BEAN_SIZE);
-			}
-		}
+		painter.setSize(getWidth(), getHeight());
+		painter.drawBeans(g, frame, beanPositions);
 	}
 
 	/**
@@ -256,14 +287,8 @@ public class MainPanel extends JPanel {
 	 * @param g the graphics object
 	 */
 	public void drawBars(Graphics g) {
-		g.setColor(Color.BLACK);
-		for (int i = 0; i < SLOT_COUNT; i++) {
-			Dimension d = getSize();
-			Point p = logicalToPhysical(new Point(i, SLOT_COUNT));
-			g.fillRect(p.x, d.height - BOTTOM_MARGIN - BAR_TEXT_HEIGHT - logic.getSlotBeanCount(i),
-					d.width / (SLOT_COUNT + 1), logic.getSlotBeanCount(i));
-			g.drawString(String.valueOf(i), p.x + d.width / (SLOT_COUNT + 1) / 2, d.height - BOTTOM_MARGIN);
-		}
+		painter.setSize(getWidth(), getHeight());
+		painter.drawBars(g, frame);
 	}
 
 	/**
@@ -273,29 +298,39 @@ public class MainPanel extends JPanel {
 	 * @param g the graphics object
 	 */
 	public void drawStats(Graphics g) {
-		Dimension d = getSize();
-		g.setFont(new Font("Courier", Font.PLAIN, 20));
-		String average = "Average = " + new DecimalFormat("#.##").format(logic.getAverageSlotBeanCount());
-		g.drawString(average, d.width - 200, TOP_MARGIN);
-		String remaining = "Remaining = " + logic.getRemainingBeanCount();
-		g.drawString(remaining, d.width - 200, TOP_MARGIN + 30);
+		painter.setSize(getWidth(), getHeight());
+		painter.drawStats(g, frame);
 	}
 
 	@Override
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		if (beanPositions == null) {
+		refreshFrame();
+		if (beanPositions == null && !isAggregated()) {
 			beanPositions = getBeanPositions();
 		}
-		drawPegs(g);
-		drawBeans(g);
-		drawBars(g);
-		drawStats(g);
+		painter.setSize(getWidth(), getHeight());
+		painter.paint(g, frame, beanPositions);
+
+		// In aggregated mode steps are not animated, so just keep stepping
+		if (targetPositions == null && isRunning && isAggregated()) {
+			if (!hasInFlightBeans()) {
+				isRunning = false;
+			} else {
+				try {
+					Thread.sleep(timeBetweenSteps);
+				} catch (InterruptedException ie) {
+					// Nothing to do here
+				}
+				runOneStep();
+			}
+			return;
+		}
 
 		// If we have target positions, we are still moving
 		if (targetPositions != null) {
 			boolean allArrived = true;
-			for (int i = 0; i < SLOT_COUNT - 1; i++) {
+			for (int i = 0; i < slotCount - 1; i++) {
 				if (beanPositions[i] != null && targetPositions[i + 1] != null) {
 					allArrived &= moveOnePixel(beanPositions[i], targetPositions[i + 1]);
 				}
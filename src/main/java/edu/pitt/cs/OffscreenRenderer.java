@@ -0,0 +1,282 @@
+package edu.pitt.cs;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+
+/**
+ * OffscreenRenderer: Renders a run of the machine to a sequence of PNG images
+ * without a screen, for turning into a video.
+ *
+ * <p>
+ * The calling thread steps the machine as fast as it can and takes a snapshot
+ * per step. The frames are drawn by MachinePainter, the same code that paints
+ * MainPanel, and encoded on a pool of threads, each with its own painter and
+ * image. Nothing waits on the clock: the frame rate of the video is chosen when
+ * the images are put together. Between two steps, framesPerStep - 1 extra
+ * frames move the beans part of the way to their next pegs, as the animation in
+ * MainPanel does. At most a few frames per thread are waiting to be encoded at
+ * any time, so memory stays bounded however long the run.
+ */
+public class OffscreenRenderer {
+	private final BeanCounterLogic logic;
+	private final int slotCount;
+	private final long beanCount;
+	private final int width;
+	private final int height;
+	private int framesPerStep = 1;
+
+	/**
+	 * Constructor - creates a renderer for a machine that has been reset.
+	 *
+	 * @param logic     the machine
+	 * @param beanCount number of beans in the machine, which sizes the bar graphs
+	 * @param width     the width of the frames in pixels
+	 * @param height    the height of the frames in pixels
+	 */
+	public OffscreenRenderer(BeanCounterLogic logic, long beanCount, int width, int height) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("frame size must be positive");
+		}
+		this.logic = logic;
+		this.slotCount = logic.getSlotCount();
+		this.beanCount = beanCount;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Sets the number of frames rendered per step. With more than one, the
+	 * beans are animated between pegs; in aggregated mode there is nothing to
+	 * animate, and every step is one frame.
+	 *
+	 * @param framesPerStep the number of frames per step
+	 */
+	public void setFramesPerStep(int framesPerStep) {
+		if (framesPerStep < 1) {
+			throw new IllegalArgumentException("framesPerStep must be positive");
+		}
+		this.framesPerStep = framesPerStep;
+	}
+
+	/**
+	 * Returns the file name of frame i.
+	 *
+	 * @param i the frame index
+	 * @return the file name
+	 */
+	static String getFrameName(long i) {
+		return String.format("frame-%06d.png", i);
+	}
+
+	/**
+	 * Runs the machine to the end, writing a frame for the initial state and
+	 * frames for each step into directory.
+	 *
+	 * @param directory the directory to write the frames to
+	 * @param threads   the number of encoding threads
+	 * @return the number of frames written
+	 * @throws IOException          if a frame cannot be written
+	 * @throws RuntimeException     if drawing a frame fails, such as for a frame too large to allocate
+	 * @throws InterruptedException if interrupted while waiting for the encoders
+	 */
+	public long render(Path directory, int threads) throws IOException, InterruptedException {
+		Files.createDirectories(directory);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Semaphore pending = new Semaphore(2 * threads);
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		ThreadLocal<MachinePainter> painters = ThreadLocal.withInitial(() -> {
+			MachinePainter p = new MachinePainter(slotCount, beanCount);
+			p.setSize(width, height);
+			return p;
+		});
+		ThreadLocal<BufferedImage> images = ThreadLocal
+				.withInitial(() -> new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+
+		// The stepping thread's painter only works out where beans are drawn
+		MachinePainter geometry = new MachinePainter(slotCount, beanCount);
+		geometry.setSize(width, height);
+		int steps = geometry.isAggregated() ? 1 : framesPerStep;
+
+		long frameCount = 0;
+		try {
+			MachineSnapshot current = logic.snapshot(null);
+			Point[] positions = geometry.getBeanPositions(current);
+			submit(pool, pending, failure, painters, images, directory, frameCount++, current, positions);
+			while (failure.get() == null) {
+				try {
+					if (!logic.advanceStep()) {
+						break;
+					}
+				} catch (BeanOutOfBoundsException ex) {
+					throw new IllegalStateException("bean went out of bounds", ex);
+				}
+				MachineSnapshot next = logic.snapshot(null);
+				Point[] targets = geometry.getBeanPositions(next);
+				for (int k = 1; k < steps; k++) {
+					submit(pool, pending, failure, painters, images, directory, frameCount++, next,
+							interpolate(positions, targets, (double) k / steps));
+				}
+				submit(pool, pending, failure, painters, images, directory, frameCount++, next, targets);
+				positions = targets;
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		Exception ex = failure.get();
+		if (ex instanceof IOException) {
+			throw (IOException) ex;
+		} else if (ex != null) {
+			throw (RuntimeException) ex;
+		}
+		return frameCount;
+	}
+
+	/**
+	 * Queues a frame for drawing and encoding, waiting while too many frames are
+	 * queued already. A frame that cannot be drawn or written is recorded in
+	 * failure.
+	 *
+	 * @param pool          the encoding threads
+	 * @param pending       permits for frames that may be queued
+	 * @param failure       the first error of any frame
+	 * @param painters      the painter of each encoding thread
+	 * @param images        the image of each encoding thread
+	 * @param directory     the directory to write the frame to
+	 * @param index         the frame index
+	 * @param frame         the snapshot to draw
+	 * @param beanPositions the bean positions to draw
+	 * @throws InterruptedException if interrupted while waiting for a permit
+	 */
+	private static void submit(ExecutorService pool, Semaphore pending, AtomicReference<Exception> failure,
+			ThreadLocal<MachinePainter> painters, ThreadLocal<BufferedImage> images, Path directory, long index,
+			MachineSnapshot frame, Point[] beanPositions) throws InterruptedException {
+		pending.acquire();
+		pool.execute(() -> {
+			try {
+				BufferedImage image = images.get();
+				Graphics2D g = image.createGraphics();
+				g.setColor(Color.WHITE);
+				g.fillRect(0, 0, image.getWidth(), image.getHeight());
+				painters.get().paint(g, frame, beanPositions);
+				g.dispose();
+				if (!ImageIO.write(image, "png", directory.resolve(getFrameName(index)).toFile())) {
+					throw new IOException("no PNG encoder");
+				}
+			} catch (IOException | RuntimeException ex) {
+				failure.compareAndSet(null, ex);
+			} finally {
+				pending.release();
+			}
+		});
+	}
+
+	/**
+	 * Returns the bean positions a fraction of the way through a step. The bean
+	 * in row i moves towards its position in row i + 1, and the bean in the last
+	 * row has already dropped into its slot.
+	 *
+	 * @param from     the positions before the step
+	 * @param to       the positions after the step
+	 * @param fraction how far the beans have moved, between 0 and 1
+	 * @return the positions
+	 */
+	static Point[] interpolate(Point[] from, Point[] to, double fraction) {
+		Point[] positions = new Point[from.length];
+		for (int i = 0; i < from.length - 1; i++) {
+			if (from[i] != null && to[i + 1] != null) {
+				positions[i] = new Point((int) Math.round(from[i].x + (to[i + 1].x - from[i].x) * fraction),
+						(int) Math.round(from[i].y + (to[i + 1].y - from[i].y) * fraction));
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Prints usage information.
+	 */
+	public static void showUsage() {
+		System.out.println("Usage: java OffscreenRenderer slot_count bean_count <luck | skill> --out=DIR [options]");
+		System.out.println("Example: java OffscreenRenderer 10 400 luck --out=frames --frames-per-step=8");
+		System.out.println("Options:");
+		System.out.println("  --out=DIR        write frame-NNNNNN.png files to DIR");
+		System.out.println("  --size=WxH       frame size in pixels (default 800x600)");
+		System.out.println("  --frames-per-step=F      frames per step, animating the beans (default 1)");
+		System.out.println("  --threads=N      number of encoding threads (default the number of processors)");
+		System.out.println("  --seed=S         seed the beans (default random)");
+	}
+
+	/**
+	 * Renders a run to PNG frames without a display.
+	 *
+	 * @param args commandline arguments; see showUsage() for detailed information
+	 */
+	public static void main(String[] args) {
+		// Must be set before any AWT class is loaded
+		System.setProperty("java.awt.headless", "true");
+		CommandLineOptions options;
+		int slotCount;
+		long beanCount;
+		int width;
+		int height;
+		int framesPerStep;
+		int threads;
+		long seed;
+		try {
+			options = CommandLineOptions.parse(args, "out", "size", "frames-per-step", "threads", "seed");
+			args = options.getPositional();
+			if (args.length != 3 || !options.has("out") || !(args[2].equals("luck") || args[2].equals("skill"))) {
+				showUsage();
+				return;
+			}
+			slotCount = Integer.parseInt(args[0]);
+			beanCount = Long.parseLong(args[1]);
+			String[] size = options.getString("size", "800x600").split("x");
+			if (size.length != 2) {
+				showUsage();
+				return;
+			}
+			width = Integer.parseInt(size[0]);
+			height = Integer.parseInt(size[1]);
+			framesPerStep = options.getInt("frames-per-step", 1);
+			threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+			seed = options.getLong("seed", System.nanoTime());
+		} catch (IllegalArgumentException ie) {
+			showUsage();
+			return;
+		}
+		if (slotCount < 1 || beanCount < 0 || width < 1 || height < 1 || framesPerStep < 1 || threads < 1) {
+			showUsage();
+			return;
+		}
+
+		BeanCounterLogic logic = BeanCounterLogic.createInstance(InstanceType.IMPL, slotCount);
+		// Only the stepping thread draws random numbers, so the beans can share a generator
+		logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, args[2].equals("luck"), beanCount,
+				new BitReservoirRandom(seed)));
+		OffscreenRenderer renderer = new OffscreenRenderer(logic, beanCount, width, height);
+		renderer.setFramesPerStep(framesPerStep);
+		try {
+			long start = System.nanoTime();
+			long frames = renderer.render(Paths.get(options.getString("out", "")), threads);
+			long millis = (System.nanoTime() - start) / 1000000;
+			System.out.println("Rendered " + frames + " frames in " + millis + " ms");
+		} catch (IOException ex) {
+			System.out.println("Cannot write frames: " + ex.getMessage());
+		} catch (InterruptedException ie) {
+			// Nothing to do here
+		}
+	}
+}
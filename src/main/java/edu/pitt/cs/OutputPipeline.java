@@ -0,0 +1,382 @@
+package edu.pitt.cs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * OutputPipeline: A channel that hands whatever is written to it over to a
+ * writer thread, which writes it to another channel, so that a slow terminal
+ * or disk does not hold up the simulation.
+ *
+ * <p>
+ * Every write() is one message, such as a frame or a line of statistics. The
+ * messages wait in a ring of a fixed number of buffers. A buffer only grows
+ * when a message is larger than any before it, and the writer swaps its own
+ * buffer for the one it takes out of the ring, so handing over a message
+ * allocates nothing. When the ring is full, the policy decides:
+ *
+ * <pre>
+ * BLOCK        the simulation waits for the writer
+ * DROP_OLDEST  the oldest waiting message is dropped to make room
+ * SAMPLE       the new message is dropped, so only as many get through as the writer can keep up with
+ * </pre>
+ *
+ * <p>
+ * Dropped messages are counted. Writers that want their own count, such as a
+ * renderer next to a stream of stats lines, write through a Source from
+ * newSource(). A Source also tells whether its last message was dropped, and
+ * can be switched to blocking, so that the last message of a run always gets
+ * through. Consumers that depend on earlier messages, such as
+ * AnsiDiffRenderer, watch the count of their Source to know when to start
+ * over.
+ */
+public class OutputPipeline implements WritableByteChannel {
+	/**
+	 * Policy: What write() does when the ring is full.
+	 */
+	public enum Policy {
+		BLOCK, DROP_OLDEST, SAMPLE;
+
+		/**
+		 * Returns the policy with the given name, ignoring case and accepting
+		 * dashes for underscores.
+		 *
+		 * @param name the name
+		 * @return the policy
+		 * @throws IllegalArgumentException if there is no such policy
+		 */
+		public static Policy parse(String name) {
+			return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+		}
+	}
+
+	/**
+	 * Source: A channel into the pipeline that keeps its own count of dropped
+	 * messages. Closing it does nothing; the pipeline is closed by its owner.
+	 */
+	public class Source implements WritableByteChannel {
+		private long sequence;
+		private long droppedCount;
+		private boolean lastMessageDropped;
+		private boolean blocking;
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return OutputPipeline.this.write(src, this);
+		}
+
+		/**
+		 * Returns the number of messages of this source that were dropped.
+		 *
+		 * @return number of dropped messages
+		 */
+		public long getDroppedCount() {
+			lock.lock();
+			try {
+				return droppedCount;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Returns whether the last message written through this source was
+		 * dropped.
+		 *
+		 * @return whether the last message was dropped
+		 */
+		public boolean isLastMessageDropped() {
+			lock.lock();
+			try {
+				return lastMessageDropped;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Makes the messages of this source wait for room rather than be dropped,
+		 * or dropped by the policy again. A waiting message drops nothing else.
+		 *
+		 * @param blocking whether to wait for room
+		 */
+		public void setBlocking(boolean blocking) {
+			lock.lock();
+			try {
+				this.blocking = blocking;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return OutputPipeline.this.isOpen();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private final WritableByteChannel out;
+	private final Policy policy;
+	private final ByteBuffer[] ring;
+	// The source and sequence number of each message in the ring
+	private final Source[] sources;
+	private final long[] sequences;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private final Thread writer;
+	private int head;
+	private int count;
+	private boolean closed;
+	private long messageCount;
+	private long droppedCount;
+	private volatile IOException failure;
+
+	/**
+	 * Constructor - creates a pipeline and starts its writer thread.
+	 *
+	 * @param out      the channel the writer thread writes to
+	 * @param policy   what to do when the ring is full
+	 * @param capacity the number of messages that may wait
+	 */
+	public OutputPipeline(WritableByteChannel out, Policy policy, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.out = out;
+		this.policy = policy;
+		ring = new ByteBuffer[capacity];
+		sources = new Source[capacity];
+		sequences = new long[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = ByteBuffer.allocate(0);
+		}
+		writer = new Thread(this::drain, "output-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns a new channel into the pipeline with its own count of dropped
+	 * messages.
+	 *
+	 * @return the source
+	 */
+	public Source newSource() {
+		return new Source();
+	}
+
+	/**
+	 * Queues the remaining bytes of src as one message, or drops a message if
+	 * the ring is full and the policy says so. Either way src is consumed.
+	 *
+	 * @param src the message
+	 * @return the number of bytes consumed
+	 * @throws IOException if the writer thread failed or the pipeline is closed
+	 */
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return write(src, null);
+	}
+
+	/**
+	 * Queues or drops a message of source.
+	 *
+	 * @param src    the message
+	 * @param source the source of the message, or null
+	 * @return the number of bytes consumed
+	 * @throws IOException if the writer thread failed or the pipeline is closed
+	 */
+	private int write(ByteBuffer src, Source source) throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		int length = src.remaining();
+		lock.lock();
+		try {
+			if (closed) {
+				throw new ClosedChannelException();
+			}
+			messageCount++;
+			long sequence = 0;
+			if (source != null) {
+				sequence = ++source.sequence;
+				source.lastMessageDropped = false;
+			}
+			Policy full = source != null && source.blocking ? Policy.BLOCK : policy;
+			if (count == ring.length) {
+				if (full == Policy.SAMPLE) {
+					dropped(source, sequence);
+					src.position(src.limit());
+					return length;
+				} else if (full == Policy.DROP_OLDEST) {
+					dropped(sources[head], sequences[head]);
+					sources[head] = null;
+					head = (head + 1) % ring.length;
+					count--;
+				} else {
+					while (count == ring.length && failure == null) {
+						notFull.awaitUninterruptibly();
+					}
+					if (failure != null) {
+						throw failure;
+					}
+				}
+			}
+			int tail = (head + count) % ring.length;
+			if (ring[tail].capacity() < length) {
+				ring[tail] = ByteBuffer.allocate(length);
+			}
+			ring[tail].clear();
+			ring[tail].put(src).flip();
+			sources[tail] = source;
+			sequences[tail] = sequence;
+			count++;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+		return length;
+	}
+
+	/**
+	 * Counts a dropped message. Must hold the lock.
+	 *
+	 * @param source   the source of the message, or null
+	 * @param sequence the sequence number of the message in its source
+	 */
+	private void dropped(Source source, long sequence) {
+		droppedCount++;
+		if (source != null) {
+			source.droppedCount++;
+			if (sequence == source.sequence) {
+				source.lastMessageDropped = true;
+			}
+		}
+	}
+
+	/**
+	 * Runs on the writer thread: takes messages out of the ring and writes them
+	 * until the pipeline is closed and empty.
+	 */
+	private void drain() {
+		ByteBuffer spare = ByteBuffer.allocate(0);
+		while (true) {
+			lock.lock();
+			try {
+				while (count == 0 && !closed) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (count == 0) {
+					return;
+				}
+				ByteBuffer message = ring[head];
+				ring[head] = spare;
+				sources[head] = null;
+				spare = message;
+				head = (head + 1) % ring.length;
+				count--;
+				notFull.signal();
+			} finally {
+				lock.unlock();
+			}
+			try {
+				while (spare.hasRemaining()) {
+					out.write(spare);
+				}
+			} catch (IOException ex) {
+				failure = ex;
+				lock.lock();
+				try {
+					// Release a blocked writer; nothing more will be taken out of the ring
+					notFull.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of messages written to the pipeline so far, including
+	 * dropped ones.
+	 *
+	 * @return number of messages
+	 */
+	public long getMessageCount() {
+		lock.lock();
+		try {
+			return messageCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of messages dropped because the ring was full.
+	 *
+	 * @return number of dropped messages
+	 */
+	public long getDroppedCount() {
+		lock.lock();
+		try {
+			return droppedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the policy for a full ring.
+	 *
+	 * @return the policy
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	@Override
+	public boolean isOpen() {
+		lock.lock();
+		try {
+			return !closed;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for the writer thread to write all waiting messages. The channel
+	 * written to is left open.
+	 *
+	 * @throws IOException if a message could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package edu.pitt.cs;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RandomTape: A Random that plays back a file of pre-generated random bits
+ * instead of computing them, so beans can be handed the exact same sequence
+ * of decisions in every implementation and JVM.
+ *
+ * <p>
+ * The file holds little-endian 32-bit words and is memory-mapped read-only.
+ * Each call to next(bits) consumes one word and returns its high bits, so
+ * nextInt(2), nextGaussian() and the other methods of Random work unchanged.
+ * The seed selects the word the tape starts at; the tape wraps around at the
+ * end. generate() (or main) writes a tape.
+ */
+public class RandomTape extends Random {
+	private static final long serialVersionUID = 1L;
+	// Mappings are limited to 2GB; use 1GB segments
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+	// Serialized by path, so checkpoints of beans on a tape continue at the same word
+	private final String path;
+	private final long wordCount;
+	private final AtomicLong word = new AtomicLong();
+	private transient MappedByteBuffer[] segments;
+
+	/**
+	 * Constructor - maps the tape at path, starting at its first word.
+	 * 
+	 * @param path the tape file
+	 * @throws IOException if the file cannot be mapped or holds no whole word
+	 */
+	public RandomTape(Path path) throws IOException {
+		this(path, 0);
+	}
+
+	/**
+	 * Constructor - maps the tape at path, starting at word seed mod the number
+	 * of words.
+	 * 
+	 * @param path the tape file
+	 * @param seed selects the word to start at
+	 * @throws IOException if the file cannot be mapped or holds no whole word
+	 */
+	public RandomTape(Path path, long seed) throws IOException {
+		this.path = path.toAbsolutePath().toString();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			wordCount = channel.size() / 4;
+		}
+		if (wordCount == 0) {
+			throw new IOException(path + " holds no random words");
+		}
+		map();
+		setSeed(seed);
+	}
+
+	/**
+	 * Maps the words of the tape in segments.
+	 * 
+	 * @throws IOException if the file cannot be mapped or has become shorter
+	 */
+	private void map() throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			if (channel.size() < wordCount * 4) {
+				throw new IOException(path + " is shorter than the tape");
+			}
+			segments = new MappedByteBuffer[(int) ((wordCount * 4 + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = (long) i << SEGMENT_SHIFT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(SEGMENT_SIZE, wordCount * 4 - start));
+				segments[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		map();
+	}
+
+	/**
+	 * Moves the tape to word seed mod the number of words.
+	 * 
+	 * @param seed selects the word to continue at
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		// Random's constructor calls this before the tape is mapped
+		if (word != null) {
+			word.set(Math.floorMod(seed, wordCount));
+		}
+	}
+
+	/**
+	 * Returns the high bits of the next word on the tape.
+	 * 
+	 * @param bits number of random bits
+	 * @return the random bits
+	 */
+	@Override
+	protected int next(int bits) {
+		long w;
+		long n;
+		do {
+			w = word.get();
+			n = w + 1 == wordCount ? 0 : w + 1;
+		} while (!word.compareAndSet(w, n));
+		long offset = w * 4;
+		int value = segments[(int) (offset >>> SEGMENT_SHIFT)].getInt((int) (offset & (SEGMENT_SIZE - 1)));
+		return value >>> (32 - bits);
+	}
+
+	/**
+	 * Returns the number of words on the tape.
+	 * 
+	 * @return number of words
+	 */
+	public long getWordCount() {
+		return wordCount;
+	}
+
+	/**
+	 * Writes a tape of random words generated from seed.
+	 * 
+	 * @param path      the tape file to create (or truncate)
+	 * @param wordCount number of 32-bit words to write
+	 * @param seed      the seed of the generator
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void generate(Path path, long wordCount, long seed) throws IOException {
+		SplittableRandom rand = new SplittableRandom(seed);
+		ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (long i = 0; i < wordCount; i++) {
+				buf.putInt(rand.nextInt());
+				if (!buf.hasRemaining()) {
+					write(channel, buf);
+				}
+			}
+			write(channel, buf);
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Prints usage information.
+	 */
+	public static void showUsage() {
+		System.out.println("Usage: java RandomTape file word_count [seed]");
+		System.out.println("Example: java RandomTape /tmp/bits.tape 100000000 42");
+	}
+
+	/**
+	 * Writes a tape.
+	 * 
+	 * @param args commandline arguments; see showUsage() for detailed information
+	 */
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 3) {
+			showUsage();
+			return;
+		}
+		long wordCount;
+		long seed;
+		try {
+			wordCount = Long.parseLong(args[1]);
+			seed = args.length == 3 ? Long.parseLong(args[2]) : System.nanoTime();
+		} catch (NumberFormatException ne) {
+			showUsage();
+			return;
+		}
+		if (wordCount < 1) {
+			showUsage();
+			return;
+		}
+		try {
+			generate(Paths.get(args[0]), wordCount, seed);
+		} catch (IOException ex) {
+			System.out.println("Cannot write tape: " + ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,335 @@
+package edu.pitt.cs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * ShardedRunner: Runs one text-mode experiment as several shards, each in its
+ * own worker JVM, and merges their slot counts.
+ *
+ * <p>
+ * The beans are split as evenly as possible between the shards, and each shard
+ * gets its own seed derived from the experiment's seed. A worker is an
+ * ordinary text-mode run of BeanCounterLogicImpl with --seed and --cache, so it
+ * hands its result back through an ExperimentCache directory shared with the
+ * coordinator. A worker that exits abnormally, leaves no result or runs past
+ * the worker timeout is started again, up to a number of retries; a worker
+ * that runs too long is killed first. Since the shard results are cached, a
+ * sharded run that is repeated with the same cache directory only runs the
+ * shards that did not finish before.
+ */
+public class ShardedRunner {
+	private final int slotCount;
+	private final long beanCount;
+	private final boolean isLuck;
+	private final int pipelineWidth;
+	private final long seed;
+	private final int shardCount;
+	private int parallelism;
+	private int retries = 2;
+	private String workerHeap;
+	// 0 for no timeout
+	private long workerTimeoutMillis;
+
+	/**
+	 * Constructor - creates a runner for one experiment.
+	 *
+	 * @param slotCount     the number of slots
+	 * @param beanCount     the number of beans in all shards together
+	 * @param isLuck        whether the beans are in luck mode
+	 * @param pipelineWidth the pipeline width
+	 * @param seed          the seed the shard seeds are derived from
+	 * @param shardCount    the number of shards
+	 */
+	public ShardedRunner(int slotCount, long beanCount, boolean isLuck, int pipelineWidth, long seed,
+			int shardCount) {
+		if (slotCount < 1 || beanCount < 0 || pipelineWidth < 1 || shardCount < 1) {
+			throw new IllegalArgumentException("bad experiment");
+		}
+		this.slotCount = slotCount;
+		this.beanCount = beanCount;
+		this.isLuck = isLuck;
+		this.pipelineWidth = pipelineWidth;
+		this.seed = seed;
+		this.shardCount = shardCount;
+		this.parallelism = shardCount;
+	}
+
+	/**
+	 * Sets the number of workers that run at the same time. By default all
+	 * shards run at once.
+	 *
+	 * @param parallelism the number of concurrent workers
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets how many times a failed shard is started again before the run fails.
+	 *
+	 * @param retries the number of retries per shard
+	 */
+	public void setRetries(int retries) {
+		if (retries < 0) {
+			throw new IllegalArgumentException("retries must not be negative");
+		}
+		this.retries = retries;
+	}
+
+	/**
+	 * Sets the maximum heap of each worker JVM, in the form of -Xmx.
+	 *
+	 * @param workerHeap the heap size, such as 512m, or null for the JVM default
+	 */
+	public void setWorkerHeap(String workerHeap) {
+		this.workerHeap = workerHeap;
+	}
+
+	/**
+	 * Sets how long a worker may run before it is killed and counted as a
+	 * failed attempt. By default workers run as long as they take.
+	 *
+	 * @param timeout the timeout, or 0 for none
+	 * @param unit    the unit of timeout
+	 */
+	public void setWorkerTimeout(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout must not be negative");
+		}
+		this.workerTimeoutMillis = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Returns the number of beans of shard i. The first beanCount mod shardCount
+	 * shards get one bean more than the others.
+	 *
+	 * @param i the shard index
+	 * @return the number of beans
+	 */
+	long getShardBeanCount(int i) {
+		return beanCount / shardCount + (i < beanCount % shardCount ? 1 : 0);
+	}
+
+	/**
+	 * Returns the seed of shard i.
+	 *
+	 * @param i the shard index
+	 * @return the seed
+	 */
+	long getShardSeed(int i) {
+		return SweepRunner.mix(seed + (i + 1) * 0x9E3779B97F4A7C15L);
+	}
+
+	/**
+	 * Returns the cache key of the result of shard i.
+	 *
+	 * @param i the shard index
+	 * @return the key
+	 */
+	String getShardKey(int i) {
+		return ExperimentCache.canonicalKey(
+				ExperimentCache.runParameters(slotCount, getShardBeanCount(i), isLuck, pipelineWidth, getShardSeed(i)));
+	}
+
+	/**
+	 * Runs all shards, reusing any results already in the cache directory, and
+	 * merges their results. The merged step count is that of the longest shard,
+	 * since the shards run side by side.
+	 *
+	 * @param cacheDirectory the directory through which workers return results
+	 * @return the merged result
+	 * @throws IOException          if a shard still fails after its retries
+	 * @throws InterruptedException if interrupted while waiting for workers
+	 */
+	public ExperimentResult run(Path cacheDirectory) throws IOException, InterruptedException {
+		ExperimentCache cache = new ExperimentCache(cacheDirectory, shardCount);
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<ExperimentResult>> shards = new ArrayList<>();
+			for (int i = 0; i < shardCount; i++) {
+				final int shard = i;
+				shards.add(pool.submit(() -> runShard(shard, cache, cacheDirectory)));
+			}
+			long[] counts = new long[slotCount];
+			long steps = 0;
+			for (Future<ExperimentResult> f : shards) {
+				ExperimentResult r = f.get();
+				for (int i = 0; i < slotCount; i++) {
+					counts[i] += r.getSlotBeanCount(i);
+				}
+				steps = Math.max(steps, r.getStepCount());
+			}
+			return new ExperimentResult(counts, steps);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		} finally {
+			// Interrupting the pool also stops the workers of unfinished shards
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs shard i in a worker JVM until it leaves a result in the cache.
+	 *
+	 * @param i              the shard index
+	 * @param cache          the cache the worker writes to
+	 * @param cacheDirectory the directory of cache
+	 * @return the result of the shard
+	 * @throws IOException          if the shard still fails after its retries
+	 * @throws InterruptedException if interrupted while waiting for the worker
+	 */
+	private ExperimentResult runShard(int i, ExperimentCache cache, Path cacheDirectory)
+			throws IOException, InterruptedException {
+		String key = getShardKey(i);
+		boolean timedOut = false;
+		for (int attempt = 0; attempt <= retries; attempt++) {
+			ExperimentResult result = cache.get(key);
+			if (result != null) {
+				return result;
+			}
+			Process worker = new ProcessBuilder(workerCommand(i, cacheDirectory))
+					.redirectOutput(ProcessBuilder.Redirect.DISCARD)
+					.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			try {
+				if (workerTimeoutMillis == 0) {
+					worker.waitFor();
+					timedOut = false;
+				} else {
+					timedOut = !worker.waitFor(workerTimeoutMillis, TimeUnit.MILLISECONDS);
+				}
+			} finally {
+				worker.destroyForcibly();
+			}
+			if (timedOut) {
+				// Make sure the killed worker is gone before the next one starts
+				worker.waitFor();
+			}
+		}
+		ExperimentResult result = cache.get(key);
+		if (result == null) {
+			throw new IOException("shard " + i + " failed after " + retries + " retries"
+					+ (timedOut ? " (the last worker timed out)" : ""));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the command line of the worker for shard i.
+	 *
+	 * @param i              the shard index
+	 * @param cacheDirectory the directory the worker writes its result to
+	 * @return the command line
+	 */
+	List<String> workerCommand(int i, Path cacheDirectory) {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		if (workerHeap != null) {
+			command.add("-Xmx" + workerHeap);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(BeanCounterLogicImpl.class.getName());
+		command.add(Integer.toString(slotCount));
+		command.add(Long.toString(getShardBeanCount(i)));
+		command.add(isLuck ? "luck" : "skill");
+		command.add("--width=" + pipelineWidth);
+		command.add("--seed=" + getShardSeed(i));
+		command.add("--cache=" + cacheDirectory.toAbsolutePath());
+		return command;
+	}
+
+	/**
+	 * Prints usage information.
+	 */
+	public static void showUsage() {
+		System.out.println("Usage: java ShardedRunner slot_count bean_count <luck | skill> --shards=N [options]");
+		System.out.println("Example: java ShardedRunner 20 1000000000 luck --shards=8 --seed=42");
+		System.out.println("Options:");
+		System.out.println("  --shards=N       split the beans between N worker JVMs");
+		System.out.println("  --jobs=J         run at most J workers at once (default N)");
+		System.out.println("  --retries=R      start a failed worker again up to R times (default 2)");
+		System.out.println("  --heap=SIZE      maximum heap of each worker, as for -Xmx");
+		System.out.println("  --worker-timeout=SEC     kill and retry a worker that runs longer than SEC seconds");
+		System.out.println("  --width=K        pipeline width of each worker (default 1)");
+		System.out.println("  --seed=S         seed the shard seeds are derived from (default random)");
+		System.out.println("  --cache=DIR      keep the shard results in DIR (default a temporary directory)");
+	}
+
+	/**
+	 * Runs a sharded experiment and shows the merged slot bean counts at the end.
+	 *
+	 * @param args commandline arguments; see showUsage() for detailed information
+	 */
+	public static void main(String[] args) {
+		ShardedRunner runner;
+		CommandLineOptions options;
+		try {
+			options = CommandLineOptions.parse(args, "shards", "jobs", "retries", "heap", "worker-timeout",
+					"width", "seed", "cache");
+			args = options.getPositional();
+			if (args.length != 3 || !options.has("shards") || !(args[2].equals("luck") || args[2].equals("skill"))) {
+				showUsage();
+				return;
+			}
+			int shards = options.getInt("shards", 1);
+			runner = new ShardedRunner(Integer.parseInt(args[0]), Long.parseLong(args[1]), args[2].equals("luck"),
+					options.getInt("width", 1), options.getLong("seed", System.nanoTime()), shards);
+			runner.setParallelism(options.getInt("jobs", shards));
+			runner.setRetries(options.getInt("retries", 2));
+			runner.setWorkerHeap(options.getString("heap", null));
+			runner.setWorkerTimeout(options.getLong("worker-timeout", 0), TimeUnit.SECONDS);
+		} catch (IllegalArgumentException ie) {
+			showUsage();
+			return;
+		}
+
+		Path directory = null;
+		try {
+			directory = options.has("cache") ? Paths.get(options.getString("cache", ""))
+					: Files.createTempDirectory("shards");
+			ExperimentResult result = runner.run(directory);
+			System.out.println("Slot bean counts:");
+			System.out.println(BeanCounterLogicImpl.getSlotString(result.getSlotCounts()));
+		} catch (IOException ex) {
+			System.out.println("Sharded run failed: " + ex.getMessage());
+		} catch (InterruptedException ie) {
+			// Nothing to do here
+		} finally {
+			if (directory != null && !options.has("cache")) {
+				deleteDirectory(directory);
+			}
+		}
+	}
+
+	/**
+	 * Deletes a temporary directory and its contents, as far as possible.
+	 *
+	 * @param directory the directory
+	 */
+	private static void deleteDirectory(Path directory) {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException ex) {
+			// Leave it to the system's temporary file cleanup
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package edu.pitt.cs;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SkillSampler: Draws bean skill levels for a given slot count with a single
+ * uniform random number.
+ *
+ * <p>
+ * BeanImpl's original constructor computes the skill level as a normal sample
+ * with mean (slotCount - 1) / 2 and standard deviation sqrt(slotCount / 4),
+ * rounded and clamped to [0, slotCount - 1]. That is a discrete distribution
+ * over slotCount values, so this class computes its probabilities once and
+ * stores them in an alias table (Vose's method): a uniform draw picks a column
+ * and, within the column, either the column's own skill level or its alias.
+ * Samplers are cached per slot count.
+ */
+public final class SkillSampler {
+	private static final ConcurrentHashMap<Integer, SkillSampler> CACHE = new ConcurrentHashMap<>();
+
+	private final double[] probabilities;
+	// Column i yields i with probability threshold[i] and alias[i] otherwise
+	private final double[] threshold;
+	private final int[] alias;
+
+	/**
+	 * Returns the sampler for the given slot count, creating it on first use.
+	 * 
+	 * @param slotCount the number of slots in the machine
+	 * @return the sampler
+	 */
+	public static SkillSampler forSlotCount(int slotCount) {
+		if (slotCount < 1) {
+			throw new IllegalArgumentException("slot count must be at least 1");
+		}
+		return CACHE.computeIfAbsent(slotCount, SkillSampler::new);
+	}
+
+	private SkillSampler(int slotCount) {
+		double average = (slotCount - 1) * 0.5;
+		double stdev = Math.sqrt(slotCount * 0.5 * (1 - 0.5));
+		// round(x) is k for x in [k - 0.5, k + 0.5); the outermost levels also take the clamped tails
+		probabilities = new double[slotCount];
+		double below = 0;
+		for (int k = 0; k < slotCount; k++) {
+			double upTo = k == slotCount - 1 ? 1 : normalCdf((k + 0.5 - average) / stdev);
+			probabilities[k] = upTo - below;
+			below = upTo;
+		}
+
+		threshold = new double[slotCount];
+		alias = new int[slotCount];
+		double[] scaled = new double[slotCount];
+		int[] small = new int[slotCount];
+		int[] large = new int[slotCount];
+		int smallCount = 0;
+		int largeCount = 0;
+		for (int k = 0; k < slotCount; k++) {
+			scaled[k] = probabilities[k] * slotCount;
+			if (scaled[k] < 1) {
+				small[smallCount++] = k;
+			} else {
+				large[largeCount++] = k;
+			}
+		}
+		while (smallCount > 0 && largeCount > 0) {
+			int s = small[--smallCount];
+			int l = large[--largeCount];
+			threshold[s] = scaled[s];
+			alias[s] = l;
+			scaled[l] = scaled[l] + scaled[s] - 1;
+			if (scaled[l] < 1) {
+				small[smallCount++] = l;
+			} else {
+				large[largeCount++] = l;
+			}
+		}
+		// Whatever is left is 1 up to rounding error
+		while (largeCount > 0) {
+			threshold[large[--largeCount]] = 1;
+		}
+		while (smallCount > 0) {
+			threshold[small[--smallCount]] = 1;
+		}
+	}
+
+	/**
+	 * Returns the standard normal cumulative distribution function at x.
+	 * 
+	 * @param x the point
+	 * @return P(Z &lt;= x) for standard normal Z, accurate to about 1e-7
+	 */
+	static double normalCdf(double x) {
+		return 0.5 * erfc(-x / Math.sqrt(2));
+	}
+
+	/**
+	 * Returns the complementary error function, using the Chebyshev fit from
+	 * Numerical Recipes (fractional error below 1.2e-7).
+	 * 
+	 * @param x the point
+	 * @return erfc(x)
+	 */
+	private static double erfc(double x) {
+		double z = Math.abs(x);
+		double t = 1 / (1 + 0.5 * z);
+		double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+				+ t * (-0.82215223 + t * 0.17087277)))))))));
+		return x >= 0 ? r : 2 - r;
+	}
+
+	/**
+	 * Returns the probability of the given skill level.
+	 * 
+	 * @param skillLevel the skill level
+	 * @return its probability
+	 */
+	public double getProbability(int skillLevel) {
+		return probabilities[skillLevel];
+	}
+
+	/**
+	 * Returns the number of skill levels, which is the slot count.
+	 * 
+	 * @return number of skill levels
+	 */
+	public int getLevelCount() {
+		return probabilities.length;
+	}
+
+	/**
+	 * Draws a skill level with one call to rand.nextDouble().
+	 * 
+	 * @param rand the random number generator
+	 * @return the skill level
+	 */
+	public int sample(Random rand) {
+		double u = rand.nextDouble() * threshold.length;
+		int column = (int) u;
+		return u - column < threshold[column] ? column : alias[column];
+	}
+}
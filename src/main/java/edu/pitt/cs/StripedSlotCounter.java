@@ -0,0 +1,164 @@
+package edu.pitt.cs;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * StripedSlotCounter: A slot histogram that many threads can drop beans into at
+ * the same time, as they do through BeanCounterLogicConcurrent.dropBean().
+ *
+ * <p>
+ * Works like a LongAdder per slot. The counts are split over a number of
+ * stripes, and each thread adds into the stripe picked by its probe value, so
+ * threads mostly update disjoint memory. Each stripe is a contiguous row of
+ * slot counters, and rows are separated by padding so that two stripes never
+ * share a cache line. If a thread loses a compare-and-set race on its stripe,
+ * it moves its probe to a different stripe, spreading contended threads out
+ * over time. Reads sum a slot across all stripes.
+ *
+ * <p>
+ * Reads are not atomic with respect to concurrent writes: a read taken while
+ * beans are being dropped may miss some of them, exactly like LongAdder.sum().
+ */
+public class StripedSlotCounter {
+	private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	// 128 bytes of padding between stripes also covers adjacent-line prefetching
+	private static final int PADDING = 16;
+
+	private static final ThreadLocal<int[]> PROBE = ThreadLocal.withInitial(
+			() -> new int[] { mix((int) Thread.currentThread().getId()) });
+
+	private final int slotCount;
+	private final int stripeMask;
+	private final int stride;
+	private final long[] cells;
+
+	/**
+	 * Constructor - creates a counter with one stripe per available processor
+	 * (rounded up to a power of two).
+	 * 
+	 * @param slotCount the number of slots in the histogram
+	 */
+	public StripedSlotCounter(int slotCount) {
+		this(slotCount, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor - creates a counter with at least the given number of stripes.
+	 * 
+	 * @param slotCount the number of slots in the histogram
+	 * @param stripes   the minimum number of stripes; rounded up to a power of two
+	 */
+	public StripedSlotCounter(int slotCount, int stripes) {
+		int n = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+		if (stripes <= 1) {
+			n = 1;
+		}
+		this.slotCount = slotCount;
+		this.stripeMask = n - 1;
+		this.stride = slotCount + PADDING;
+		this.cells = new long[PADDING + n * stride];
+	}
+
+	/**
+	 * Scrambles a probe value (xorshift) so that consecutive thread ids land on
+	 * unrelated stripes.
+	 * 
+	 * @param probe the value to scramble
+	 * @return a non-zero scrambled value
+	 */
+	private static int mix(int probe) {
+		probe = probe == 0 ? 0x9E3779B9 : probe;
+		probe ^= probe << 13;
+		probe ^= probe >>> 17;
+		probe ^= probe << 5;
+		return probe;
+	}
+
+	/**
+	 * Returns the number of slots in the histogram.
+	 * 
+	 * @return number of slots
+	 */
+	public int getSlotCount() {
+		return slotCount;
+	}
+
+	/**
+	 * Returns the number of stripes the counts are spread over.
+	 * 
+	 * @return number of stripes
+	 */
+	public int getStripeCount() {
+		return stripeMask + 1;
+	}
+
+	/**
+	 * Drops one bean into slot i.
+	 * 
+	 * @param i index of slot
+	 */
+	public void increment(int i) {
+		add(i, 1);
+	}
+
+	/**
+	 * Drops count beans into slot i.
+	 * 
+	 * @param i     index of slot
+	 * @param count number of beans to add
+	 */
+	public void add(int i, long count) {
+		if (i < 0 || i >= slotCount) {
+			throw new IndexOutOfBoundsException("slot " + i);
+		}
+		int[] probe = PROBE.get();
+		while (true) {
+			int index = PADDING + (probe[0] & stripeMask) * stride + i;
+			long v = (long) CELLS.getVolatile(cells, index);
+			if (CELLS.compareAndSet(cells, index, v, v + count)) {
+				return;
+			}
+			probe[0] = mix(probe[0]);
+		}
+	}
+
+	/**
+	 * Returns the number of beans in slot i, summed over all stripes.
+	 * 
+	 * @param i index of slot
+	 * @return number of beans in slot
+	 */
+	public long getSlotBeanCount(int i) {
+		long sum = 0;
+		for (int s = 0; s <= stripeMask; s++) {
+			sum += (long) CELLS.getVolatile(cells, PADDING + s * stride + i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Copies the counts of all slots into counts, reusing the array when it has
+	 * the right length.
+	 * 
+	 * @param counts an array to refill, or null
+	 * @return the per-slot bean counts
+	 */
+	public long[] getSlotBeanCounts(long[] counts) {
+		long[] result = counts != null && counts.length == slotCount ? counts : new long[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			result[i] = getSlotBeanCount(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Clears all slots. Must not race with concurrent adds.
+	 */
+	public void clear() {
+		for (int i = 0; i < cells.length; i++) {
+			CELLS.setVolatile(cells, i, 0L);
+		}
+	}
+}
@@ -0,0 +1,355 @@
+package edu.pitt.cs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SweepRunner: Runs a grid of text-mode experiments in one JVM.
+ *
+ * <p>
+ * A grid names the values of each parameter, for example
+ * {@code slots=10,20,50 beans=1000..100000/1000 mode=luck,skill width=1}. Every
+ * combination is one configuration. Configurations are queued for a fixed
+ * pool of worker threads in order of cost (estimated as beans times slots, the
+ * number of bean steps), so the most expensive start first and no long run is
+ * left to finish on its own at the end. Each worker thread keeps the machine
+ * and the bean objects of every size it has run and reuses them for later
+ * configurations of the same size. Results are written to one output file, a
+ * CSV line per configuration as it finishes. A configuration that fails gets
+ * a line with its parameters and the error instead of results, and the sweep
+ * goes on.
+ */
+public class SweepRunner {
+	/**
+	 * Header of the output file; the slot counts are separated by spaces.
+	 */
+	public static final String HEADER = "slots,beans,mode,width,seed,steps,average,millis,slot_counts,error";
+
+	/**
+	 * Configuration: One experiment of a sweep.
+	 */
+	public static final class Configuration {
+		final int slotCount;
+		final long beanCount;
+		final boolean isLuck;
+		final int pipelineWidth;
+		final long seed;
+
+		/**
+		 * Constructor - creates a configuration.
+		 * 
+		 * @param slotCount     the number of slots
+		 * @param beanCount     the number of beans
+		 * @param isLuck        whether the beans are in luck mode
+		 * @param pipelineWidth the pipeline width
+		 * @param seed          the seed of the random number generator
+		 */
+		public Configuration(int slotCount, long beanCount, boolean isLuck, int pipelineWidth, long seed) {
+			if (slotCount < 1 || beanCount < 0 || pipelineWidth < 1) {
+				throw new IllegalArgumentException("bad configuration");
+			}
+			this.slotCount = slotCount;
+			this.beanCount = beanCount;
+			this.isLuck = isLuck;
+			this.pipelineWidth = pipelineWidth;
+			this.seed = seed;
+		}
+
+		/**
+		 * Returns the estimated cost of the experiment: the number of bean steps.
+		 * 
+		 * @return the estimated cost
+		 */
+		public double getCost() {
+			return (double) beanCount * slotCount;
+		}
+	}
+
+	/**
+	 * A machine and bean source kept by a worker for configurations of one size.
+	 */
+	private static final class Machine {
+		final BeanCounterLogicImpl logic;
+		final BitReservoirRandom rand = new BitReservoirRandom();
+		final GeneratedBeanSource source;
+
+		Machine(Configuration c) {
+			logic = new BeanCounterLogicImpl(c.slotCount, c.pipelineWidth);
+			logic.setRetainSlotBeans(false);
+			source = new GeneratedBeanSource(InstanceType.IMPL, c.slotCount, c.isLuck, 0, rand);
+		}
+	}
+
+	private static final ThreadLocal<Map<String, Machine>> MACHINES = ThreadLocal.withInitial(HashMap::new);
+
+	private final List<Configuration> configurations;
+	private final int parallelism;
+
+	/**
+	 * Constructor - creates a runner for the given configurations.
+	 * 
+	 * @param configurations the configurations to run
+	 * @param parallelism    the number of worker threads
+	 */
+	public SweepRunner(List<Configuration> configurations, int parallelism) {
+		this.configurations = new ArrayList<>(configurations);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Expands a grid into configurations. Each element of grid has the form
+	 * name=values, where values is a comma-separated list whose items are
+	 * numbers or ranges from..to or from..to/step. The names are slots, beans,
+	 * mode (luck and/or skill, default both) and width (default 1). Each
+	 * configuration gets its own seed derived from baseSeed.
+	 * 
+	 * @param grid     the grid
+	 * @param baseSeed the seed the configuration seeds are derived from
+	 * @return the configurations, in grid order
+	 * @throws IllegalArgumentException if the grid is malformed
+	 */
+	public static List<Configuration> parseGrid(String[] grid, long baseSeed) {
+		Map<String, String> values = new HashMap<>();
+		values.put("mode", "luck,skill");
+		values.put("width", "1");
+		for (String item : grid) {
+			int eq = item.indexOf('=');
+			String name = eq < 0 ? item : item.substring(0, eq);
+			if (eq < 0 || !(name.equals("slots") || name.equals("beans") || name.equals("mode")
+					|| name.equals("width"))) {
+				throw new IllegalArgumentException("unexpected grid item " + item);
+			}
+			values.put(name, item.substring(eq + 1));
+		}
+		if (!values.containsKey("slots") || !values.containsKey("beans")) {
+			throw new IllegalArgumentException("grid needs slots and beans");
+		}
+		List<Long> slots = parseValues(values.get("slots"));
+		List<Long> beans = parseValues(values.get("beans"));
+		List<Long> widths = parseValues(values.get("width"));
+		List<Boolean> modes = new ArrayList<>();
+		for (String mode : values.get("mode").split(",")) {
+			if (!mode.equals("luck") && !mode.equals("skill")) {
+				throw new IllegalArgumentException("unexpected mode " + mode);
+			}
+			modes.add(mode.equals("luck"));
+		}
+
+		List<Configuration> configurations = new ArrayList<>();
+		for (long s : slots) {
+			for (long b : beans) {
+				for (boolean luck : modes) {
+					for (long w : widths) {
+						long seed = mix(baseSeed + configurations.size() * 0x9E3779B97F4A7C15L);
+						configurations.add(new Configuration(Math.toIntExact(s), b, luck, Math.toIntExact(w), seed));
+					}
+				}
+			}
+		}
+		return configurations;
+	}
+
+	private static List<Long> parseValues(String list) {
+		List<Long> values = new ArrayList<>();
+		try {
+			for (String item : list.split(",")) {
+				int dots = item.indexOf("..");
+				if (dots < 0) {
+					values.add(Long.parseLong(item));
+					continue;
+				}
+				int slash = item.indexOf('/');
+				long from = Long.parseLong(item.substring(0, dots));
+				long to = Long.parseLong(item.substring(dots + 2, slash < 0 ? item.length() : slash));
+				long step = slash < 0 ? 1 : Long.parseLong(item.substring(slash + 1));
+				if (step < 1) {
+					throw new IllegalArgumentException("step must be positive in " + item);
+				}
+				for (long v = from; v <= to; v += step) {
+					values.add(v);
+				}
+			}
+		} catch (NumberFormatException ne) {
+			throw new IllegalArgumentException("bad values " + list, ne);
+		}
+		return values;
+	}
+
+	/**
+	 * Scrambles a seed (the SplitMix64 finalizer), so that neighbouring
+	 * configurations get unrelated seeds.
+	 * 
+	 * @param z the value to scramble
+	 * @return the scrambled value
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Runs all configurations and writes a line per configuration to out as
+	 * each finishes, after the header.
+	 * 
+	 * @param out where to write the results
+	 * @return the number of configurations that failed
+	 * @throws IOException if the results cannot be written
+	 */
+	public int run(Writer out) throws IOException {
+		out.write(HEADER + "\n");
+		List<Configuration> byCost = new ArrayList<>(configurations);
+		Collections.sort(byCost, Comparator.comparingDouble(Configuration::getCost).reversed());
+		// The queue of a fixed pool is first in, first out, so the configurations start in order of cost
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<Boolean>> tasks = new ArrayList<>();
+			for (Configuration c : byCost) {
+				tasks.add(pool.submit(() -> {
+					String line;
+					boolean failed = false;
+					try {
+						line = runOne(c);
+					} catch (RuntimeException ex) {
+						line = errorLine(c, ex);
+						failed = true;
+					}
+					synchronized (out) {
+						try {
+							out.write(line);
+							out.flush();
+						} catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					}
+					return failed;
+				}));
+			}
+			int failures = 0;
+			for (Future<Boolean> task : tasks) {
+				if (task.get()) {
+					failures++;
+				}
+			}
+			return failures;
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) ex.getCause()).getCause();
+			}
+			throw new IOException(ex.getCause());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted", ie);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the CSV line of a configuration that failed: its parameters, no
+	 * results and the error, with commas and line breaks replaced by spaces.
+	 * 
+	 * @param c  the configuration
+	 * @param ex the error
+	 * @return the CSV line
+	 */
+	static String errorLine(Configuration c, RuntimeException ex) {
+		return c.slotCount + "," + c.beanCount + "," + (c.isLuck ? "luck" : "skill") + "," + c.pipelineWidth + ","
+				+ c.seed + ",,,,," + ex.toString().replaceAll("[,\\r\\n]", " ") + "\n";
+	}
+
+	/**
+	 * Runs one configuration on the calling thread's machine of that size.
+	 * 
+	 * @param c the configuration
+	 * @return the CSV line with the results
+	 */
+	static String runOne(Configuration c) {
+		String key = c.slotCount + ":" + c.pipelineWidth + ":" + c.isLuck;
+		Machine m = MACHINES.get().computeIfAbsent(key, k -> new Machine(c));
+		long start = System.nanoTime();
+		m.rand.setSeed(c.seed);
+		m.source.restart(c.beanCount);
+		m.logic.reset(m.source);
+		try {
+			while (m.logic.advanceStep()) {
+				// run to the end
+			}
+		} catch (BeanOutOfBoundsException ex) {
+			throw new IllegalStateException("bean went out of bounds", ex);
+		}
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		StringBuilder bld = new StringBuilder();
+		bld.append(c.slotCount).append(',').append(c.beanCount).append(',');
+		bld.append(c.isLuck ? "luck" : "skill").append(',').append(c.pipelineWidth).append(',');
+		bld.append(c.seed).append(',').append(m.logic.getStepCount()).append(',');
+		bld.append(c.beanCount == 0 ? "" : Double.toString(m.logic.getAverageSlotBeanCount())).append(',');
+		bld.append(millis).append(',');
+		for (int i = 0; i < c.slotCount; i++) {
+			if (i > 0) {
+				bld.append(' ');
+			}
+			bld.append(m.logic.getSlotBeanCountLong(i));
+		}
+		return bld.append(",\n").toString();
+	}
+
+	/**
+	 * Prints usage information.
+	 */
+	public static void showUsage() {
+		System.out.println("Usage: java SweepRunner grid... --out=FILE [--threads=N] [--seed=S]");
+		System.out.println("Example: java SweepRunner slots=10,20,50 beans=1000..10000/1000 mode=luck,skill --out=sweep.csv");
+		System.out.println("Grid items: slots=LIST beans=LIST [mode=luck,skill] [width=LIST]");
+		System.out.println("A LIST is comma-separated numbers or ranges FROM..TO or FROM..TO/STEP.");
+	}
+
+	/**
+	 * Runs a sweep.
+	 * 
+	 * @param args commandline arguments; see showUsage() for detailed information
+	 */
+	public static void main(String[] args) {
+		List<Configuration> configurations;
+		CommandLineOptions options;
+		int threads;
+		try {
+			options = CommandLineOptions.parse(args, "out", "threads", "seed");
+			threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+			long seed = options.getLong("seed", System.nanoTime());
+			configurations = parseGrid(options.getPositional(), seed);
+		} catch (IllegalArgumentException ie) {
+			showUsage();
+			return;
+		}
+		if (!options.has("out") || threads < 1) {
+			showUsage();
+			return;
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.getString("out", "")),
+				StandardCharsets.UTF_8)) {
+			int failures = new SweepRunner(configurations, threads).run(out);
+			if (failures > 0) {
+				System.out.println(failures + " configurations failed; see the error column of the results.");
+			}
+		} catch (IOException ex) {
+			System.out.println("Cannot write results: " + ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,287 @@
+package edu.pitt.cs;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * TextRenderer: Writes the text representation of a machine, the same text as
+ * BeanCounterLogicImpl.toString() followed by a newline, for many steps of a
+ * run.
+ *
+ * <p>
+ * The digits and padding are written straight into a byte buffer that is
+ * sized up front and reused for every frame, so rendering allocates nothing.
+ * The buffer holds a whole frame unless the board has more than about a
+ * thousand slots or a single cell holds ten thousand beans or more. It goes to
+ * the channel only when it fills up or on flush(), so flushing after every
+ * frame writes each frame in one piece. With a frame interval of N,
+ * renderIfDue() skips all steps but every Nth, so that a long debug run is not
+ * dominated by its output.
+ */
+public class TextRenderer implements Flushable {
+	static final int MAX_DIGITS = 19;
+	private static final int MIN_BUFFER_SIZE = 1 << 16;
+	private static final int MAX_FRAME_BUFFER_SIZE = 1 << 22;
+	// Room for escape sequences around a frame, as AnsiDiffRenderer writes
+	private static final int FRAME_SLACK = 64;
+
+	private final WritableByteChannel out;
+	final int slotCount;
+	private final byte[] bytes;
+	private final ByteBuffer buffer;
+	private final int[] cellCounts;
+	private int position;
+	private long frameInterval = 1;
+	private long lastRenderedStep = -1;
+
+	/**
+	 * Constructor - creates a renderer for machines with slotCount slots.
+	 *
+	 * @param out       where to write the frames
+	 * @param slotCount the number of slots
+	 */
+	public TextRenderer(WritableByteChannel out, int slotCount) {
+		this.out = out;
+		this.slotCount = slotCount;
+		int widestRow = BeanCounterLogicImpl.getIndent(slotCount, 0) + slotCount * (MAX_DIGITS + 1) + 1;
+		// Row y takes indent + y cells + newline while no cell holds 10^4 beans; slot counts can be any width
+		long frameSize = slotCount * (MAX_DIGITS + 2L) + 1;
+		for (int yPos = 0; yPos < slotCount; yPos++) {
+			frameSize += BeanCounterLogicImpl.getIndent(slotCount, yPos) + 1;
+			frameSize += yPos * (BeanCounterLogicImpl.xspacing + 1L);
+		}
+		// Each reserve() asks for at most widestRow bytes, so a whole frame then never fills the buffer
+		bytes = new byte[(int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_FRAME_BUFFER_SIZE, frameSize) + widestRow
+				+ FRAME_SLACK)];
+		buffer = ByteBuffer.wrap(bytes);
+		cellCounts = new int[slotCount];
+	}
+
+	/**
+	 * Creates a renderer that writes to standard output, bypassing System.out.
+	 * Anything printed through System.out must be flushed before rendering and
+	 * the renderer flushed before printing through System.out again.
+	 *
+	 * @param slotCount the number of slots
+	 * @return the renderer
+	 */
+	public static TextRenderer toStandardOutput(int slotCount) {
+		return new TextRenderer(standardOutput(), slotCount);
+	}
+
+	/**
+	 * Returns a channel to standard output that bypasses System.out.
+	 *
+	 * @return the channel
+	 */
+	static WritableByteChannel standardOutput() {
+		return Channels.newChannel(new FileOutputStream(FileDescriptor.out));
+	}
+
+	/**
+	 * Returns how many messages written by this renderer were lost on the way,
+	 * which can only happen when it writes into an OutputPipeline.Source that
+	 * drops messages.
+	 *
+	 * @return the number of lost messages
+	 */
+	long getLostOutputCount() {
+		return out instanceof OutputPipeline.Source ? ((OutputPipeline.Source) out).getDroppedCount() : 0;
+	}
+
+	/**
+	 * Sets how often renderIfDue() renders: on steps that are a multiple of
+	 * interval.
+	 *
+	 * @param interval the number of steps between frames
+	 */
+	public void setFrameInterval(long interval) {
+		if (interval < 1) {
+			throw new IllegalArgumentException("interval must be positive");
+		}
+		frameInterval = interval;
+	}
+
+	/**
+	 * Renders logic if its step count is a multiple of the frame interval.
+	 *
+	 * @param logic the machine
+	 * @return whether a frame was rendered
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	public boolean renderIfDue(BeanCounterLogicImpl logic) throws IOException {
+		if (logic.getStepCount() % frameInterval != 0) {
+			return false;
+		}
+		render(logic);
+		return true;
+	}
+
+	/**
+	 * Renders logic unless its current step has been rendered already, such as
+	 * the last step of a run that may or may not have been due.
+	 *
+	 * @param logic the machine
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	public void renderIfNew(BeanCounterLogicImpl logic) throws IOException {
+		if (logic.getStepCount() != lastRenderedStep) {
+			render(logic);
+		}
+	}
+
+	/**
+	 * Renders the last frame of a run and flushes it. If the renderer writes
+	 * into an OutputPipeline.Source, the frame waits for room in the pipeline
+	 * rather than being dropped, and the current step is rendered again if its
+	 * frame was dropped.
+	 *
+	 * @param logic the machine
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	public void renderLast(BeanCounterLogicImpl logic) throws IOException {
+		boolean lost = false;
+		if (out instanceof OutputPipeline.Source) {
+			OutputPipeline.Source source = (OutputPipeline.Source) out;
+			source.setBlocking(true);
+			lost = source.isLastMessageDropped();
+		}
+		if (prepareLastFrame() || lost) {
+			render(logic);
+		} else {
+			renderIfNew(logic);
+		}
+		flush();
+	}
+
+	/**
+	 * Called before the last frame of a run is rendered.
+	 *
+	 * @return whether the last frame must be rendered even if its step has been
+	 *         rendered already
+	 */
+	boolean prepareLastFrame() {
+		return false;
+	}
+
+	/**
+	 * Renders logic.
+	 *
+	 * @param logic the machine
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	public void render(BeanCounterLogicImpl logic) throws IOException {
+		renderFrame(logic);
+		lastRenderedStep = logic.getStepCount();
+	}
+
+	/**
+	 * Writes the frame of logic into the buffer.
+	 *
+	 * @param logic the machine
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	void renderFrame(BeanCounterLogicImpl logic) throws IOException {
+		for (int yPos = 0; yPos < slotCount; yPos++) {
+			for (int k = 0; k < logic.getInFlightBeanCount(yPos); k++) {
+				cellCounts[logic.getInFlightBeanXPos(yPos, k)]++;
+			}
+			reserve(BeanCounterLogicImpl.getIndent(slotCount, yPos) + (yPos + 1) * (MAX_DIGITS + 1) + 1);
+			for (int xPos = 0; xPos <= yPos; xPos++) {
+				int spacing = (xPos == 0) ? BeanCounterLogicImpl.getIndent(slotCount, yPos)
+						: (BeanCounterLogicImpl.xspacing + 1);
+				putNumber(cellCounts[xPos], spacing);
+				cellCounts[xPos] = 0;
+			}
+			bytes[position++] = '\n';
+		}
+		for (int i = 0; i < slotCount; i++) {
+			reserve(MAX_DIGITS + 2);
+			long count = logic.getSlotBeanCountLong(i);
+			// Wide counts still get one space in front, as in getSlotString()
+			if (digitCount(count) >= BeanCounterLogicImpl.xspacing + 1) {
+				bytes[position++] = ' ';
+			}
+			putNumber(count, BeanCounterLogicImpl.xspacing + 1);
+		}
+		reserve(1);
+		bytes[position++] = '\n';
+	}
+
+	/**
+	 * Makes room for n more bytes in the buffer, writing it out if needed.
+	 *
+	 * @param n the number of bytes
+	 * @throws IOException if the buffer cannot be written out
+	 */
+	void reserve(int n) throws IOException {
+		if (position + n > bytes.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes a non-negative number right-aligned in a field of width characters,
+	 * or wider if the number does not fit, like the %Nd format.
+	 *
+	 * @param value the number
+	 * @param width the field width
+	 */
+	void putNumber(long value, int width) {
+		int digits = digitCount(value);
+		for (int pad = digits; pad < width; pad++) {
+			bytes[position++] = ' ';
+		}
+		int end = position + digits;
+		for (int i = end - 1; i >= position; i--) {
+			bytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position = end;
+	}
+
+	/**
+	 * Writes ASCII text. Space for it must have been reserved.
+	 *
+	 * @param text the text
+	 */
+	void putAscii(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			bytes[position++] = (byte) text.charAt(i);
+		}
+	}
+
+	/**
+	 * Returns the number of decimal digits of a non-negative number.
+	 *
+	 * @param value the number
+	 * @return the number of digits
+	 */
+	static int digitCount(long value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	/**
+	 * Writes out all buffered frames.
+	 *
+	 * @throws IOException if the channel cannot be written
+	 */
+	@Override
+	public void flush() throws IOException {
+		buffer.clear().limit(position);
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		position = 0;
+	}
+}
@@ -0,0 +1,171 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that the screen drawn by AnsiDiffRenderer shows the same text as
+ * BeanCounterLogicImpl.toString() after every frame.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class AnsiDiffRendererTest {
+
+	private final int slotCount = 12;
+
+	private ByteArrayOutputStream bytes;
+	private AnsiDiffRenderer renderer;
+	private List<StringBuilder> screen;
+	private int line;
+	private int column;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() {
+		bytes = new ByteArrayOutputStream();
+		renderer = new AnsiDiffRenderer(Channels.newChannel(bytes), slotCount);
+		screen = new ArrayList<>();
+	}
+
+	/**
+	 * Creates a machine of the given pipeline width with seeded lucky beans.
+	 * 
+	 * @param width     the pipeline width
+	 * @param beanCount the number of beans
+	 * @return the machine
+	 */
+	private BeanCounterLogicImpl createLogic(int width, int beanCount) {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount, width);
+		Random rand = new Random(5);
+		Bean[] beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, true, rand);
+		}
+		logic.reset(beans);
+		return logic;
+	}
+
+	/**
+	 * Test that the screen matches toString() after every frame.
+	 * 
+	 * <pre>
+	 * Preconditions: renderer writes into bytes.
+	 * Execution steps: For pipeline widths 1 and 3, render every step of a run of 3000 beans,
+	 *                  whose slot counts grow past the width of a slot cell, and apply the
+	 *                  output to an emulated terminal.
+	 * Postconditions: After each frame the screen shows toString(), line by line, and
+	 *                 the cursor is below the board.
+	 * </pre>
+	 */
+	@Test
+	public void testScreenMatchesToString() throws IOException, BeanOutOfBoundsException {
+		for (int width : new int[] {1, 3}) {
+			BeanCounterLogicImpl logic = createLogic(width, 3000);
+			renderer.render(logic);
+			assertScreen(logic);
+			while (logic.advanceStep()) {
+				renderer.render(logic);
+				assertScreen(logic);
+			}
+		}
+	}
+
+	/**
+	 * Test that a step only sends the changes.
+	 * 
+	 * <pre>
+	 * Preconditions: renderer writes into bytes.
+	 * Execution steps: Render the first frame of a machine with one bean, then take one step and render again.
+	 * Postconditions: The second frame is much shorter than the first.
+	 * </pre>
+	 */
+	@Test
+	public void testDiffIsSmall() throws IOException, BeanOutOfBoundsException {
+		BeanCounterLogicImpl logic = createLogic(1, 1);
+		renderer.render(logic);
+		int full = bytes.size();
+		bytes.reset();
+		logic.advanceStep();
+		renderer.render(logic);
+		assertTrue(bytes.size() * 5 < full);
+	}
+
+	/**
+	 * Applies the output so far to the emulated terminal and compares it with logic.
+	 * 
+	 * @param logic the machine
+	 */
+	private void assertScreen(BeanCounterLogicImpl logic) {
+		apply(new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+		bytes.reset();
+		String[] expected = (logic.toString() + "\n").split("\n");
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals("line " + (i + 1), expected[i], screen.get(i).toString().replaceAll(" +$", ""));
+		}
+		assertEquals(slotCount + 1, line);
+		assertEquals(0, column);
+	}
+
+	/**
+	 * Applies terminal output: printable characters, newlines and the cursor
+	 * position, clear screen and clear line sequences.
+	 * 
+	 * @param text the output
+	 */
+	private void apply(String text) {
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (c == '\n') {
+				line++;
+				column = 0;
+				i++;
+			} else if (c == '\033') {
+				int end = i + 2;
+				while (!Character.isLetter(text.charAt(end))) {
+					end++;
+				}
+				String args = text.substring(i + 2, end);
+				char command = text.charAt(end);
+				if (command == 'H') {
+					String[] parts = args.isEmpty() ? new String[] {"1", "1"} : args.split(";");
+					line = Integer.parseInt(parts[0]) - 1;
+					column = Integer.parseInt(parts[1]) - 1;
+				} else if (command == 'J') {
+					screen.clear();
+				} else if (command == 'K') {
+					StringBuilder row = row(line);
+					row.setLength(Math.min(row.length(), column));
+				}
+				i = end + 1;
+			} else {
+				StringBuilder row = row(line);
+				while (row.length() <= column) {
+					row.append(' ');
+				}
+				row.setCharAt(column++, c);
+				i++;
+			}
+		}
+	}
+
+	private StringBuilder row(int index) {
+		while (screen.size() <= index) {
+			screen.add(new StringBuilder());
+		}
+		return screen.get(index);
+	}
+}
@@ -0,0 +1,314 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests BeanCounterLogicConcurrent by stepping it on one thread while reading
+ * snapshots on another, checking that no snapshot is ever torn.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BeanCounterLogicConcurrentTest {
+
+	private final int slotCount = 20;
+	private final int beanCount = 2000;
+
+	private BeanCounterLogicConcurrent logic;
+	private Bean[] beans;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() {
+		logic = (BeanCounterLogicConcurrent) BeanCounterLogic.createInstance(InstanceType.CONCURRENT, slotCount);
+		beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = Bean.createInstance(InstanceType.CONCURRENT, slotCount, true, new Random(42 + i));
+		}
+	}
+
+	/**
+	 * Returns the total number of beans visible in a snapshot.
+	 * 
+	 * @param s the snapshot
+	 * @return remaining + in-flight + in-slot beans
+	 */
+	private long countBeans(MachineSnapshot s) {
+		long total = s.getRemainingBeanCount();
+		int inFlight = 0;
+		long inSlots = 0;
+		for (int i = 0; i < s.getSlotCount(); i++) {
+			if (s.getInFlightBeanXPos(i) != BeanCounterLogic.NO_BEAN_IN_YPOS) {
+				inFlight++;
+			}
+			inSlots += s.getSlotBeanCount(i);
+		}
+		assertEquals(inFlight, s.getInFlightBeanCount());
+		assertEquals(inSlots, s.getInSlotBeanCount());
+		return total + inFlight + inSlots;
+	}
+
+	/**
+	 * Test reading snapshots while another thread runs the machine.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, beans initialized in setUp() as described.
+	 * Execution steps: Call logic.reset(beans).
+	 *                  Start a thread that calls logic.advanceStep() until it returns false.
+	 *                  Meanwhile, repeatedly call logic.getSnapshot() on the test thread.
+	 * Invariants: Every snapshot accounts for exactly beanCount beans.
+	 * Postconditions: The final snapshot has all beanCount beans in slots.
+	 * </pre>
+	 */
+	@Test
+	public void testSnapshotsWhileStepping() throws InterruptedException {
+		logic.reset(beans);
+		AtomicBoolean done = new AtomicBoolean(false);
+		Thread writer = new Thread(() -> {
+			try {
+				while (logic.advanceStep()) {
+					// keep stepping
+				}
+			} catch (BeanOutOfBoundsException ex) {
+				// counted as a failure by the final assertion
+			}
+			done.set(true);
+		});
+		writer.start();
+		do {
+			assertEquals(beanCount, countBeans(logic.getSnapshot()));
+		} while (!done.get());
+		writer.join();
+		MachineSnapshot last = logic.getSnapshot();
+		assertEquals(0, last.getRemainingBeanCount());
+		long inSlots = 0;
+		for (int i = 0; i < slotCount; i++) {
+			inSlots += last.getSlotBeanCount(i);
+		}
+		assertEquals(beanCount, inSlots);
+	}
+
+	/**
+	 * Test that the concurrent logic takes the same path as BeanCounterLogicImpl.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, beans initialized in setUp() as described.
+	 * Execution steps: Run logic and a BeanCounterLogicImpl with identically seeded beans to completion.
+	 * Postconditions: For all i, logic.getSlotBeanCount(i) matches the BeanCounterLogicImpl count.
+	 * </pre>
+	 */
+	@Test
+	public void testMatchesImpl() throws BeanOutOfBoundsException {
+		BeanCounterLogic impl = BeanCounterLogic.createInstance(InstanceType.IMPL, slotCount);
+		Bean[] implBeans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			implBeans[i] = Bean.createInstance(InstanceType.IMPL, slotCount, true, new Random(42 + i));
+		}
+		logic.reset(beans);
+		impl.reset(implBeans);
+		while (logic.advanceStep()) {
+			// keep stepping
+		}
+		while (impl.advanceStep()) {
+			// keep stepping
+		}
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(impl.getSlotBeanCount(i), logic.getSlotBeanCount(i));
+		}
+	}
+
+	/**
+	 * Test that beans dropped from several threads while the machine runs are
+	 * all counted, and that halving includes them.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, beans initialized in setUp() as described.
+	 * Execution steps: Run logic to completion on one thread while 4 threads each drop 10000 beans,
+	 *                  bean k of thread t into slot (t + k) % slotCount. Call logic.upperHalf().
+	 * Postconditions: Before halving, every slot holds the beans of a BeanCounterLogicImpl run with
+	 *                 identically seeded beans plus the dropped beans, and the snapshot agrees.
+	 *                 After halving, half of all beans in slots remain.
+	 * </pre>
+	 */
+	@Test
+	public void testDropsFromManyThreads() throws InterruptedException, BeanOutOfBoundsException {
+		final int threads = 4;
+		final int drops = 10000;
+		BeanCounterLogic impl = BeanCounterLogic.createInstance(InstanceType.IMPL, slotCount);
+		Bean[] implBeans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			implBeans[i] = Bean.createInstance(InstanceType.IMPL, slotCount, true, new Random(42 + i));
+		}
+		impl.reset(implBeans);
+		while (impl.advanceStep()) {
+			// keep stepping
+		}
+
+		logic.reset(beans);
+		Thread[] droppers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			droppers[t] = new Thread(() -> {
+				for (int k = 0; k < drops; k++) {
+					logic.dropBean((first + k) % slotCount);
+				}
+			});
+			droppers[t].start();
+		}
+		while (logic.advanceStep()) {
+			// keep stepping
+		}
+		for (Thread dropper : droppers) {
+			dropper.join();
+		}
+
+		long[] expected = new long[slotCount];
+		for (int t = 0; t < threads; t++) {
+			for (int k = 0; k < drops; k++) {
+				expected[(t + k) % slotCount]++;
+			}
+		}
+		MachineSnapshot s = logic.snapshot(null);
+		for (int i = 0; i < slotCount; i++) {
+			expected[i] += impl.getSlotBeanCount(i);
+			assertEquals(expected[i], logic.getSlotBeanCountLong(i));
+			assertEquals(expected[i], s.getSlotBeanCount(i));
+		}
+		long inSlots = beanCount + threads * drops;
+		assertEquals(inSlots, logic.getInSlotBeanCount());
+		assertEquals(inSlots, countBeans(s));
+		logic.upperHalf();
+		assertEquals(inSlots - inSlots / 2, logic.getInSlotBeanCount());
+	}
+
+	/**
+	 * Test that halving never makes dropped beans vanish for a reader, not even
+	 * for an instant.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, beans initialized in setUp() as described.
+	 * Execution steps: Run logic to completion. Start a thread that keeps reading the total number
+	 *                  of beans in slots through getInSlotBeanCount() and snapshot(). Then 200 times,
+	 *                  drop 10000 beans and call upperHalf() or lowerHalf() in turn.
+	 * Invariants: No total read is below the total after the halving in progress.
+	 * Postconditions: The final total is the expected one.
+	 * </pre>
+	 */
+	@Test
+	public void testHalvingKeepsDroppedBeans() throws InterruptedException, BeanOutOfBoundsException {
+		logic.reset(beans);
+		while (logic.advanceStep()) {
+			// keep stepping
+		}
+		AtomicBoolean done = new AtomicBoolean(false);
+		AtomicLong floor = new AtomicLong(0);
+		AtomicLong violations = new AtomicLong(0);
+		Thread reader = new Thread(() -> {
+			MachineSnapshot s = null;
+			while (!done.get()) {
+				long f = floor.get();
+				s = logic.snapshot(s);
+				if (logic.getInSlotBeanCount() < f || s.getInSlotBeanCount() < f) {
+					violations.incrementAndGet();
+				}
+			}
+		});
+		reader.start();
+		long total = beanCount;
+		for (int round = 0; round < 200; round++) {
+			for (int k = 0; k < 10000; k++) {
+				logic.dropBean(k % slotCount);
+			}
+			total += 10000;
+			total -= total / 2;
+			floor.set(total);
+			if (round % 2 == 0) {
+				logic.upperHalf();
+			} else {
+				logic.lowerHalf();
+			}
+		}
+		done.set(true);
+		reader.join();
+		assertEquals(0, violations.get());
+		assertEquals(total, logic.getInSlotBeanCount());
+	}
+
+	/**
+	 * Test that the snapshots of published batches include dropped beans.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, beans initialized in setUp() as described.
+	 * Execution steps: Subscribe to logic.getEventPublisher() and call logic.reset(beans).
+	 *                  Drop 7 beans into slot 3, run logic to the end and close the publisher.
+	 * Postconditions: The snapshot of every batch after the drops counts them in slot 3.
+	 *                 The snapshot of the last batch matches the slot counts of logic.
+	 *                 The landings of all batches add up to beanCount.
+	 * </pre>
+	 */
+	@Test
+	public void testEventsIncludeDroppedBeans() throws InterruptedException, BeanOutOfBoundsException {
+		List<MachineEventBatch> batches = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch completed = new CountDownLatch(1);
+		logic.getEventPublisher().subscribe(new Flow.Subscriber<MachineEventBatch>() {
+			@Override
+			public void onSubscribe(Flow.Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(MachineEventBatch batch) {
+				batches.add(batch);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				// Shows up as missing landings
+			}
+
+			@Override
+			public void onComplete() {
+				completed.countDown();
+			}
+		});
+		logic.reset(beans);
+		for (int i = 0; i < 7; i++) {
+			logic.dropBean(3);
+		}
+		while (logic.advanceStep()) {
+			// keep stepping
+		}
+		logic.getEventPublisher().close();
+		assertTrue(completed.await(10, TimeUnit.SECONDS));
+
+		long landed = 0;
+		long inSlot3 = 0;
+		for (MachineEventBatch batch : batches) {
+			landed += batch.getLandedBeanCount();
+			for (int k = 0; k < batch.getLandedBeanCount(); k++) {
+				inSlot3 += batch.getLandedSlot(k) == 3 ? 1 : 0;
+			}
+			assertEquals(inSlot3 + 7, batch.getSnapshot().getSlotBeanCount(3));
+		}
+		assertEquals(beanCount, landed);
+		MachineSnapshot last = batches.get(batches.size() - 1).getSnapshot();
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(logic.getSlotBeanCountLong(i), last.getSlotBeanCount(i));
+		}
+	}
+}
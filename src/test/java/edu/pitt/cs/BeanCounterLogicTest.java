@@ -413,6 +413,37 @@ public class BeanCounterLogicTest {
 			}
 		}
 	}
+	/**
+	 * Test calling lowerHalf() in skill mode without retaining slot beans.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, luckyBeans, skilledBeans initialized in setUp() as described.
+	 * Execution steps: Create a BeanCounterLogicImpl and call setRetainSlotBeans(false).
+	 *                  Pour skilled beans into machine by calling reset(skilledBeans).
+	 *                  Call advanceStep() until it returns false.
+	 *                  Call lowerHalf().
+	 * Postconditions: getSlotBeanCountLong(1) returns 1.
+	 *                 getSlotBeanCountLong(4) returns 1.
+	 *                 For all other i, getSlotBeanCountLong(i) returns 0.
+	 * </pre>
+	 */
+	@Test
+	public void testLowerHalfCountsOnly() throws BeanOutOfBoundsException {
+		BeanCounterLogicImpl countsOnly = new BeanCounterLogicImpl(slotCount);
+		countsOnly.setRetainSlotBeans(false);
+		countsOnly.reset(skilledBeans);
+		while(countsOnly.advanceStep()){}
+		countsOnly.lowerHalf();
+
+		for(int j = 0; j < slotCount; j++){
+			if(j == 1 || j == 4){
+				assertEquals(1, countsOnly.getSlotBeanCountLong(j));
+			}else{
+				assertEquals(0, countsOnly.getSlotBeanCountLong(j));
+			}
+		}
+	}
+
 	/**
 	 * Test calling upperHalf() in skill mode.
 	 * 
@@ -499,6 +530,76 @@ public class BeanCounterLogicTest {
 		assertEquals(expectedAverage, logic.getAverageSlotBeanCount(), 0.001);
 	}
 
+	/**
+	 * Test advanceStep() in wide-pipeline mode in luck mode.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, luckyBeans, skilledBeans initialized in setUp() as described.
+	 * Execution steps: Create a BeanCounterLogicImpl with pipeline width 3.
+	 *                  Pour lucky beans into machine by calling reset(luckyBeans).
+	 *                  Call advanceStep() 4 times, then once more.
+	 * Postconditions: After reset, getRemainingBeanCount() returns 0 and getInFlightBeanCount(0) returns 3.
+	 *                 After 4 steps, getInFlightBeanCount(4) returns 3.
+	 *                 After 5 steps, getSlotBeanCount(2) returns 2, getSlotBeanCount(3) returns 1,
+	 *                 which is where the same beans land one at a time, and advanceStep() returns false.
+	 * </pre>
+	 */
+	@Test
+	public void testAdvanceStepWidePipeline() throws BeanOutOfBoundsException {
+		BeanCounterLogicImpl wide = new BeanCounterLogicImpl(slotCount, 3);
+		wide.reset(luckyBeans);
+		assertEquals(0, wide.getRemainingBeanCount());
+		assertEquals(3, wide.getInFlightBeanCount(0));
+		for(int i = 0; i < 4; i++){
+			wide.advanceStep();
+		}
+		assertEquals(3, wide.getInFlightBeanCount(4));
+		wide.advanceStep();
+		for(int j = 0; j < slotCount; j++){
+			if(j == 2){
+				assertEquals(2, wide.getSlotBeanCount(j));
+			}else if(j == 3){
+				assertEquals(1, wide.getSlotBeanCount(j));
+			}else{
+				assertEquals(0, wide.getSlotBeanCount(j));
+			}
+		}
+		assertFalse(wide.advanceStep());
+	}
+
+	/**
+	 * Test snapshot(MachineSnapshot) in luck mode.
+	 * 
+	 * <pre>
+	 * Preconditions: logic, luckyBeans, skilledBeans initialized in setUp() as described.
+	 * Execution steps: Pour lucky beans into machine by calling logic.reset(luckyBeans).
+	 *                  Call logic.advanceStep() 5 times.
+	 *                  Call logic.snapshot(null), then refill it by calling logic.snapshot() with it.
+	 * Postconditions: The refilled snapshot is the same object.
+	 *                 For all i, snapshot getInFlightBeanXPos(i) and getSlotBeanCount(i) match logic.
+	 *                 snapshot getInFlightBeanCount() returns 2 and getInSlotBeanCount() returns 1.
+	 *                 snapshot getAverageSlotBeanCount() returns 2.0.
+	 * </pre>
+	 */
+	@Test
+	public void testSnapshot() throws BeanOutOfBoundsException {
+		logic.reset(luckyBeans);
+		for(int i = 0; i < 5; i++){
+			logic.advanceStep();
+		}
+		MachineSnapshot snapshot = logic.snapshot(null);
+		assertTrue(snapshot == logic.snapshot(snapshot));
+		assertEquals(slotCount, snapshot.getSlotCount());
+		assertEquals(logic.getRemainingBeanCount(), snapshot.getRemainingBeanCount());
+		for(int i = 0; i < slotCount; i++){
+			assertEquals(logic.getInFlightBeanXPos(i), snapshot.getInFlightBeanXPos(i));
+			assertEquals(logic.getSlotBeanCount(i), snapshot.getSlotBeanCount(i));
+		}
+		assertEquals(2, snapshot.getInFlightBeanCount());
+		assertEquals(1, snapshot.getInSlotBeanCount());
+		assertEquals(2.0, snapshot.getAverageSlotBeanCount(), 0.001);
+	}
+
 	/**
 	 * Test main(String[] args).
 	 * 
@@ -0,0 +1,221 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that a BeanEventReplay reconstructs the states of a BeanCounterLogicImpl
+ * from what a BeanEventLog recorded.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BeanEventLogTest {
+
+	private final int slotCount = 6;
+	private final int beanCount = 100;
+
+	private Path file;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("events", ".bin");
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Records the state of logic as a string with the x-coordinate of the first
+	 * bean in every row, the slot counts, and the number of beans in flight and
+	 * waiting.
+	 * 
+	 * @param s snapshot of the machine
+	 * @return the state
+	 */
+	private static String describe(MachineSnapshot s) {
+		StringBuilder bld = new StringBuilder();
+		for (int i = 0; i < s.getSlotCount(); i++) {
+			bld.append(s.getInFlightBeanXPos(i)).append(',');
+		}
+		for (int i = 0; i < s.getSlotCount(); i++) {
+			bld.append(s.getSlotBeanCount(i)).append(',');
+		}
+		return bld.append(s.getInFlightBeanCount()).append(',').append(s.getRemainingBeanCount()).toString();
+	}
+
+	/**
+	 * Runs a machine with a log attached and checks the replay against it.
+	 * 
+	 * @param width pipeline width of the machine
+	 */
+	private void checkReplay(int width) throws BeanOutOfBoundsException, IOException {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount, width);
+		Bean[] beans = new Bean[beanCount];
+		Random rand = new Random(42);
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, true, rand);
+		}
+		ArrayList<String> expected = new ArrayList<>();
+		try (BeanEventLog log = new BeanEventLog(file, slotCount, width)) {
+			logic.setBeanEventSink(log);
+			logic.reset(beans);
+			expected.add(describe(logic.snapshot(null)));
+			while (logic.advanceStep()) {
+				expected.add(describe(logic.snapshot(null)));
+			}
+			// The last step, which changed nothing, is logged as well
+			expected.add(describe(logic.snapshot(null)));
+			logic.lowerHalf();
+			logic.advanceStep();
+			expected.add(describe(logic.snapshot(null)));
+			logic.repeat();
+			expected.add(describe(logic.snapshot(null)));
+			for (int i = 0; i < 10; i++) {
+				logic.advanceStep();
+				expected.add(describe(logic.snapshot(null)));
+			}
+		}
+
+		ArrayList<String> observed = new ArrayList<>();
+		try (BeanEventReplay replay = new BeanEventReplay(file)) {
+			assertEquals(slotCount, replay.getSlotCount());
+			assertEquals(width, replay.getPipelineWidth());
+			while (replay.nextStep()) {
+				observed.add(describe(replay.snapshot(null)));
+			}
+		}
+		assertArrayEquals(expected.toArray(), observed.toArray());
+	}
+
+	/**
+	 * Test replaying a log of a machine with one bean per row.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Reset a machine with beanCount lucky beans logging into file and run it to the end.
+	 *                  Call lowerHalf(), advance a step, call repeat(), then advance 10 steps.
+	 *                  Replay file step by step.
+	 * Postconditions: The replay goes through exactly the states the machine went through.
+	 * </pre>
+	 */
+	@Test
+	public void testReplay() throws BeanOutOfBoundsException, IOException {
+		checkReplay(1);
+	}
+
+	/**
+	 * Test replaying a log of a wide-pipeline machine.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Same as testReplay() with a pipeline width of 4.
+	 * Postconditions: The replay goes through exactly the states the machine went through.
+	 * </pre>
+	 */
+	@Test
+	public void testReplayWidePipeline() throws BeanOutOfBoundsException, IOException {
+		checkReplay(4);
+	}
+
+	/**
+	 * Test seeking to a step and the size of the log.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Run a machine with beanCount lucky beans logging into file to the end.
+	 *                  Replay file up to step 50, then try to replay up to step 10000.
+	 * Postconditions: After step 50, the replay matches the snapshot the machine had then.
+	 *                 Step 10000 is never reached and the replay ends in the machine's final state.
+	 *                 The log takes less than 2 bytes per bean per row.
+	 * </pre>
+	 */
+	@Test
+	public void testAdvanceTo() throws BeanOutOfBoundsException, IOException {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		Bean[] beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, true, new Random(i));
+		}
+		String atStep50 = null;
+		try (BeanEventLog log = new BeanEventLog(file, slotCount, 1)) {
+			logic.setBeanEventSink(log);
+			logic.reset(beans);
+			while (logic.advanceStep()) {
+				if (logic.getStepCount() == 50) {
+					atStep50 = describe(logic.snapshot(null));
+				}
+			}
+		}
+		assertTrue(Files.size(file) < 2 * beanCount * (slotCount + 1));
+		try (BeanEventReplay replay = new BeanEventReplay(file)) {
+			assertTrue(replay.advanceTo(50));
+			assertEquals(atStep50, describe(replay.snapshot(null)));
+			assertFalse(replay.advanceTo(10000));
+			assertEquals(describe(logic.snapshot(null)), describe(replay.snapshot(null)));
+		}
+	}
+
+	/**
+	 * Test that a log that cannot be written does not stop the machine.
+	 * 
+	 * <pre>
+	 * Preconditions: /dev/full exists, so that every write fails with a full disk.
+	 * Execution steps: Run a machine with 10000 luck beans that logs into /dev/full,
+	 *                  then close the log.
+	 * Postconditions: The run completes with all beans in slots.
+	 *                 close() throws an IOException.
+	 * </pre>
+	 */
+	@Test
+	public void testWriteFailure() throws BeanOutOfBoundsException {
+		Path full = Paths.get("/dev/full");
+		Assume.assumeTrue(Files.isWritable(full));
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		BeanEventLog log;
+		try {
+			log = new BeanEventLog(full, slotCount, 1);
+		} catch (IOException ex) {
+			Assume.assumeNoException(ex);
+			return;
+		}
+		logic.setBeanEventSink(log);
+		logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, 10000, new Random(1)));
+		while (logic.advanceStep()) {
+			// Run to the end
+		}
+		long inSlots = 0;
+		for (int i = 0; i < slotCount; i++) {
+			inSlots += logic.getSlotBeanCountLong(i);
+		}
+		assertEquals(10000, inSlots);
+		try {
+			log.close();
+			fail("close() did not report the failed writes");
+		} catch (IOException ex) {
+			// Expected
+		}
+	}
+}
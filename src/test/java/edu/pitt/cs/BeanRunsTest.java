@@ -0,0 +1,105 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests BeanCounterLogicImpl with a run-length encoded reservoir.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BeanRunsTest {
+
+	private final int slotCount = 8;
+
+	private static void runToEnd(BeanCounterLogicImpl logic) throws BeanOutOfBoundsException {
+		while (logic.advanceStep()) {
+			// run to the end
+		}
+	}
+
+	private long[] getSlotCounts(BeanCounterLogicImpl logic) {
+		long[] counts = new long[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			counts[i] = logic.getSlotBeanCountLong(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Test skilled beans in runs.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Generate runs of 100000 skilled beans and note the count of each skill level.
+	 *                  Reset a machine with the runs and run it to the end.
+	 *                  Call lowerHalf() and note the slot counts. Call repeat() and run to the end.
+	 * Postconditions: There is at most one run per skill level.
+	 *                 After the first run, slot i holds the beans of skill level i.
+	 *                 After repeat(), the reservoir holds at most one run per slot, and
+	 *                 after the second run the slot counts equal those noted after lowerHalf().
+	 * </pre>
+	 */
+	@Test
+	public void testSkillRepeat() throws BeanOutOfBoundsException {
+		final int beanCount = 100000;
+		BeanRuns runs = BeanRuns.generate(slotCount, false, beanCount, new BitReservoirRandom(5));
+		assertTrue(runs.getRunCount() <= slotCount);
+		long[] skills = new long[slotCount];
+		BeanRuns copy = BeanRuns.generate(slotCount, false, beanCount, new BitReservoirRandom(5));
+		while (copy.getRemainingBeanCount() > 0) {
+			skills[((BeanImpl) copy.next()).getSkillLevel()]++;
+		}
+
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		logic.reset(runs);
+		assertEquals(beanCount - 1, logic.getRemainingBeanCount());
+		runToEnd(logic);
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(skills[i], logic.getSlotBeanCountLong(i));
+		}
+
+		logic.lowerHalf();
+		long[] expected = getSlotCounts(logic);
+		logic.repeat();
+		assertEquals(beanCount / 2 - 1, logic.getRemainingBeanCount());
+		runToEnd(logic);
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(expected[i], logic.getSlotBeanCountLong(i));
+		}
+	}
+
+	/**
+	 * Test repeating a run of lucky beans while beans are in flight.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Reset a machine with one run of 1000 lucky beans and advance 500 steps.
+	 *                  Call repeat() and run to the end.
+	 * Postconditions: The generated reservoir is a single run.
+	 *                 All 1000 beans end up in the slots.
+	 * </pre>
+	 */
+	@Test
+	public void testLuckRepeatInFlight() throws BeanOutOfBoundsException {
+		BeanRuns runs = BeanRuns.generate(slotCount, true, 1000, new Random(9));
+		assertEquals(1, runs.getRunCount());
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount, 2);
+		logic.reset(runs);
+		for (int i = 0; i < 500; i++) {
+			logic.advanceStep();
+		}
+		logic.repeat();
+		assertEquals(1000 - 2, logic.getRemainingBeanCount());
+		runToEnd(logic);
+		long total = 0;
+		for (long count : getSlotCounts(logic)) {
+			total += count;
+		}
+		assertEquals(1000, total);
+	}
+}
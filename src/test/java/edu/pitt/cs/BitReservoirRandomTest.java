@@ -0,0 +1,93 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that BitReservoirRandom is repeatable and serves fair coin flips.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BitReservoirRandomTest {
+
+	/**
+	 * Test that coin flips come out of one word of the generator.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Create two generators with seed 42. Take nextLong() from the first.
+	 *                  Take 64 values of nextInt(2) from the second.
+	 * Postconditions: The 64 values are the bits of the long, lowest bit first.
+	 * </pre>
+	 */
+	@Test
+	public void testBitsFromOneWord() {
+		long word = new BitReservoirRandom(42).nextLong();
+		BitReservoirRandom rand = new BitReservoirRandom(42);
+		for (int i = 0; i < 64; i++) {
+			assertEquals((int) (word >>> i) & 1, rand.nextInt(2));
+		}
+	}
+
+	/**
+	 * Test that the same seed gives the same sequence.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Draw a mix of nextInt(2), nextGaussian() and nextInt(10) from a generator
+	 *                  with seed 7, then call setSeed(7) and draw the same mix again.
+	 *                  Draw the same mix from a new generator with seed 7.
+	 * Postconditions: All three sequences are equal.
+	 * </pre>
+	 */
+	@Test
+	public void testRepeatable() {
+		BitReservoirRandom rand = new BitReservoirRandom(7);
+		double[] first = draw(rand);
+		rand.setSeed(7);
+		assertArrayEquals(first, draw(rand), 0);
+		assertArrayEquals(first, draw(new BitReservoirRandom(7)), 0);
+	}
+
+	private static double[] draw(BitReservoirRandom rand) {
+		double[] values = new double[300];
+		for (int i = 0; i < values.length; i += 3) {
+			values[i] = rand.nextInt(2);
+			values[i + 1] = rand.nextGaussian();
+			values[i + 2] = rand.nextInt(10);
+		}
+		return values;
+	}
+
+	/**
+	 * Test that coin flips are fair.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Take 1000000 values of nextInt(2) and count the ones and the times two flips in a row agree.
+	 * Postconditions: Both counts are within 0.5% of half the number of flips.
+	 * </pre>
+	 */
+	@Test
+	public void testFairFlips() {
+		BitReservoirRandom rand = new BitReservoirRandom(1);
+		final int flips = 1000000;
+		int ones = 0;
+		int agreements = 0;
+		int last = 0;
+		for (int i = 0; i < flips; i++) {
+			int bit = rand.nextInt(2);
+			ones += bit;
+			if (bit == last) {
+				agreements++;
+			}
+			last = bit;
+		}
+		assertTrue(Math.abs(ones - flips / 2) < flips / 200);
+		assertTrue(Math.abs(agreements - flips / 2) < flips / 200);
+	}
+}
@@ -0,0 +1,118 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that ConvergenceMonitor tracks the fit of the slot histogram.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ConvergenceMonitorTest {
+
+	private final int slotCount = 10;
+
+	/**
+	 * Test the statistics against values computed directly.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Run a machine of 20000 lucky beans, updating a monitor every 100 steps.
+	 *                  Call lowerHalf() and update the monitor once more.
+	 * Postconditions: After each update, the KL divergence and chi-square match the values computed
+	 *                 from the slot counts from scratch.
+	 * </pre>
+	 */
+	@Test
+	public void testIncrementalStatistics() throws BeanOutOfBoundsException {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, 20000, new BitReservoirRandom(4)));
+		ConvergenceMonitor monitor = new ConvergenceMonitor(slotCount, true);
+		boolean running = true;
+		while (running) {
+			running = logic.advanceStep();
+			if (logic.getStepCount() % 100 == 0) {
+				monitor.update(logic);
+				assertMatchesDirect(logic, monitor);
+			}
+		}
+		logic.lowerHalf();
+		monitor.update(logic);
+		assertMatchesDirect(logic, monitor);
+	}
+
+	private void assertMatchesDirect(BeanCounterLogicImpl logic, ConvergenceMonitor monitor) {
+		double[] p = ConvergenceMonitor.expectedDistribution(slotCount, true);
+		long n = 0;
+		for (int i = 0; i < slotCount; i++) {
+			n += logic.getSlotBeanCountLong(i);
+		}
+		if (n == 0) {
+			return;
+		}
+		double kl = 0;
+		double chi = 0;
+		for (int i = 0; i < slotCount; i++) {
+			long o = logic.getSlotBeanCountLong(i);
+			if (o > 0) {
+				kl += (double) o / n * Math.log(o / (n * p[i]));
+			}
+			chi += (o - n * p[i]) * (o - n * p[i]) / (n * p[i]);
+		}
+		assertEquals(n, monitor.getBeanCount());
+		assertEquals(kl, monitor.getKlDivergence(), 1e-9);
+		assertEquals(chi, monitor.getChiSquare(), 1e-6 * Math.max(1, chi));
+	}
+
+	/**
+	 * Test the goodness-of-fit p-value.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Run machines of 50000 lucky and 50000 skilled beans to the end.
+	 *                  Monitor each against both distributions.
+	 * Postconditions: Each machine fits its own distribution (p-value above 0.001, KL below 0.001)
+	 *                 and not the other one (p-value below 1e-9).
+	 * </pre>
+	 */
+	@Test
+	public void testFit() throws BeanOutOfBoundsException {
+		for (boolean isLuck : new boolean[] {true, false}) {
+			BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+			logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, isLuck, 50000, new BitReservoirRandom(6)));
+			while (logic.advanceStep()) {
+				// run to the end
+			}
+			ConvergenceMonitor own = new ConvergenceMonitor(slotCount, isLuck);
+			ConvergenceMonitor other = new ConvergenceMonitor(slotCount, !isLuck);
+			own.update(logic);
+			other.update(logic);
+			assertTrue(own.getPValue() > 0.001);
+			assertTrue(own.isConverged(0.001));
+			assertTrue(other.getPValue() < 1e-9);
+			assertFalse(other.isConverged(0.001));
+		}
+	}
+
+	/**
+	 * Test the incomplete gamma function against chi-square critical values.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Compute the p-values of the 5% critical values for 1, 9 and 30 degrees of freedom,
+	 *                  and of the 0.1% critical value for 9 degrees of freedom.
+	 * Postconditions: The p-values are 0.05, 0.05, 0.05 and 0.001 within 1e-4.
+	 * </pre>
+	 */
+	@Test
+	public void testPValue() {
+		assertEquals(0.05, ConvergenceMonitor.upperRegularizedGamma(0.5, 3.841459 / 2), 1e-4);
+		assertEquals(0.05, ConvergenceMonitor.upperRegularizedGamma(4.5, 16.918978 / 2), 1e-4);
+		assertEquals(0.05, ConvergenceMonitor.upperRegularizedGamma(15, 43.772972 / 2), 1e-4);
+		assertEquals(0.001, ConvergenceMonitor.upperRegularizedGamma(4.5, 27.877165 / 2), 1e-4);
+	}
+}
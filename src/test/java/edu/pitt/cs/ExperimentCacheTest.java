@@ -0,0 +1,147 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that ExperimentCache returns what was stored under a key, from memory
+ * and from disk.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ExperimentCacheTest {
+
+	private Path directory;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("results");
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of a luck experiment.
+	 * 
+	 * @param slots number of slots
+	 * @param seed  the seed
+	 * @return the key
+	 */
+	private static String key(int slots, long seed) {
+		SortedMap<String, String> parameters = new TreeMap<>();
+		parameters.put("slots", Integer.toString(slots));
+		parameters.put("mode", "luck");
+		parameters.put("seed", Long.toString(seed));
+		return ExperimentCache.canonicalKey(parameters);
+	}
+
+	/**
+	 * Test the canonical key.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Build keys for the same parameters inserted in different orders, and for other parameters.
+	 * Postconditions: The key starts with the implementation version and lists the parameters sorted by name.
+	 *                 Different parameters give different keys.
+	 * </pre>
+	 */
+	@Test
+	public void testCanonicalKey() {
+		assertEquals("impl=" + BeanCounterLogicImpl.IMPLEMENTATION_VERSION + ";mode=luck;seed=7;slots=5", key(5, 7));
+		assertNotEquals(key(5, 7), key(5, 8));
+		assertNotEquals(key(5, 7), key(6, 7));
+	}
+
+	/**
+	 * Test storing and retrieving results.
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Store a result in one cache, then retrieve it from the same cache
+	 *                  and from a second cache on the same directory.
+	 *                  Retrieve a key that was never stored.
+	 * Postconditions: Both caches return the stored counts and step count.
+	 *                 The unknown key returns null.
+	 * </pre>
+	 */
+	@Test
+	public void testPutGet() throws IOException {
+		ExperimentResult result = new ExperimentResult(new long[] {1, 4, 6, 4, 1}, 20);
+		ExperimentCache cache = new ExperimentCache(directory, 4);
+		cache.put(key(5, 7), result);
+		assertArrayEquals(result.getSlotCounts(), cache.get(key(5, 7)).getSlotCounts());
+
+		ExperimentResult fromDisk = new ExperimentCache(directory, 4).get(key(5, 7));
+		assertNotNull(fromDisk);
+		assertArrayEquals(result.getSlotCounts(), fromDisk.getSlotCounts());
+		assertEquals(20, fromDisk.getStepCount());
+		assertEquals(2.0, fromDisk.getAverageSlotBeanCount(), 0);
+
+		assertNull(cache.get(key(5, 8)));
+	}
+
+	/**
+	 * Test that a cached run gives the same result as running it.
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Run a seeded machine, store its result, and run it again with the same seed.
+	 * Postconditions: The result read back from a fresh cache matches the second run.
+	 * </pre>
+	 */
+	@Test
+	public void testMatchesRun() throws IOException, BeanOutOfBoundsException {
+		ExperimentCache cache = new ExperimentCache(directory, 1);
+		cache.put(key(9, 3), run(9, 3));
+		cache.put(key(9, 4), run(9, 4));
+		ExperimentResult expected = run(9, 3);
+		ExperimentResult cached = cache.get(key(9, 3));
+		assertArrayEquals(expected.getSlotCounts(), cached.getSlotCounts());
+		assertEquals(expected.getStepCount(), cached.getStepCount());
+	}
+
+	/**
+	 * Runs a seeded luck machine to the end.
+	 * 
+	 * @param slots number of slots
+	 * @param seed  the seed
+	 * @return the result
+	 */
+	private static ExperimentResult run(int slots, long seed) throws BeanOutOfBoundsException {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slots);
+		logic.setRetainSlotBeans(false);
+		logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slots, true, 500, new BitReservoirRandom(seed)));
+		while (logic.advanceStep()) {
+			// keep stepping
+		}
+		return ExperimentResult.of(logic);
+	}
+}
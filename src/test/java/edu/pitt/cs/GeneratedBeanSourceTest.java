@@ -0,0 +1,135 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that BeanCounterLogicImpl takes beans from a BeanSource lazily and that
+ * GeneratedBeanSource reuses recycled beans.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class GeneratedBeanSourceTest {
+
+	private final int slotCount = 10;
+
+	/**
+	 * Test that a huge bean source costs nothing up front.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Reset a machine with a source of 10^12 luck beans that counts the beans it supplies.
+	 *                  Advance 100 steps.
+	 * Postconditions: Right after the reset, one bean has been supplied and 10^12 - 1 remain.
+	 *                 After the steps, 101 beans have been supplied and 10^12 - 101 remain.
+	 * </pre>
+	 */
+	@Test
+	public void testLazyReset() throws BeanOutOfBoundsException {
+		final long beanCount = 1000000000000L;
+		CountingSource source = new CountingSource(
+				new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, beanCount, new BitReservoirRandom(1)));
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		logic.reset(source);
+		assertEquals(1, source.supplied.size());
+		assertEquals(beanCount - 1, logic.getRemainingBeanCountLong());
+		for (int i = 0; i < 100; i++) {
+			logic.advanceStep();
+		}
+		assertEquals(101, source.supplied.size());
+		assertEquals(beanCount - 101, logic.getRemainingBeanCountLong());
+	}
+
+	/**
+	 * Test that a machine that does not keep landed beans reuses their objects.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Reset a machine that does not retain slot beans with a source of 10000 skilled beans
+	 *                  that records the distinct bean objects it supplies. Run the machine to the end.
+	 * Postconditions: All 10000 beans land in the slots.
+	 *                 No more than slotCount + 1 distinct bean objects were supplied.
+	 * </pre>
+	 */
+	@Test
+	public void testRecycle() throws BeanOutOfBoundsException {
+		CountingSource source = new CountingSource(
+				new GeneratedBeanSource(InstanceType.IMPL, slotCount, false, 10000, new BitReservoirRandom(2)));
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		logic.setRetainSlotBeans(false);
+		logic.reset(source);
+		while (logic.advanceStep()) {
+			// run to the end
+		}
+		long total = 0;
+		for (int i = 0; i < slotCount; i++) {
+			total += logic.getSlotBeanCountLong(i);
+		}
+		assertEquals(10000, total);
+		assertTrue(source.supplied.size() <= slotCount + 1);
+	}
+
+	/**
+	 * Test that lazy and eager resets give the same run.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Reset one machine with a source of 500 skilled beans on a generator with seed 3.
+	 *                  Reset another with all beans taken up front from an equal source.
+	 *                  Run both to the end.
+	 * Postconditions: Both machines have the same slot counts.
+	 * </pre>
+	 */
+	@Test
+	public void testSameAsEager() throws BeanOutOfBoundsException {
+		BeanCounterLogicImpl lazy = new BeanCounterLogicImpl(slotCount);
+		lazy.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, false, 500, new BitReservoirRandom(3)));
+		BeanSource source = new GeneratedBeanSource(InstanceType.IMPL, slotCount, false, 500,
+				new BitReservoirRandom(3));
+		Bean[] beans = new Bean[500];
+		for (int i = 0; i < beans.length; i++) {
+			beans[i] = source.next();
+		}
+		BeanCounterLogicImpl eager = new BeanCounterLogicImpl(slotCount);
+		eager.reset(beans);
+		while (lazy.advanceStep() | eager.advanceStep()) {
+			// run both to the end
+		}
+		assertEquals(eager.getSlotString(), lazy.getSlotString());
+	}
+
+	/**
+	 * Wraps a source and records the distinct bean objects it supplies.
+	 */
+	private static class CountingSource implements BeanSource {
+		private final BeanSource source;
+		final Set<Bean> supplied = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		CountingSource(BeanSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public long getRemainingBeanCount() {
+			return source.getRemainingBeanCount();
+		}
+
+		@Override
+		public Bean next() {
+			Bean bean = source.next();
+			supplied.add(bean);
+			return bean;
+		}
+
+		@Override
+		public void recycle(Bean bean) {
+			source.recycle(bean);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that HistogramOutput writes every snapshot of a run in each format.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HistogramOutputTest {
+
+	private final int slotCount = 300;
+	private final int beanCount = 1000;
+
+	private Path file;
+	private List<long[]> expected;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("histogram", ".out");
+		expected = new ArrayList<>();
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Runs a machine, taking a snapshot after every step, and records the expected
+	 * records as step, remaining and slot counts. The records fill several buffers.
+	 * 
+	 * @param format the output format
+	 */
+	private void run(HistogramOutput.Format format) throws IOException, InterruptedException,
+			BeanOutOfBoundsException {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		Random rand = new Random(3);
+		Bean[] beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, true, rand);
+		}
+		logic.reset(beans);
+		try (HistogramOutput output = new HistogramOutput(file, format, slotCount)) {
+			while (logic.advanceStep()) {
+				output.snapshot(logic);
+				long[] record = new long[slotCount + 2];
+				record[0] = logic.getStepCount();
+				record[1] = logic.getRemainingBeanCountLong();
+				for (int i = 0; i < slotCount; i++) {
+					record[i + 2] = logic.getSlotBeanCountLong(i);
+				}
+				expected.add(record);
+			}
+			assertEquals(expected.size(), output.getSnapshotCount());
+		}
+	}
+
+	/**
+	 * Test the CSV format.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Run a machine with a snapshot after every step in CSV format and read the file.
+	 * Postconditions: The header names the columns and each line holds the values of one snapshot.
+	 * </pre>
+	 */
+	@Test
+	public void testCsv() throws Exception {
+		run(HistogramOutput.Format.CSV);
+		List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+		assertEquals(expected.size() + 1, lines.size());
+		assertEquals("step,remaining,slot_0,slot_1", lines.get(0).substring(0, 28));
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals(expected.get(i), parse(lines.get(i + 1).split(",")));
+		}
+	}
+
+	/**
+	 * Test the JSON Lines format.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Run a machine with a snapshot after every step in JSONL format and read the file.
+	 * Postconditions: Each line is an object with the step, remaining count and slot counts of one snapshot.
+	 * </pre>
+	 */
+	@Test
+	public void testJsonl() throws Exception {
+		run(HistogramOutput.Format.JSONL);
+		List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+		assertEquals(expected.size(), lines.size());
+		for (int i = 0; i < expected.size(); i++) {
+			long[] record = expected.get(i);
+			StringBuilder line = new StringBuilder();
+			line.append("{\"step\":").append(record[0]).append(",\"remaining\":").append(record[1]);
+			line.append(",\"slots\":[");
+			for (int j = 0; j < slotCount; j++) {
+				line.append(j > 0 ? "," : "").append(record[j + 2]);
+			}
+			assertEquals(line.append("]}").toString(), lines.get(i));
+		}
+	}
+
+	/**
+	 * Test the binary format.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Run a machine with a snapshot after every step in binary format and read the file.
+	 * Postconditions: The header holds the magic number, version, slot count and record size,
+	 *                 followed by one fixed-size record per snapshot.
+	 * </pre>
+	 */
+	@Test
+	public void testBinary() throws Exception {
+		run(HistogramOutput.Format.BINARY);
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(HistogramOutput.MAGIC, buf.getInt());
+		assertEquals(HistogramOutput.VERSION, buf.getInt());
+		assertEquals(slotCount, buf.getInt());
+		assertEquals(HistogramOutput.getBinaryRecordSize(slotCount), buf.getInt());
+		long recordsSize = (long) expected.size() * HistogramOutput.getBinaryRecordSize(slotCount);
+		assertEquals(HistogramOutput.HEADER_SIZE + recordsSize, buf.capacity());
+		for (long[] record : expected) {
+			long[] actual = new long[slotCount + 2];
+			for (int j = 0; j < actual.length; j++) {
+				actual[j] = buf.getLong();
+			}
+			assertArrayEquals(record, actual);
+		}
+	}
+
+	private static long[] parse(String[] fields) {
+		long[] values = new long[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			values[i] = Long.parseLong(fields[i]);
+		}
+		return values;
+	}
+}
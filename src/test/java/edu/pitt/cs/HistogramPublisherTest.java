@@ -0,0 +1,96 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that a HistogramMonitor sees what BeanCounterLogicImpl publishes
+ * through a HistogramPublisher.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HistogramPublisherTest {
+
+	private final int slotCount = 8;
+	private final int beanCount = 200;
+
+	private Path file;
+	private BeanCounterLogicImpl logic;
+	private HistogramPublisher publisher;
+	private HistogramMonitor monitor;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("histogram", ".bin");
+		logic = new BeanCounterLogicImpl(slotCount);
+		Bean[] beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, true, new Random(42 + i));
+		}
+		logic.reset(beans);
+		publisher = new HistogramPublisher(file, slotCount);
+		logic.setHistogramPublisher(publisher);
+		monitor = new HistogramMonitor(file);
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		monitor.close();
+		publisher.close();
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Test reading the published histogram while and after running the machine.
+	 * 
+	 * <pre>
+	 * Preconditions: logic reset with beanCount lucky beans and publishing into file in setUp().
+	 * Execution steps: Call logic.advanceStep() 50 times, then read the monitor.
+	 *                  Call logic.advanceStep() until it returns false, then read the monitor.
+	 *                  Call logic.lowerHalf(), then read the monitor.
+	 * Postconditions: Each time, the monitor's slot counts, step count and remaining count match logic.
+	 * </pre>
+	 */
+	@Test
+	public void testMonitorMatchesLogic() throws BeanOutOfBoundsException {
+		assertEquals(slotCount, monitor.getSlotCount());
+		for (int i = 0; i < 50; i++) {
+			logic.advanceStep();
+		}
+		assertMatches();
+		while (logic.advanceStep()) {
+			// keep stepping
+		}
+		assertMatches();
+		logic.lowerHalf();
+		assertMatches();
+	}
+
+	/**
+	 * Asserts that the monitor's view matches logic.
+	 */
+	private void assertMatches() {
+		long[] counts = new long[slotCount];
+		long sequence = monitor.read(counts);
+		assertEquals(0, sequence % 2);
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(logic.getSlotBeanCountLong(i), counts[i]);
+		}
+		assertEquals(logic.getStepCount(), monitor.getStepCount());
+		assertEquals(logic.getRemainingBeanCountLong(), monitor.getRemainingBeanCount());
+	}
+}
@@ -0,0 +1,164 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that a BeanCounterLogicImpl restored from a MachineCheckpoint
+ * continues exactly as the original machine.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class MachineCheckpointTest {
+
+	private final int slotCount = 7;
+	private final int beanCount = 300;
+
+	private Path file;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("checkpoint", ".bin");
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Creates a machine with beans that share one seeded Random, half of them
+	 * in skill mode, and runs it for the given number of steps.
+	 * 
+	 * @param width the pipeline width
+	 * @param steps number of steps to run
+	 * @return the machine
+	 */
+	private BeanCounterLogicImpl createRun(int width, int steps) throws BeanOutOfBoundsException {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount, width);
+		Random rand = new Random(42);
+		Bean[] beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, i % 2 == 0, rand);
+		}
+		logic.reset(beans);
+		for (int i = 0; i < steps; i++) {
+			logic.advanceStep();
+		}
+		return logic;
+	}
+
+	/**
+	 * Runs both machines to the end and checks that they stay identical.
+	 * 
+	 * @param expected the original machine
+	 * @param observed the restored machine
+	 */
+	private void assertSameRun(BeanCounterLogicImpl expected, BeanCounterLogicImpl observed)
+			throws BeanOutOfBoundsException {
+		boolean running = true;
+		while (running) {
+			assertEquals(expected.toString(), observed.toString());
+			assertEquals(expected.getRemainingBeanCount(), observed.getRemainingBeanCount());
+			assertEquals(expected.getStepCount(), observed.getStepCount());
+			running = expected.advanceStep();
+			assertEquals(running, observed.advanceStep());
+		}
+		assertEquals(expected.toString(), observed.toString());
+	}
+
+	/**
+	 * Test restoring a checkpoint written to and read from a file mid-run.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Run a machine for 100 steps, checkpoint it and write the checkpoint to file.
+	 *                  Read the checkpoint back and restore a machine from it.
+	 * Postconditions: Both machines take the same steps to the end with the same state after each step.
+	 *                 After repeat(), both machines again take the same steps.
+	 * </pre>
+	 */
+	@Test
+	public void testRestoreFromFile() throws BeanOutOfBoundsException, IOException {
+		BeanCounterLogicImpl logic = createRun(1, 100);
+		logic.checkpoint().write(file);
+		BeanCounterLogicImpl restored = BeanCounterLogicImpl.restore(MachineCheckpoint.read(file));
+		assertEquals(beanCount, MachineCheckpoint.read(file).getBeanCount());
+		assertSameRun(logic, restored);
+		logic.repeat();
+		restored.repeat();
+		assertSameRun(logic, restored);
+	}
+
+	/**
+	 * Test that a checkpoint is unaffected by the machine running on.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Run two identical wide-pipeline machines for 40 steps and checkpoint the first.
+	 *                  Run the first machine to the end, then restore a machine from the checkpoint.
+	 * Postconditions: The restored machine takes the same steps as the second machine.
+	 * </pre>
+	 */
+	@Test
+	public void testRestoreWidePipeline() throws BeanOutOfBoundsException, IOException {
+		BeanCounterLogicImpl logic = createRun(3, 40);
+		BeanCounterLogicImpl twin = createRun(3, 40);
+		MachineCheckpoint checkpoint = logic.checkpoint();
+		while (logic.advanceStep()) {
+			// run the original to the end
+		}
+		BeanCounterLogicImpl restored = BeanCounterLogicImpl.restore(checkpoint);
+		assertEquals(3, restored.getPipelineWidth());
+		assertSameRun(twin, restored);
+		assertFalse(restored.advanceStep());
+	}
+
+	/**
+	 * Test that a checkpoint carries the bean source, so that the restored
+	 * machine creates the same beans as the original.
+	 * 
+	 * <pre>
+	 * Preconditions: file is an empty temporary file.
+	 * Execution steps: Reset a machine with a GeneratedBeanSource of 300 seeded luck beans.
+	 *                  Checkpoint it before any steps and after 3 steps, before the first bean lands,
+	 *                  writing each checkpoint to file and restoring a machine from it.
+	 * Postconditions: Each checkpoint holds the bean source with the beans it has yet to supply.
+	 *                 Each restored machine takes the same steps to the end as a twin of the original.
+	 * </pre>
+	 */
+	@Test
+	public void testRestoreBeanSource() throws BeanOutOfBoundsException, IOException {
+		for (int steps : new int[] {0, 3}) {
+			BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+			BeanCounterLogicImpl twin = new BeanCounterLogicImpl(slotCount);
+			logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, beanCount, new Random(42)));
+			twin.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, beanCount, new Random(42)));
+			for (int i = 0; i < steps; i++) {
+				logic.advanceStep();
+				twin.advanceStep();
+			}
+			logic.checkpoint().write(file);
+			MachineCheckpoint checkpoint = MachineCheckpoint.read(file);
+			assertTrue(checkpoint.hasBeanSource());
+			assertEquals(beanCount, checkpoint.getBeanCount() + checkpoint.getSourceBeanCount());
+			assertSameRun(twin, BeanCounterLogicImpl.restore(checkpoint));
+		}
+	}
+}
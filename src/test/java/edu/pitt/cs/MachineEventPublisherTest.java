@@ -0,0 +1,209 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that MachineEventPublisher publishes every landing of a run in
+ * gapless batches, and collects nothing without subscribers.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class MachineEventPublisherTest {
+
+	/**
+	 * Collector: A subscriber that keeps every batch, requesting them one at a
+	 * time, and cancels after cancelAfter batches.
+	 */
+	private static class Collector implements Flow.Subscriber<MachineEventBatch> {
+		final List<MachineEventBatch> batches = new ArrayList<>();
+		final int cancelAfter;
+		Flow.Subscription subscription;
+		boolean completed;
+
+		Collector(int cancelAfter) {
+			this.cancelAfter = cancelAfter;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription s) {
+			subscription = s;
+			s.request(1);
+		}
+
+		@Override
+		public void onNext(MachineEventBatch batch) {
+			batches.add(batch);
+			if (batches.size() == cancelAfter) {
+				subscription.cancel();
+			} else {
+				subscription.request(1);
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			throw new AssertionError(t);
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+	private final int slotCount = 8;
+	private final int batchSteps = 16;
+
+	private BeanCounterLogicImpl logic;
+	private MachineEventPublisher publisher;
+
+	/**
+	 * Sets up the JUnit test fixture. Batches are delivered on the stepping
+	 * thread, so that the tests are deterministic.
+	 */
+	@Before
+	public void setUp() {
+		logic = new BeanCounterLogicImpl(slotCount);
+		logic.setRetainSlotBeans(false);
+		publisher = new MachineEventPublisher(logic, batchSteps, Runnable::run, 4);
+		logic.setEventPublisher(publisher);
+	}
+
+	/**
+	 * Resets logic with seeded luck beans.
+	 *
+	 * @param beanCount the number of beans
+	 */
+	private void reset(long beanCount) {
+		logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, beanCount, new BitReservoirRandom(3)));
+	}
+
+	/**
+	 * Adds up the landings of batches per slot.
+	 *
+	 * @param batches the batches
+	 * @return the number of beans that landed in each slot
+	 */
+	private long[] countLandings(List<MachineEventBatch> batches) {
+		long[] counts = new long[slotCount];
+		for (MachineEventBatch batch : batches) {
+			for (int k = 0; k < batch.getLandedBeanCount(); k++) {
+				counts[batch.getLandedSlot(k)]++;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Test that the batches of a subscriber cover the whole run.
+	 *
+	 * <pre>
+	 * Preconditions: logic publishes to publisher in batches of 16 steps.
+	 * Execution steps: Subscribe, reset logic with 500 beans, run it to the end and close publisher.
+	 * Postconditions: The batches follow each other from step 0 to the last step,
+	 *                 each covering at most 16 steps.
+	 *                 The landings add up to the slot counts of logic.
+	 *                 The snapshot of the last batch matches logic.
+	 *                 The subscriber was completed.
+	 * </pre>
+	 */
+	@Test
+	public void testBatchesCoverRun() throws BeanOutOfBoundsException {
+		Collector collector = new Collector(0);
+		publisher.subscribe(collector);
+		reset(500);
+		while (logic.advanceStep()) {
+			// Run to the end
+		}
+		publisher.close();
+
+		assertTrue(collector.completed);
+		long step = 0;
+		for (MachineEventBatch batch : collector.batches) {
+			assertEquals(step, batch.getFromStep());
+			assertTrue(batch.getToStep() - batch.getFromStep() <= batchSteps);
+			step = batch.getToStep();
+		}
+		assertEquals(logic.getStepCount(), step);
+		long[] landed = countLandings(collector.batches);
+		MachineSnapshot last = collector.batches.get(collector.batches.size() - 1).getSnapshot();
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(logic.getSlotBeanCountLong(i), landed[i]);
+			assertEquals(logic.getSlotBeanCountLong(i), last.getSlotBeanCount(i));
+		}
+	}
+
+	/**
+	 * Test that a late subscriber gets the steps after it subscribed, and that
+	 * collecting stops once the only subscriber cancels.
+	 *
+	 * <pre>
+	 * Preconditions: logic publishes to publisher in batches of 16 steps.
+	 * Execution steps: Reset logic with 500 beans and advance 100 steps without subscribers.
+	 *                  Subscribe with a subscriber that cancels after 3 batches and advance 100 more steps.
+	 * Postconditions: Nothing was collected before the subscription.
+	 *                 The first batch starts at step 101.
+	 *                 The subscriber got 3 batches, after which nothing was collected.
+	 * </pre>
+	 */
+	@Test
+	public void testLateSubscriberAndCancel() throws BeanOutOfBoundsException {
+		reset(500);
+		for (int i = 0; i < 100; i++) {
+			logic.advanceStep();
+		}
+		assertFalse(publisher.isCollecting());
+		Collector collector = new Collector(3);
+		publisher.subscribe(collector);
+		assertTrue(publisher.isCollecting());
+		for (int i = 0; i < 100; i++) {
+			logic.advanceStep();
+		}
+		assertEquals(3, collector.batches.size());
+		assertEquals(101, collector.batches.get(0).getFromStep());
+		assertEquals(101 + 3 * batchSteps, collector.batches.get(2).getToStep());
+		assertFalse(publisher.isCollecting());
+	}
+
+	/**
+	 * Test that a publisher without subscribers allocates nothing per step.
+	 *
+	 * <pre>
+	 * Preconditions: logic publishes to publisher, which has no subscribers.
+	 * Execution steps: Reset logic with 10^9 beans, warm up, then count the bytes allocated by
+	 *                  this thread over 20000 steps, with and without the publisher.
+	 * Postconditions: The publisher adds less than a byte per step.
+	 * </pre>
+	 */
+	@Test
+	public void testNoAllocationWithoutSubscribers() throws BeanOutOfBoundsException {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		reset(1000000000L);
+		long[] allocated = new long[2];
+		for (int round = 0; round < 4; round++) {
+			logic.setEventPublisher(round % 2 == 0 ? publisher : null);
+			long before = threads.getThreadAllocatedBytes(thread);
+			for (int i = 0; i < 20000; i++) {
+				logic.advanceStep();
+			}
+			// The first two rounds warm up
+			if (round >= 2) {
+				allocated[round % 2] = threads.getThreadAllocatedBytes(thread) - before;
+			}
+		}
+		assertTrue("allocated " + allocated[0] + " bytes with and " + allocated[1] + " without the publisher",
+				allocated[0] - allocated[1] < 20000);
+	}
+}
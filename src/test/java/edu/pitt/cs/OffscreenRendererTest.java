@@ -0,0 +1,130 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that OffscreenRenderer writes one image per frame of a run.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OffscreenRendererTest {
+
+	private final int slotCount = 5;
+	private final int beanCount = 3;
+
+	private Path directory;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		System.setProperty("java.awt.headless", "true");
+		directory = Files.createTempDirectory("frames");
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Creates a seeded luck machine that has been reset.
+	 * 
+	 * @return the machine
+	 */
+	private BeanCounterLogic createLogic() {
+		BeanCounterLogic logic = BeanCounterLogic.createInstance(InstanceType.IMPL, slotCount);
+		logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, beanCount, new BitReservoirRandom(7)));
+		return logic;
+	}
+
+	/**
+	 * Test rendering a run with animated steps.
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Render a run of beanCount beans at 4 frames per step on 2 threads.
+	 *                  Count the steps of the same run.
+	 * Postconditions: There is one frame for the initial state and 4 per step, numbered consecutively.
+	 *                 Every frame is a PNG image of the requested size.
+	 * </pre>
+	 */
+	@Test
+	public void testRender() throws IOException, InterruptedException, BeanOutOfBoundsException {
+		OffscreenRenderer renderer = new OffscreenRenderer(createLogic(), beanCount, 320, 240);
+		renderer.setFramesPerStep(4);
+		long frames = renderer.render(directory, 2);
+
+		BeanCounterLogic logic = createLogic();
+		int steps = 0;
+		while (logic.advanceStep()) {
+			steps++;
+		}
+		assertEquals(1 + 4L * steps, frames);
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(frames, files.count());
+		}
+		for (long i = 0; i < frames; i++) {
+			BufferedImage image = ImageIO.read(directory.resolve(OffscreenRenderer.getFrameName(i)).toFile());
+			assertEquals(320, image.getWidth());
+			assertEquals(240, image.getHeight());
+		}
+	}
+
+	/**
+	 * Test that an error while drawing a frame is reported by render().
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Render a run to frames of 50000x50000 pixels, which are too large to allocate.
+	 * Postconditions: render() throws the RuntimeException of the encoding thread.
+	 * </pre>
+	 */
+	@Test
+	public void testDrawingFailure() {
+		OffscreenRenderer renderer = new OffscreenRenderer(createLogic(), beanCount, 50000, 50000);
+		assertThrows(RuntimeException.class, () -> renderer.render(directory, 2));
+	}
+
+	/**
+	 * Test the bean positions between two steps.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Interpolate halfway between beans in rows 0 and 1 before a step and rows 1 and 2 after it.
+	 * Postconditions: Each bean is halfway to its position one row down; no bean is drawn for the last row.
+	 * </pre>
+	 */
+	@Test
+	public void testInterpolate() {
+		Point[] from = {new Point(100, 10), new Point(80, 50), null};
+		Point[] to = {new Point(100, 10), new Point(120, 50), new Point(60, 90)};
+		Point[] halfway = OffscreenRenderer.interpolate(from, to, 0.5);
+		assertArrayEquals(new Point[] {new Point(110, 30), new Point(70, 70), null}, halfway);
+		assertNull(OffscreenRenderer.interpolate(to, from, 0.5)[1]);
+	}
+}
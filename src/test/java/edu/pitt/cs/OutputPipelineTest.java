@@ -0,0 +1,325 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that OutputPipeline delivers, blocks or drops messages as its policy
+ * says.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OutputPipelineTest {
+
+	/**
+	 * GatedChannel: A channel whose writes wait until the gate is opened, so
+	 * that the ring of a pipeline can be filled deterministically.
+	 */
+	private static class GatedChannel implements WritableByteChannel {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch gate = new CountDownLatch(1);
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			started.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException ie) {
+				throw new InterruptedIOException();
+			}
+			int length = src.remaining();
+			byte[] message = new byte[length];
+			src.get(message);
+			bytes.write(message, 0, length);
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		String getText() {
+			return new String(bytes.toByteArray(), StandardCharsets.US_ASCII);
+		}
+	}
+
+	private GatedChannel channel;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() {
+		channel = new GatedChannel();
+	}
+
+	/**
+	 * Writes "i\n" as one message.
+	 *
+	 * @param pipeline the pipeline
+	 * @param i        the message number
+	 */
+	private static void writeMessage(OutputPipeline pipeline, int i) throws IOException {
+		pipeline.write(ByteBuffer.wrap((i + "\n").getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * Writes message 0, waits until the writer thread is stuck writing it, then
+	 * writes messages 1 to 10 into a pipeline with room for 3.
+	 *
+	 * @param pipeline the pipeline, writing to channel
+	 */
+	private void fillWhileStuck(OutputPipeline pipeline) throws IOException, InterruptedException {
+		writeMessage(pipeline, 0);
+		channel.started.await();
+		for (int i = 1; i <= 10; i++) {
+			writeMessage(pipeline, i);
+		}
+	}
+
+	/**
+	 * Test that the block policy delivers every message in order.
+	 *
+	 * <pre>
+	 * Preconditions: A pipeline with room for 4 messages and the block policy.
+	 * Execution steps: Write 1000 messages to it and close it.
+	 * Postconditions: The channel received all messages in order.
+	 *                 None were dropped.
+	 * </pre>
+	 */
+	@Test
+	public void testBlockDeliversAll() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputPipeline pipeline = new OutputPipeline(Channels.newChannel(bytes), OutputPipeline.Policy.BLOCK, 4);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			writeMessage(pipeline, i);
+			expected.append(i).append('\n');
+		}
+		pipeline.close();
+		assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+		assertEquals(1000, pipeline.getMessageCount());
+		assertEquals(0, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * Test that the drop-oldest policy keeps the newest messages.
+	 *
+	 * <pre>
+	 * Preconditions: A pipeline with room for 3 messages and the drop-oldest policy,
+	 *                writing to a channel that is stuck.
+	 * Execution steps: Write messages 0 to 10 while message 0 is being written,
+	 *                  then unstick the channel and close the pipeline.
+	 * Postconditions: The channel received messages 0, 8, 9 and 10.
+	 *                 7 of 11 messages were dropped.
+	 * </pre>
+	 */
+	@Test
+	public void testDropOldestKeepsNewest() throws IOException, InterruptedException {
+		OutputPipeline pipeline = new OutputPipeline(channel, OutputPipeline.Policy.DROP_OLDEST, 3);
+		fillWhileStuck(pipeline);
+		channel.gate.countDown();
+		pipeline.close();
+		assertEquals("0\n8\n9\n10\n", channel.getText());
+		assertEquals(11, pipeline.getMessageCount());
+		assertEquals(7, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * Test that the sample policy drops new messages while the ring is full.
+	 *
+	 * <pre>
+	 * Preconditions: A pipeline with room for 3 messages and the sample policy,
+	 *                writing to a channel that is stuck.
+	 * Execution steps: Write messages 0 to 10 while message 0 is being written,
+	 *                  then unstick the channel and close the pipeline.
+	 * Postconditions: The channel received messages 0, 1, 2 and 3.
+	 *                 7 of 11 messages were dropped.
+	 * </pre>
+	 */
+	@Test
+	public void testSampleKeepsOldest() throws IOException, InterruptedException {
+		OutputPipeline pipeline = new OutputPipeline(channel, OutputPipeline.Policy.SAMPLE, 3);
+		fillWhileStuck(pipeline);
+		channel.gate.countDown();
+		pipeline.close();
+		assertEquals("0\n1\n2\n3\n", channel.getText());
+		assertEquals(11, pipeline.getMessageCount());
+		assertEquals(7, pipeline.getDroppedCount());
+	}
+
+	/**
+	 * Creates a machine with 40 seeded lucky beans and a pipeline width of 2.
+	 *
+	 * @param slotCount the number of slots
+	 * @return the machine
+	 */
+	private static BeanCounterLogicImpl createLogic(int slotCount) {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount, 2);
+		Random rand = new Random(5);
+		Bean[] beans = new Bean[40];
+		for (int i = 0; i < beans.length; i++) {
+			beans[i] = new BeanImpl(slotCount, true, rand);
+		}
+		logic.reset(beans);
+		return logic;
+	}
+
+	/**
+	 * Test that sources count their own dropped messages.
+	 *
+	 * <pre>
+	 * Preconditions: A pipeline with room for 1 message and the drop-oldest policy,
+	 *                writing to a channel that is stuck, with sources a and b.
+	 * Execution steps: Write a message through a and wait until it is being written.
+	 *                  Write a message through b, then one through a.
+	 * Postconditions: The message of b was dropped: b counts 1 dropped message and its last
+	 *                 message was dropped; a counts none.
+	 *                 The channel received the two messages of a.
+	 * </pre>
+	 */
+	@Test
+	public void testSourcesCountSeparately() throws IOException, InterruptedException {
+		OutputPipeline pipeline = new OutputPipeline(channel, OutputPipeline.Policy.DROP_OLDEST, 1);
+		OutputPipeline.Source a = pipeline.newSource();
+		OutputPipeline.Source b = pipeline.newSource();
+		a.write(ByteBuffer.wrap("a0\n".getBytes(StandardCharsets.US_ASCII)));
+		channel.started.await();
+		b.write(ByteBuffer.wrap("b1\n".getBytes(StandardCharsets.US_ASCII)));
+		a.write(ByteBuffer.wrap("a2\n".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals(1, b.getDroppedCount());
+		assertTrue(b.isLastMessageDropped());
+		assertEquals(0, a.getDroppedCount());
+		assertFalse(a.isLastMessageDropped());
+		channel.gate.countDown();
+		pipeline.close();
+		assertEquals("a0\na2\n", channel.getText());
+	}
+
+	/**
+	 * Test that the last frame of a run gets through after the frame before it
+	 * was sampled away.
+	 *
+	 * <pre>
+	 * Preconditions: A TextRenderer writing into a source of a pipeline with room for 1 frame
+	 *                and the sample policy, writing to a channel that is stuck.
+	 * Execution steps: Render the first frame and wait until it is being written.
+	 *                  Render 2 more steps, so that the last one is dropped.
+	 *                  Unstick the channel, call renderLast() and close the pipeline.
+	 * Postconditions: The channel received the frames of all 3 steps.
+	 * </pre>
+	 */
+	@Test
+	public void testLastFrameNotDropped() throws IOException, InterruptedException, BeanOutOfBoundsException {
+		final int slotCount = 6;
+		BeanCounterLogicImpl logic = createLogic(slotCount);
+		OutputPipeline pipeline = new OutputPipeline(channel, OutputPipeline.Policy.SAMPLE, 1);
+		TextRenderer renderer = new TextRenderer(pipeline.newSource(), slotCount);
+		StringBuilder expected = new StringBuilder();
+		renderer.render(logic);
+		renderer.flush();
+		expected.append(logic.toString()).append('\n');
+		channel.started.await();
+		for (int step = 0; step < 2; step++) {
+			logic.advanceStep();
+			renderer.render(logic);
+			renderer.flush();
+			expected.append(logic.toString()).append('\n');
+		}
+		assertEquals(1, pipeline.getDroppedCount());
+		channel.gate.countDown();
+		renderer.renderLast(logic);
+		pipeline.close();
+		assertEquals(expected.toString(), channel.getText());
+	}
+
+	/**
+	 * Test that the last frame of a live view is drawn from scratch when a
+	 * frame it was built on was dropped.
+	 *
+	 * <pre>
+	 * Preconditions: An AnsiDiffRenderer writing into a source of a pipeline with room for 1 frame
+	 *                and the drop-oldest policy, writing to a channel that is stuck.
+	 * Execution steps: Render the first frame and wait until it is being written.
+	 *                  Render 2 more steps; the second drops the frame it was built on.
+	 *                  Unstick the channel, call renderLast() and close the pipeline.
+	 * Postconditions: The channel output ends with the last step drawn from scratch.
+	 * </pre>
+	 */
+	@Test
+	public void testLastLiveFrameRedrawn() throws IOException, InterruptedException, BeanOutOfBoundsException {
+		final int slotCount = 6;
+		BeanCounterLogicImpl logic = createLogic(slotCount);
+		OutputPipeline pipeline = new OutputPipeline(channel, OutputPipeline.Policy.DROP_OLDEST, 1);
+		AnsiDiffRenderer renderer = new AnsiDiffRenderer(pipeline.newSource(), slotCount);
+		renderer.render(logic);
+		channel.started.await();
+		for (int step = 0; step < 2; step++) {
+			logic.advanceStep();
+			renderer.render(logic);
+		}
+		assertEquals(1, pipeline.getDroppedCount());
+		channel.gate.countDown();
+		renderer.renderLast(logic);
+		pipeline.close();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new AnsiDiffRenderer(Channels.newChannel(expected), slotCount).render(logic);
+		String last = new String(expected.toByteArray(), StandardCharsets.US_ASCII);
+		assertTrue(channel.getText().endsWith(last));
+	}
+
+	/**
+	 * Test that AnsiDiffRenderer redraws the whole board after frames were
+	 * dropped.
+	 *
+	 * <pre>
+	 * Preconditions: An AnsiDiffRenderer writing into a source of a pipeline with room for 1 frame
+	 *                and the drop-oldest policy, writing to a channel that is stuck.
+	 * Execution steps: Render the first frame and wait until it is being written.
+	 *                  Render 5 more steps, then unstick the channel and close the pipeline.
+	 * Postconditions: 4 frames were dropped. The channel received the first frame and
+	 *                 the last one, each as a new renderer would draw it from scratch.
+	 * </pre>
+	 */
+	@Test
+	public void testLiveViewRedrawsAfterDrop() throws IOException, InterruptedException, BeanOutOfBoundsException {
+		final int slotCount = 6;
+		BeanCounterLogicImpl logic = createLogic(slotCount);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		OutputPipeline pipeline = new OutputPipeline(channel, OutputPipeline.Policy.DROP_OLDEST, 1);
+		AnsiDiffRenderer renderer = new AnsiDiffRenderer(pipeline.newSource(), slotCount);
+		renderer.render(logic);
+		new AnsiDiffRenderer(Channels.newChannel(expected), slotCount).render(logic);
+		channel.started.await();
+		for (int step = 0; step < 5; step++) {
+			logic.advanceStep();
+			renderer.render(logic);
+		}
+		new AnsiDiffRenderer(Channels.newChannel(expected), slotCount).render(logic);
+		channel.gate.countDown();
+		pipeline.close();
+		assertEquals(new String(expected.toByteArray(), StandardCharsets.US_ASCII), channel.getText());
+		assertEquals(4, pipeline.getDroppedCount());
+	}
+}
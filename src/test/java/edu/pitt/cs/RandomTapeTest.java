@@ -0,0 +1,115 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that RandomTape plays back the same random numbers every time and can
+ * drive beans.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class RandomTapeTest {
+
+	private final int wordCount = 1000;
+
+	private Path file;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		file = Files.createTempFile("random", ".tape");
+		RandomTape.generate(file, wordCount, 42);
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/**
+	 * Test that the tape repeats itself.
+	 * 
+	 * <pre>
+	 * Preconditions: file holds a tape of wordCount words.
+	 * Execution steps: Open two tapes on file, one starting at word 0 and one at word 10.
+	 *                  Draw wordCount + 10 ints from the first and wordCount ints from the second.
+	 * Postconditions: The file is 4 * wordCount bytes long.
+	 *                 After wrapping around, the first tape repeats its first 10 ints.
+	 *                 The second tape returns the ints of the first, starting at the 11th.
+	 * </pre>
+	 */
+	@Test
+	public void testPlayback() throws IOException {
+		assertEquals(4L * wordCount, Files.size(file));
+		RandomTape tape = new RandomTape(file);
+		RandomTape shifted = new RandomTape(file, 10);
+		assertEquals(wordCount, tape.getWordCount());
+		int[] first = new int[wordCount + 10];
+		for (int i = 0; i < first.length; i++) {
+			first[i] = tape.nextInt();
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals(first[i], first[wordCount + i]);
+		}
+		for (int i = 0; i < wordCount; i++) {
+			assertEquals(first[i + 10], shifted.nextInt());
+		}
+	}
+
+	/**
+	 * Test that two machines driven by tapes on the same file end up identical.
+	 * 
+	 * <pre>
+	 * Preconditions: file holds a tape of wordCount words.
+	 * Execution steps: Twice, reset a 5-slot machine with 200 beans, alternating skill and luck,
+	 *                  sharing a tape on file, and run it to the end.
+	 * Postconditions: Both machines have the same slot counts, which add up to 200.
+	 * </pre>
+	 */
+	@Test
+	public void testRepeatableRuns() throws IOException, BeanOutOfBoundsException {
+		long[] expected = run();
+		long[] observed = run();
+		assertArrayEquals(expected, observed);
+		long total = 0;
+		for (long count : observed) {
+			total += count;
+		}
+		assertEquals(200, total);
+		assertTrue(observed[2] > 0);
+	}
+
+	private long[] run() throws IOException, BeanOutOfBoundsException {
+		final int slotCount = 5;
+		RandomTape tape = new RandomTape(file);
+		Bean[] beans = new Bean[200];
+		for (int i = 0; i < beans.length; i++) {
+			beans[i] = new BeanImpl(slotCount, i % 2 == 0, tape);
+		}
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+		logic.reset(beans);
+		while (logic.advanceStep()) {
+			// run to the end
+		}
+		long[] counts = new long[slotCount];
+		for (int i = 0; i < slotCount; i++) {
+			counts[i] = logic.getSlotBeanCountLong(i);
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,188 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that ShardedRunner splits an experiment between worker JVMs and
+ * merges their results.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ShardedRunnerTest {
+
+	private final int slotCount = 6;
+	private final long beanCount = 1001;
+	private final int shardCount = 3;
+
+	private Path directory;
+	private ShardedRunner runner;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("shards");
+		runner = new ShardedRunner(slotCount, beanCount, true, 1, 42, shardCount);
+	}
+
+	/**
+	 * Cleans up the JUnit test fixture.
+	 */
+	@After
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+
+	/**
+	 * Test how beans and seeds are split between shards.
+	 * 
+	 * <pre>
+	 * Preconditions: runner splits beanCount beans into shardCount shards.
+	 * Execution steps: Call runner.getShardBeanCount(i) and runner.getShardSeed(i) for every shard.
+	 * Postconditions: The bean counts add up to beanCount and differ by at most one.
+	 *                 The shard seeds are all different.
+	 * </pre>
+	 */
+	@Test
+	public void testSplit() {
+		long total = 0;
+		for (int i = 0; i < shardCount; i++) {
+			total += runner.getShardBeanCount(i);
+			assertEquals(beanCount / shardCount, runner.getShardBeanCount(i), 1);
+			for (int j = 0; j < i; j++) {
+				assertNotEquals(runner.getShardSeed(j), runner.getShardSeed(i));
+			}
+		}
+		assertEquals(beanCount, total);
+	}
+
+	/**
+	 * Test that the merged result is the sum of the shard results.
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Call runner.run(directory), which starts a worker JVM per shard.
+	 *                  Run each shard in this JVM with the same seed and bean count.
+	 * Postconditions: The merged slot counts are the sums of the shards' slot counts.
+	 *                 The merged step count is the largest shard step count.
+	 * </pre>
+	 */
+	@Test
+	public void testMerge() throws IOException, InterruptedException, BeanOutOfBoundsException {
+		assertMerged(runner, runner.run(directory));
+	}
+
+	/**
+	 * Test that workers that leave no result or hang are retried.
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Call run(directory) on a runner with a worker timeout of 5 seconds,
+	 *                  whose first worker for shard 0 runs 10^12 beans and whose first worker
+	 *                  for shard 1 exits at once without a result.
+	 * Postconditions: Shards 0 and 1 were started twice, shard 2 once.
+	 *                 The merged result is the same as with well-behaved workers.
+	 * </pre>
+	 */
+	@Test
+	public void testRetryFailedWorkers() throws IOException, InterruptedException, BeanOutOfBoundsException {
+		AtomicIntegerArray attempts = new AtomicIntegerArray(shardCount);
+		ShardedRunner flaky = new ShardedRunner(slotCount, beanCount, true, 1, 42, shardCount) {
+			@Override
+			List<String> workerCommand(int i, Path cacheDirectory) {
+				List<String> command = super.workerCommand(i, cacheDirectory);
+				if (attempts.getAndIncrement(i) == 0 && i < 2) {
+					List<String> bad = new ArrayList<>(command);
+					int mode = bad.indexOf("luck");
+					// Shard 0 would take hours, shard 1 only prints its usage
+					if (i == 0) {
+						bad.set(mode - 1, "1000000000000");
+					} else {
+						bad.set(mode, "bad");
+					}
+					return bad;
+				}
+				return command;
+			}
+		};
+		flaky.setWorkerTimeout(5, TimeUnit.SECONDS);
+		ExperimentResult merged = flaky.run(directory);
+		assertEquals(2, attempts.get(0));
+		assertEquals(2, attempts.get(1));
+		assertEquals(1, attempts.get(2));
+		assertMerged(flaky, merged);
+	}
+
+	/**
+	 * Test that a shard whose workers keep timing out fails the run.
+	 * 
+	 * <pre>
+	 * Preconditions: directory is an empty temporary directory.
+	 * Execution steps: Call run(directory) on a runner without retries and with a worker timeout
+	 *                  of 1 second, whose workers run 10^12 beans.
+	 * Postconditions: run() throws an IOException that reports the timeout.
+	 * </pre>
+	 */
+	@Test
+	public void testTimeoutFails() throws InterruptedException {
+		ShardedRunner hung = new ShardedRunner(slotCount, 1000000000000L, true, 1, 42, 1);
+		hung.setRetries(0);
+		hung.setWorkerTimeout(1, TimeUnit.SECONDS);
+		try {
+			hung.run(directory);
+			fail("run() returned");
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("timed out"));
+		}
+	}
+
+	/**
+	 * Checks that merged is the sum of the results of running the shards of
+	 * runner in this JVM.
+	 * 
+	 * @param runner the runner
+	 * @param merged its merged result
+	 */
+	private void assertMerged(ShardedRunner runner, ExperimentResult merged) throws BeanOutOfBoundsException {
+		long[] expected = new long[slotCount];
+		long steps = 0;
+		for (int i = 0; i < shardCount; i++) {
+			BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount);
+			logic.setRetainSlotBeans(false);
+			logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slotCount, true, runner.getShardBeanCount(i),
+					new BitReservoirRandom(runner.getShardSeed(i))));
+			while (logic.advanceStep()) {
+				// keep stepping
+			}
+			for (int j = 0; j < slotCount; j++) {
+				expected[j] += logic.getSlotBeanCountLong(j);
+			}
+			steps = Math.max(steps, logic.getStepCount());
+		}
+		assertArrayEquals(expected, merged.getSlotCounts());
+		assertEquals(steps, merged.getStepCount());
+	}
+}
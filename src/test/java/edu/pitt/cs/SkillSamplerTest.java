@@ -0,0 +1,83 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that SkillSampler draws skill levels with the distribution of the
+ * original BeanImpl constructor.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SkillSamplerTest {
+
+	private final int draws = 1000000;
+
+	/**
+	 * Returns the skill level of a bean made by the original constructor.
+	 * 
+	 * @param slotCount the number of slots
+	 * @param rand      the random number generator
+	 * @return the skill level
+	 */
+	private static int legacySkill(int slotCount, Random rand) {
+		return ((BeanImpl) Bean.createInstance(InstanceType.IMPL, slotCount, false, rand)).getSkillLevel();
+	}
+
+	/**
+	 * Test that sampled skill levels follow the original distribution.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: For 1, 2, 10 and 31 slots, make draws skilled beans with the original constructor
+	 *                  and with the sampler, counting the beans at each skill level.
+	 * Postconditions: The probabilities of the sampler add up to 1.
+	 *                 At each skill level, both counts and the expected count agree within 0.3% of draws.
+	 * </pre>
+	 */
+	@Test
+	public void testDistribution() {
+		Random rand = new Random(42);
+		for (int slotCount : new int[] {1, 2, 10, 31}) {
+			SkillSampler sampler = SkillSampler.forSlotCount(slotCount);
+			long[] legacy = new long[slotCount];
+			long[] sampled = new long[slotCount];
+			for (int i = 0; i < draws; i++) {
+				legacy[legacySkill(slotCount, rand)]++;
+				sampled[new BeanImpl(slotCount, false, rand, sampler).getSkillLevel()]++;
+			}
+			double total = 0;
+			for (int k = 0; k < slotCount; k++) {
+				double expected = sampler.getProbability(k) * draws;
+				total += sampler.getProbability(k);
+				assertEquals(expected, legacy[k], draws * 0.003);
+				assertEquals(expected, sampled[k], draws * 0.003);
+			}
+			assertEquals(1, total, 1e-9);
+		}
+	}
+
+	/**
+	 * Test that luck beans made with a sampler draw no random numbers.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Make 100 luck beans with a sampler and a Random with seed 1.
+	 *                  Draw an int from that Random and from a new Random with seed 1.
+	 * Postconditions: Both ints are equal. The sampler for 10 slots is created only once.
+	 * </pre>
+	 */
+	@Test
+	public void testLuckBeansDrawNothing() {
+		Random rand = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			new BeanImpl(10, true, rand, SkillSampler.forSlotCount(10));
+		}
+		assertEquals(new Random(1).nextInt(), rand.nextInt());
+		assertSame(SkillSampler.forSlotCount(10), SkillSampler.forSlotCount(10));
+	}
+}
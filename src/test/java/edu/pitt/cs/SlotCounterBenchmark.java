@@ -0,0 +1,90 @@
+package edu.pitt.cs;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * SlotCounterBenchmark: Measures how throughput of concurrent bean drops scales
+ * with the number of threads, for StripedSlotCounter versus a single histogram
+ * guarded by synchronized. Not a JUnit test; run it by hand:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes edu.pitt.cs.SlotCounterBenchmark [slot_count] [drops_per_thread]
+ * </pre>
+ */
+public class SlotCounterBenchmark {
+
+	/**
+	 * The baseline: one long[] histogram with every update under one lock.
+	 */
+	static class SynchronizedSlotCounter {
+		private final long[] counts;
+
+		SynchronizedSlotCounter(int slotCount) {
+			counts = new long[slotCount];
+		}
+
+		synchronized void increment(int i) {
+			counts[i]++;
+		}
+	}
+
+	/**
+	 * Drops beans into a histogram from the given number of threads and returns
+	 * the throughput in millions of drops per second.
+	 * 
+	 * @param threads        the number of producer threads
+	 * @param slotCount      the number of slots
+	 * @param dropsPerThread the number of beans each thread drops
+	 * @param drop           the increment operation under test
+	 * @return millions of drops per second
+	 */
+	static double measure(int threads, int slotCount, int dropsPerThread, java.util.function.IntConsumer drop)
+			throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final SplittableRandom rand = new SplittableRandom(t);
+			new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException ie) {
+					return;
+				}
+				for (int j = 0; j < dropsPerThread; j++) {
+					drop.accept(rand.nextInt(slotCount));
+				}
+				done.countDown();
+			}).start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		return (double) threads * dropsPerThread / elapsed * 1000.0;
+	}
+
+	/**
+	 * Runs the benchmark for 1, 2, 4, ... threads up to twice the number of
+	 * processors and prints a table of throughputs.
+	 * 
+	 * @param args optional slot count and drops per thread
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int slotCount = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int dropsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+		int maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+
+		System.out.println("threads  synchronized(Mdrops/s)  striped(Mdrops/s)");
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			// Warm up both paths before each measurement
+			SynchronizedSlotCounter locked = new SynchronizedSlotCounter(slotCount);
+			StripedSlotCounter striped = new StripedSlotCounter(slotCount);
+			measure(threads, slotCount, dropsPerThread / 10, locked::increment);
+			measure(threads, slotCount, dropsPerThread / 10, striped::increment);
+			double lockedRate = measure(threads, slotCount, dropsPerThread, locked::increment);
+			double stripedRate = measure(threads, slotCount, dropsPerThread, striped::increment);
+			System.out.printf("%7d  %22.1f  %17.1f%n", threads, lockedRate, stripedRate);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests StripedSlotCounter with several threads dropping beans at once.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class StripedSlotCounterTest {
+
+	private final int slotCount = 10;
+	private final int threadCount = 8;
+	private final int dropsPerThread = 100000;
+
+	private StripedSlotCounter counter;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() {
+		counter = new StripedSlotCounter(slotCount, 4);
+	}
+
+	/**
+	 * Test the number of stripes.
+	 * 
+	 * <pre>
+	 * Preconditions: counter created with at least 4 stripes in setUp().
+	 * Execution steps: Create counters asking for 1, 3 and 5 stripes.
+	 * Postconditions: getStripeCount() returns 4, 1, 4 and 8 respectively.
+	 * </pre>
+	 */
+	@Test
+	public void testStripeCount() {
+		assertEquals(4, counter.getStripeCount());
+		assertEquals(1, new StripedSlotCounter(slotCount, 1).getStripeCount());
+		assertEquals(4, new StripedSlotCounter(slotCount, 3).getStripeCount());
+		assertEquals(8, new StripedSlotCounter(slotCount, 5).getStripeCount());
+	}
+
+	/**
+	 * Test concurrent increment(int).
+	 * 
+	 * <pre>
+	 * Preconditions: counter created in setUp().
+	 * Execution steps: Start threadCount threads; thread t calls increment((t + j) % slotCount)
+	 *                  for j in 0 until dropsPerThread. Join all threads.
+	 * Postconditions: Each slot holds threadCount * dropsPerThread / slotCount beans.
+	 *                 After clear(), each slot holds 0 beans.
+	 * </pre>
+	 */
+	@Test
+	public void testConcurrentIncrement() throws InterruptedException {
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < threadCount; t++) {
+			final int offset = t;
+			Thread thread = new Thread(() -> {
+				for (int j = 0; j < dropsPerThread; j++) {
+					counter.increment((offset + j) % slotCount);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long[] counts = counter.getSlotBeanCounts(null);
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals((long) threadCount * dropsPerThread / slotCount, counts[i]);
+		}
+		counter.clear();
+		for (int i = 0; i < slotCount; i++) {
+			assertEquals(0, counter.getSlotBeanCount(i));
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that SweepRunner expands grids and runs every configuration
+ * reproducibly.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SweepRunnerTest {
+
+	/**
+	 * Test expanding a grid.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Expand slots=5,10..20/5 beans=100..300/100 width=1,2 with seed 1, and again.
+	 * Postconditions: There are 4 * 3 * 2 * 2 = 48 configurations, the first with 5 slots, 100 beans,
+	 *                 luck mode and width 1. Both expansions give the same seeds, all distinct.
+	 * </pre>
+	 */
+	@Test
+	public void testParseGrid() {
+		String[] grid = {"slots=5,10..20/5", "beans=100..300/100", "width=1,2"};
+		List<SweepRunner.Configuration> configurations = SweepRunner.parseGrid(grid, 1);
+		List<SweepRunner.Configuration> again = SweepRunner.parseGrid(grid, 1);
+		assertEquals(48, configurations.size());
+		SweepRunner.Configuration first = configurations.get(0);
+		assertEquals(5, first.slotCount);
+		assertEquals(100, first.beanCount);
+		assertEquals(true, first.isLuck);
+		assertEquals(1, first.pipelineWidth);
+		List<Long> seeds = new ArrayList<>();
+		for (int i = 0; i < configurations.size(); i++) {
+			assertEquals(again.get(i).seed, configurations.get(i).seed);
+			if (!seeds.contains(configurations.get(i).seed)) {
+				seeds.add(configurations.get(i).seed);
+			}
+		}
+		assertEquals(48, seeds.size());
+	}
+
+	/**
+	 * Test that a sweep gives the same results as running each configuration on
+	 * a fresh machine.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Run the sweep slots=4,6 beans=50,500,2000 mode=luck,skill width=1,3 on 3 threads.
+	 *                  Run each of its configurations on its own new machine.
+	 * Postconditions: The sweep writes the header and one line per configuration, and apart from the
+	 *                 timings, its lines are those of the separate runs.
+	 * </pre>
+	 */
+	@Test
+	public void testRun() throws IOException, BeanOutOfBoundsException {
+		String[] grid = {"slots=4,6", "beans=50,500,2000", "width=1,3"};
+		List<SweepRunner.Configuration> configurations = SweepRunner.parseGrid(grid, 7);
+		StringWriter out = new StringWriter();
+		new SweepRunner(configurations, 3).run(out);
+		String[] lines = out.toString().split("\n");
+		assertEquals(SweepRunner.HEADER, lines[0]);
+		List<String> observed = new ArrayList<>();
+		for (int i = 1; i < lines.length; i++) {
+			observed.add(withoutMillis(lines[i]));
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (SweepRunner.Configuration c : configurations) {
+			BeanCounterLogicImpl logic = new BeanCounterLogicImpl(c.slotCount, c.pipelineWidth);
+			logic.reset(new GeneratedBeanSource(InstanceType.IMPL, c.slotCount, c.isLuck, c.beanCount,
+					new BitReservoirRandom(c.seed)));
+			while (logic.advanceStep()) {
+				// run to the end
+			}
+			StringBuilder counts = new StringBuilder();
+			for (int i = 0; i < c.slotCount; i++) {
+				counts.append(i > 0 ? " " : "").append(logic.getSlotBeanCountLong(i));
+			}
+			expected.add(c.slotCount + "," + c.beanCount + "," + (c.isLuck ? "luck" : "skill") + ","
+					+ c.pipelineWidth + "," + c.seed + "," + logic.getStepCount() + ","
+					+ logic.getAverageSlotBeanCount() + "," + counts);
+		}
+		Collections.sort(expected);
+		Collections.sort(observed);
+		assertEquals(expected, observed);
+	}
+
+	/**
+	 * Test that a configuration that fails is reported and does not stop the
+	 * sweep.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Run a sweep of a configuration with 4 slots and 500 beans and one whose
+	 *                  machine cannot be created (65536 slots of width 32768 overflow its arrays).
+	 * Postconditions: run() reports one failure.
+	 *                 The good configuration has results and an empty error column.
+	 *                 The failed one has its parameters, no results and the error.
+	 * </pre>
+	 */
+	@Test
+	public void testFailedConfiguration() throws IOException {
+		List<SweepRunner.Configuration> configurations = new ArrayList<>();
+		configurations.add(new SweepRunner.Configuration(65536, 0, true, 32768, 1));
+		configurations.add(new SweepRunner.Configuration(4, 500, true, 1, 2));
+		StringWriter out = new StringWriter();
+		assertEquals(1, new SweepRunner(configurations, 2).run(out));
+		String[] lines = out.toString().split("\n");
+		assertEquals(3, lines.length);
+		List<String> sorted = new ArrayList<>(Arrays.asList(lines[1], lines[2]));
+		Collections.sort(sorted);
+		String[] good = sorted.get(0).split(",", -1);
+		String[] failed = sorted.get(1).split(",", -1);
+		assertEquals(10, good.length);
+		assertEquals("4", good[0]);
+		assertEquals("", good[9]);
+		assertEquals(10, failed.length);
+		assertEquals("65536,0,luck,32768,1,,,,", String.join(",", Arrays.copyOf(failed, 9)));
+		assertTrue(failed[9], failed[9].contains("NegativeArraySizeException"));
+	}
+
+	/**
+	 * Test that configurations start in order of cost.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: Run the sweep slots=4,6 beans=10,1000,100 mode=luck on one thread.
+	 * Postconditions: The lines are in order of decreasing beans times slots.
+	 * </pre>
+	 */
+	@Test
+	public void testMostExpensiveFirst() throws IOException {
+		String[] grid = {"slots=4,6", "beans=10,1000,100", "mode=luck"};
+		StringWriter out = new StringWriter();
+		new SweepRunner(SweepRunner.parseGrid(grid, 7), 1).run(out);
+		String[] lines = out.toString().split("\n");
+		String[] expected = {"6,1000", "4,1000", "6,100", "4,100", "6,10", "4,10"};
+		assertEquals(expected.length + 1, lines.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertTrue(lines[i + 1], lines[i + 1].startsWith(expected[i] + ","));
+		}
+	}
+
+	private static String withoutMillis(String line) {
+		String[] fields = line.split(",");
+		StringBuilder bld = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i != 7) {
+				bld.append(bld.length() > 0 ? "," : "").append(fields[i]);
+			}
+		}
+		return bld.toString();
+	}
+}
@@ -0,0 +1,162 @@
+package edu.pitt.cs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+/**
+ * Tests that TextRenderer writes the same text as BeanCounterLogicImpl.toString().
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TextRendererTest {
+
+	private final int slotCount = 9;
+
+	private ByteArrayOutputStream bytes;
+	private TextRenderer renderer;
+
+	/**
+	 * Sets up the JUnit test fixture.
+	 */
+	@Before
+	public void setUp() {
+		bytes = new ByteArrayOutputStream();
+		renderer = new TextRenderer(Channels.newChannel(bytes), slotCount);
+	}
+
+	/**
+	 * Creates a machine of the given pipeline width with seeded lucky beans.
+	 * 
+	 * @param width     the pipeline width
+	 * @param beanCount the number of beans
+	 * @return the machine
+	 */
+	private BeanCounterLogicImpl createLogic(int width, int beanCount) {
+		BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slotCount, width);
+		Random rand = new Random(11);
+		Bean[] beans = new Bean[beanCount];
+		for (int i = 0; i < beanCount; i++) {
+			beans[i] = new BeanImpl(slotCount, true, rand);
+		}
+		logic.reset(beans);
+		return logic;
+	}
+
+	/**
+	 * Test that every frame matches toString().
+	 * 
+	 * <pre>
+	 * Preconditions: renderer writes into bytes.
+	 * Execution steps: For pipeline widths 1 and 4, render every step of a run and build the
+	 *                  expected text from toString() followed by a newline.
+	 * Postconditions: The rendered text equals the expected text.
+	 * </pre>
+	 */
+	@Test
+	public void testMatchesToString() throws IOException, BeanOutOfBoundsException {
+		for (int width : new int[] {1, 4}) {
+			bytes.reset();
+			BeanCounterLogicImpl logic = createLogic(width, 2000);
+			StringBuilder expected = new StringBuilder();
+			renderer.render(logic);
+			expected.append(logic.toString()).append('\n');
+			while (logic.advanceStep()) {
+				renderer.render(logic);
+				expected.append(logic.toString()).append('\n');
+			}
+			renderer.flush();
+			assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * Test frame skipping.
+	 * 
+	 * <pre>
+	 * Preconditions: renderer writes into bytes.
+	 * Execution steps: Set the frame interval to 5 and call renderIfDue() after every step of a run.
+	 *                  Call renderIfNew() at the end.
+	 * Postconditions: Only steps that are multiples of 5 are rendered, plus the last step.
+	 * </pre>
+	 */
+	@Test
+	public void testFrameInterval() throws IOException, BeanOutOfBoundsException {
+		renderer.setFrameInterval(5);
+		BeanCounterLogicImpl logic = createLogic(1, 23);
+		StringBuilder expected = new StringBuilder();
+		while (logic.advanceStep()) {
+			boolean due = logic.getStepCount() % 5 == 0;
+			assertEquals(due, renderer.renderIfDue(logic));
+			if (due) {
+				expected.append(logic.toString()).append('\n');
+			}
+		}
+		assertFalse(logic.getStepCount() % 5 == 0);
+		renderer.renderIfNew(logic);
+		expected.append(logic.toString()).append('\n');
+		renderer.flush();
+		assertEquals(expected.toString(), new String(bytes.toByteArray(), StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Test that every frame of a large board is written in one piece.
+	 * 
+	 * <pre>
+	 * Preconditions: None.
+	 * Execution steps: For 200 and 500 slots, render every 100th step of a run of 200000 beans with a
+	 *                  pipeline width of 64 into a channel that counts its writes, flushing after every frame.
+	 * Postconditions: The channel was written once per frame.
+	 * </pre>
+	 */
+	@Test
+	public void testOneWritePerFrame() throws IOException, BeanOutOfBoundsException {
+		for (int slots : new int[] {200, 500}) {
+			long[] writes = new long[1];
+			WritableByteChannel channel = new WritableByteChannel() {
+				@Override
+				public int write(ByteBuffer src) {
+					writes[0]++;
+					int length = src.remaining();
+					src.position(src.limit());
+					return length;
+				}
+
+				@Override
+				public boolean isOpen() {
+					return true;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+			TextRenderer large = new TextRenderer(channel, slots);
+			large.setFrameInterval(100);
+			BeanCounterLogicImpl logic = new BeanCounterLogicImpl(slots, 64);
+			logic.setRetainSlotBeans(false);
+			logic.reset(new GeneratedBeanSource(InstanceType.IMPL, slots, true, 200000, new BitReservoirRandom(7)));
+			long frames = 0;
+			while (logic.advanceStep()) {
+				if (large.renderIfDue(logic)) {
+					large.flush();
+					frames++;
+				}
+			}
+			large.renderIfNew(logic);
+			large.flush();
+			frames++;
+			assertEquals(frames, writes[0]);
+		}
+	}
+}